@@ -1,24 +1,64 @@
 package com.danielele;
 
 import com.danielele.config.ConfigService;
-import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.entities.Activity;
+import com.danielele.gateway.PresenceConnection;
+import com.danielele.health.PollStats;
+import com.danielele.presence.PresencePublisher;
+import com.danielele.presence.PresenceRotation;
+import com.danielele.presence.template.PresenceFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DiscordBot
 {
-    private final JDA jda;
-    private final ConfigService.BotInstance botInstanceConfig;
+    private final PresenceConnection connection;
+    private final PresencePublisher presencePublisher;
+    // Swapped as a whole on config reload, the gateway session stays
+    private volatile ConfigService.BotInstance botInstanceConfig;
+    private volatile PresenceFormat presenceFormat;
+    // null when the bot shows a single server
+    private volatile PresenceRotation rotation;
+
+    private volatile long connectMillis;
+    private volatile int connectAttempts;
+    private final AtomicReference<CompletableFuture<ServerOnlineFun>> prefetched = new AtomicReference<>();
+    private final PollStats pollStats = new PollStats();
+
+    // Only touched by the updater thread of this bot
+    private final StringBuilder presenceBuffer = new StringBuilder(128);
 
 
-    public DiscordBot(JDA jda, ConfigService.BotInstance botInstance)
+    public DiscordBot(PresenceConnection connection, ConfigService.BotInstance botInstance, PresencePublisher presencePublisher)
     {
-        this.jda = jda;
+        this.connection = connection;
         this.botInstanceConfig = botInstance;
+        this.presencePublisher = presencePublisher;
+        this.presenceFormat = botInstance.presenceFormat;
+        this.rotation = botInstance.rotation != null ? createRotation(botInstance, presencePublisher) : null;
+    }
+
+    private static PresenceRotation createRotation(ConfigService.BotInstance botInstance, PresencePublisher publisher)
+    {
+        return new PresenceRotation(publisher, rotationFormats(botInstance));
+    }
+
+    private static List<PresenceFormat> rotationFormats(ConfigService.BotInstance botInstance)
+    {
+        List<PresenceFormat> formats = new ArrayList<>();
+        formats.add(botInstance.presenceFormat);
+        for (ConfigService.RotationServerConfig server : botInstance.rotation.servers)
+        {
+            formats.add(server.presenceFormat);
+        }
+        return formats;
     }
 
-    public JDA getJda()
+    public PresenceConnection getConnection()
     {
-        return jda;
+        return connection;
     }
 
     public ConfigService.BotInstance getBotInstanceConfig()
@@ -26,81 +66,94 @@ public class DiscordBot
         return botInstanceConfig;
     }
 
-    public void updatePresence(ServerOnlineFun serverOnlineFun)
+    public String getKey()
+    {
+        return ConfigService.instanceKey(botInstanceConfig);
+    }
+
+    /**
+     * Points the bot at a reloaded instance. Callers stop the updater tasks first,
+     * since the rotation is rebuilt here.
+     */
+    public void reconfigure(ConfigService.BotInstance botInstance)
     {
-        String presence = formatPresenceMessage(serverOnlineFun);
+        this.botInstanceConfig = botInstance;
+        this.presenceFormat = botInstance.presenceFormat;
+        this.rotation = botInstance.rotation != null ? createRotation(botInstance, presencePublisher) : null;
+    }
+
+    /**
+     * Points the bot at a reloaded instance that only differs in status or emojis. The rotation keeps
+     * its slots and tasks, only the templates are swapped, so nothing goes blank until the next polls.
+     */
+    public void updateTemplates(ConfigService.BotInstance botInstance)
+    {
+        this.botInstanceConfig = botInstance;
+        this.presenceFormat = botInstance.presenceFormat;
 
-        if (jda.getStatus() == JDA.Status.CONNECTED)
+        PresenceRotation rotation = this.rotation;
+        if (rotation != null)
         {
-            jda.getPresence().setActivity(Activity.of(getActivityType(botInstanceConfig.status.activityType), presence));
+            rotation.setFormats(rotationFormats(botInstance));
         }
     }
 
-    private Activity.ActivityType getActivityType(String type)
+    public void recordConnect(long connectMillis, int connectAttempts)
     {
-        return switch (type)
-        {
-            case "PLAYING" -> Activity.ActivityType.PLAYING;
-            case "LISTENING" -> Activity.ActivityType.LISTENING;
-            case "WATCHING" -> Activity.ActivityType.WATCHING;
-            case "COMPETING" -> Activity.ActivityType.COMPETING;
-            case "CUSTOM_STATUS" -> Activity.ActivityType.CUSTOM_STATUS;
-            default -> Activity.ActivityType.PLAYING;
-        };
+        this.connectMillis = connectMillis;
+        this.connectAttempts = connectAttempts;
     }
 
-    private String formatPresenceMessage(ServerOnlineFun serverOnlineFun)
+    public long getConnectMillis()
     {
-        if (!serverOnlineFun.isOnline())
-        {
-            return botInstanceConfig.status.serverOfflineMessage;
-        }
+        return connectMillis;
+    }
 
-        String timeEmoji = getTimeEmoji(serverOnlineFun.getServerTime());
+    public int getConnectAttempts()
+    {
+        return connectAttempts;
+    }
 
-        String message = botInstanceConfig.status.message;
+    /**
+     * Keeps the server query started during login until the first update takes it.
+     */
+    public void holdPrefetched(CompletableFuture<ServerOnlineFun> prefetch)
+    {
+        prefetched.set(prefetch);
+    }
 
-        return message
-                .replace("${emoji.player}", botInstanceConfig.emojis.player)
-                .replace("${online}", String.valueOf(serverOnlineFun.getCurrentPlayers()))
-                .replace("${max}", String.valueOf(serverOnlineFun.getMaxPlayers()))
-                .replace("${emoji.daytime}", timeEmoji)
-                .replace("${time}", serverOnlineFun.getServerTime())
-                .replace("${status.queueBlock}", getQueueBlock(serverOnlineFun));
+    public CompletableFuture<ServerOnlineFun> takePrefetched()
+    {
+        return prefetched.getAndSet(null);
     }
 
-    private String getQueueBlock(ServerOnlineFun serverOnlineFun)
+    public PollStats getPollStats()
     {
-        boolean shouldShow = serverOnlineFun.isQueueActive()
-                || botInstanceConfig.status.showQueueIfNotActive;
+        return pollStats;
+    }
 
-        if (!shouldShow)
-        {
-            return "";
-        }
+    public PresencePublisher getPresencePublisher()
+    {
+        return presencePublisher;
+    }
 
-        return botInstanceConfig.status.queueBlock
-                .replace("${emoji.queue}", botInstanceConfig.emojis.queue)
-                .replace("${queue}", String.valueOf(serverOnlineFun.getQueueSize()));
+    public PresenceRotation getRotation()
+    {
+        return rotation;
     }
 
-    private String getTimeEmoji(String serverTime)
+    public void updatePresence(ServerOnlineFun serverOnlineFun)
     {
-        try
-        {
-            int hour = Integer.parseInt(serverTime.split(":")[0]);
-            if (hour >= 6 && hour < 20)
-            {
-                return botInstanceConfig.emojis.day;
-            }
-            else
-            {
-                return botInstanceConfig.emojis.night;
-            }
-        }
-        catch (Exception e)
+        PresenceRotation rotation = this.rotation;
+        if (rotation != null)
         {
-            return botInstanceConfig.emojis.day;
+            rotation.update(0, serverOnlineFun);
+            return;
         }
+
+        PresenceFormat format = presenceFormat;
+        presenceBuffer.setLength(0);
+        format.render(serverOnlineFun, presenceBuffer);
+        presencePublisher.submit(format.getActivityType(), presenceBuffer);
     }
 }
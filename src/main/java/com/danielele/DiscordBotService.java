@@ -1,7 +1,19 @@
 package com.danielele;
 
+import com.danielele.config.ConfigDiff;
 import com.danielele.config.ConfigService;
-import com.danielele.events.BotsReadyEvent;
+import com.danielele.events.BotReadyEvent;
+import com.danielele.events.BotStoppedEvent;
+import com.danielele.events.ConfigReloadedEvent;
+import com.danielele.gateway.ClientImplementation;
+import com.danielele.gateway.GatewayRejectedException;
+import com.danielele.gateway.IdentifyLimiter;
+import com.danielele.gateway.JdaPresenceConnection;
+import com.danielele.gateway.LightGatewayClient;
+import com.danielele.gateway.PresenceConnection;
+import com.danielele.metrics.ExecutorStats;
+import com.danielele.presence.PresenceDispatcher;
+import com.danielele.provider.ServerQuery;
 import io.quarkus.runtime.Quarkus;
 import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.Startup;
@@ -13,84 +25,296 @@ import jakarta.inject.Inject;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.exceptions.InvalidTokenException;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Startup
 @ApplicationScoped
 public class DiscordBotService
 {
     private static final Logger logger = LoggerFactory.getLogger(DiscordBotService.class);
+    private static final long MIN_RETRY_DELAY_SECONDS = 5;
+    private static final long MAX_RETRY_DELAY_SECONDS = 300;
+    private static final String STARTING_TEXT = "Starting...";
 
     @Inject
     ConfigService configService;
     @Inject
-    Event<BotsReadyEvent> botsReadyEvent;
+    Event<BotReadyEvent> botReadyEvent;
+    @Inject
+    Event<BotStoppedEvent> botStoppedEvent;
+    @Inject
+    PresenceDispatcher presenceDispatcher;
+    @Inject
+    SharedJdaResources sharedJdaResources;
+    @Inject
+    LightGatewayClient lightGatewayClient;
+    @Inject
+    ServerQuery serverQuery;
 
-    private List<DiscordBot> bots = new ArrayList<>();
+    private final List<DiscordBot> bots = new CopyOnWriteArrayList<>();
+
+    private IdentifyLimiter identifyLimiter;
+    private ThreadPoolExecutor startupExecutor;
+    private ScheduledExecutorService retryScheduler;
+    private ThreadPoolExecutor prefetchExecutor;
+    private volatile boolean shuttingDown;
+    private long serviceStartedAt;
 
     @PostConstruct
     public void init()
     {
-        try
+        logger.info("Process footprint before connecting bots: {}", ProcessStats.describe());
+
+        ConfigService.DiscordClientConfig clientConfig = configService.getDiscordClientConfig();
+        identifyLimiter = new IdentifyLimiter(clientConfig.identifyConcurrency);
+        startupExecutor = new ThreadPoolExecutor(
+                clientConfig.startupThreads,
+                clientConfig.startupThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory("bot-startup")
+        );
+        startupExecutor.allowCoreThreadTimeOut(true);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("bot-startup-retry"));
+        prefetchExecutor = new ThreadPoolExecutor(
+                clientConfig.startupThreads,
+                clientConfig.startupThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory("server-prefetch")
+        );
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+
+        serviceStartedAt = System.nanoTime();
+        List<ConfigService.BotInstance> instances = configService.getInstances();
+        List<CompletableFuture<DiscordBot>> futures = new ArrayList<>();
+
+        for (int i = 0; i < instances.size(); i++)
         {
-            List<CompletableFuture<DiscordBot>> futures = new ArrayList<>();
+            ConfigService.BotInstance instance = instances.get(i);
+            int instanceIndex = i;
+            CompletableFuture<ServerOnlineFun> prefetch = prefetch(instance);
+
+            futures.add(CompletableFuture.supplyAsync(() -> startBot(instance, instanceIndex, 1, prefetch), startupExecutor));
+        }
+
+        // Every bot starts polling as soon as it is ready, this only reports the first round
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() ->
+        {
+            long connected = futures.stream().map(CompletableFuture::join).filter(Objects::nonNull).count();
+            logger.info("Initial connect finished: {} of {} bots connected", connected, instances.size());
+            logger.info("Process footprint after connecting {} bots: {}", connected, ProcessStats.describe());
+        });
+    }
+
+    private DiscordBot startBot(ConfigService.BotInstance instance, int instanceIndex, int attempt,
+                                CompletableFuture<ServerOnlineFun> prefetch)
+    {
+        // A reload replaced or removed the instance while this login was queued
+        if (!isCurrent(instance))
+        {
+            return null;
+        }
 
-            List<ConfigService.BotInstance> instances = configService.getInstances();
-            for (int i = 0; i < instances.size(); i++)
+        DiscordBot bot = connectBot(instance, instanceIndex, attempt, prefetch);
+        if (bot != null)
+        {
+            if (!isCurrent(instance))
             {
-                ConfigService.BotInstance instance = instances.get(i);
-                int instanceIndex = i;
+                logger.info("Instance[{}]: config changed during login, dropping this connection", instanceIndex);
+                presenceDispatcher.unregister(bot.getKey(), bot.getPresencePublisher());
+                startupExecutor.execute(() -> shutdownConnection(bot));
+                return null;
+            }
+            bot.holdPrefetched(prefetch);
+            bots.add(bot);
+            botReadyEvent.fire(new BotReadyEvent(bot));
+        }
+        return bot;
+    }
 
-                CompletableFuture<DiscordBot> future = CompletableFuture.supplyAsync(() ->
-                {
-                    try
-                    {
-                        return createBot(instance, instanceIndex);
-                    }
-                    catch (Exception e)
-                    {
-                        logger.error("Failed to create bot: {}", e.getMessage(), e);
-                        return null;
-                    }
-                });
+    /**
+     * @return connected bots, a live view
+     */
+    public List<DiscordBot> getBots()
+    {
+        return Collections.unmodifiableList(bots);
+    }
 
-                futures.add(future);
+    public List<ExecutorStats> getExecutorStats()
+    {
+        return List.of(
+                new ExecutorStats("bot-startup").add(startupExecutor),
+                new ExecutorStats("server-prefetch").add(prefetchExecutor)
+        );
+    }
+
+    private boolean isCurrent(ConfigService.BotInstance instance)
+    {
+        for (ConfigService.BotInstance current : configService.getInstances())
+        {
+            if (current == instance)
+            {
+                return true;
             }
+        }
+        return false;
+    }
 
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .join();
+    private DiscordBot findBot(String key)
+    {
+        for (DiscordBot bot : bots)
+        {
+            if (bot.getKey().equals(key))
+            {
+                return bot;
+            }
+        }
+        return null;
+    }
 
-            for (CompletableFuture<DiscordBot> future : futures)
+    void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        if (shuttingDown)
+        {
+            return;
+        }
+
+        List<ConfigService.BotInstance> instances = configService.getInstances();
+        for (ConfigDiff.Change change : event.getDiff().getChanges())
+        {
+            DiscordBot bot = change.getPrevious() != null ? findBot(change.getKey()) : null;
+
+            switch (change.getKind())
             {
-                DiscordBot bot = future.join();
-                if (bot != null)
+                case REMOVED -> stopBot(bot);
+                case ADDED -> launch(change.getCurrent(), instances.indexOf(change.getCurrent()));
+                case RESTART ->
                 {
-                    bots.add(bot);
+                    stopBot(bot);
+                    launch(change.getCurrent(), instances.indexOf(change.getCurrent()));
+                }
+                default ->
+                {
+                    if (bot == null)
+                    {
+                        // Not connected yet, the pending login still points at the old instance
+                        launch(change.getCurrent(), instances.indexOf(change.getCurrent()));
+                    }
+                    else if (change.getKind() == ConfigDiff.Kind.RECONFIGURE)
+                    {
+                        // Same token and session, only the polling side starts over
+                        botStoppedEvent.fire(new BotStoppedEvent(bot));
+                        bot.reconfigure(change.getCurrent());
+                        botReadyEvent.fire(new BotReadyEvent(bot));
+                    }
+                    else
+                    {
+                        bot.updateTemplates(change.getCurrent());
+                    }
                 }
             }
+        }
+    }
 
-            logger.info("All bots connected successfully. Total: {}", bots.size());
+    private void launch(ConfigService.BotInstance instance, int instanceIndex)
+    {
+        CompletableFuture<ServerOnlineFun> prefetch = prefetch(instance);
+        startupExecutor.execute(() -> startBot(instance, instanceIndex, 1, prefetch));
+    }
 
-            botsReadyEvent.fire(new BotsReadyEvent(bots));
+    private void stopBot(DiscordBot bot)
+    {
+        if (bot == null)
+        {
+            return;
+        }
+
+        bots.remove(bot);
+        botStoppedEvent.fire(new BotStoppedEvent(bot));
+        presenceDispatcher.unregister(bot.getKey(), bot.getPresencePublisher());
+        logger.info("Bot {}: removed by config reload, disconnecting", bot.getKey());
+        startupExecutor.execute(() -> shutdownConnection(bot));
+    }
+
+    /**
+     * Runs the first server query while the bot is still logging in,
+     * the updater picks up the result instead of querying again.
+     */
+    private CompletableFuture<ServerOnlineFun> prefetch(ConfigService.BotInstance instance)
+    {
+        return CompletableFuture.supplyAsync(() -> serverQuery.query(instance), prefetchExecutor);
+    }
+
+    private DiscordBot connectBot(ConfigService.BotInstance instance, int instanceIndex, int attempt,
+                                  CompletableFuture<ServerOnlineFun> prefetch)
+    {
+        try
+        {
+            return createBot(instance, instanceIndex, attempt, prefetch);
+        }
+        catch (GatewayRejectedException | InvalidTokenException e)
+        {
+            logger.error("Instance[{}]: Discord rejected the login, not retrying: {}", instanceIndex, e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
         }
         catch (Exception e)
         {
-            logger.error("Failed to initialize bots: {}", e.getMessage(), e);
+            logger.error("Instance[{}]: Discord login attempt {} failed: {}", instanceIndex, attempt, e.getMessage());
+            scheduleRetry(instance, instanceIndex, attempt + 1);
         }
+        return null;
     }
 
-    private DiscordBot createBot(ConfigService.BotInstance instance, int instanceIndex) throws Exception
+    private void scheduleRetry(ConfigService.BotInstance instance, int instanceIndex, int attempt)
+    {
+        if (shuttingDown)
+        {
+            return;
+        }
+
+        long delay = Math.min(MAX_RETRY_DELAY_SECONDS, MIN_RETRY_DELAY_SECONDS << Math.min(attempt - 2, 6));
+        logger.info("Instance[{}]: retrying Discord login in {}s (attempt {})", instanceIndex, delay, attempt);
+
+        retryScheduler.schedule(
+                () ->
+                {
+                    CompletableFuture<ServerOnlineFun> prefetch = prefetch(instance);
+                    startupExecutor.execute(() -> startBot(instance, instanceIndex, attempt, prefetch));
+                },
+                delay,
+                TimeUnit.SECONDS
+        );
+    }
+
+    private DiscordBot createBot(ConfigService.BotInstance instance, int instanceIndex, int attempt,
+                                 CompletableFuture<ServerOnlineFun> prefetch) throws Exception
     {
         String token = instance.discord.token;
 
@@ -126,81 +350,157 @@ public class DiscordBotService
             }
         }
 
-        logger.info("Connecting bot to Discord...");
+        identifyLimiter.acquire(token);
+        logger.info("Instance[{}]: connecting bot to Discord (attempt {})...", instanceIndex, attempt);
 
-        JDA jda = JDABuilder.create(token, EnumSet.noneOf(GatewayIntent.class))
-                .disableCache(CacheFlag.ACTIVITY,
-                        CacheFlag.VOICE_STATE,
-                        CacheFlag.EMOJI,
-                        CacheFlag.STICKER,
-                        CacheFlag.CLIENT_STATUS,
-                        CacheFlag.ONLINE_STATUS,
-                        CacheFlag.SCHEDULED_EVENTS
-                )
-                .enableIntents(GatewayIntent.GUILD_PRESENCES)
-                .setActivity(Activity.of(getActivityType(instance.status.activityType), "Starting..."))
-                .setBulkDeleteSplittingEnabled(false)
-                .setLargeThreshold(50)
-                .build();
+        int timeoutSeconds = configService.getDiscordClientConfig().connectTimeoutSeconds;
+        long startedAt = System.nanoTime();
+        // With the prefetch already done the bot identifies with real data, the first poll then has nothing new to send
+        String initialText = renderPrefetched(instance, prefetch);
+        PresenceConnection connection = createConnection(token, instance, initialText != null ? initialText : STARTING_TEXT);
 
-        jda.awaitReady();
+        boolean ready;
+        try
+        {
+            ready = connection.awaitReady(timeoutSeconds, TimeUnit.SECONDS);
+        }
+        catch (RuntimeException | InterruptedException e)
+        {
+            connection.shutdown(1, TimeUnit.SECONDS);
+            throw e;
+        }
 
-        DiscordBot discordBot = new DiscordBot(jda, instance);
-        logger.info("Bot connected successfully");
+        if (!ready)
+        {
+            connection.shutdown(1, TimeUnit.SECONDS);
+            throw new TimeoutException("not ready within " + timeoutSeconds + "s");
+        }
+
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        String botId = ConfigService.instanceKey(instance);
+        DiscordBot discordBot = new DiscordBot(connection, instance, presenceDispatcher.register(botId, connection, serviceStartedAt,
+                instance.presenceFormat.getActivityType(), initialText != null ? initialText : STARTING_TEXT, initialText != null));
+        discordBot.recordConnect(connectMillis, attempt);
+        logger.info("Instance[{}]: bot connected successfully in {} ms (attempt {})", instanceIndex, connectMillis, attempt);
 
         return discordBot;
     }
 
+    /**
+     * @return the presence for the prefetched query, null if it is still running or failed
+     */
+    private static String renderPrefetched(ConfigService.BotInstance instance, CompletableFuture<ServerOnlineFun> prefetch)
+    {
+        if (!prefetch.isDone() || prefetch.isCompletedExceptionally())
+        {
+            return null;
+        }
+
+        StringBuilder text = new StringBuilder();
+        instance.presenceFormat.render(prefetch.join(), text);
+        return text.toString();
+    }
+
+    private PresenceConnection createConnection(String token, ConfigService.BotInstance instance, String activityText)
+    {
+        ConfigService.DiscordClientConfig clientConfig = configService.getDiscordClientConfig();
+
+        if (ClientImplementation.fromString(clientConfig.implementation) == ClientImplementation.LIGHTWEIGHT)
+        {
+            return lightGatewayClient.connect(token, identifyLimiter, instance.presenceFormat.getActivityType(), activityText);
+        }
+
+        JDA jda = createBuilder(token, JdaProfile.fromString(clientConfig.profile))
+                .setActivity(Activity.of(instance.presenceFormat.getActivityType(), activityText))
+                .build();
+        return new JdaPresenceConnection(jda);
+    }
+
+    private JDABuilder createBuilder(String token, JdaProfile profile)
+    {
+        if (profile == JdaProfile.DEFAULT)
+        {
+            return sharedJdaResources.apply(JDABuilder.create(token, EnumSet.noneOf(GatewayIntent.class)))
+                    .disableCache(CacheFlag.ACTIVITY,
+                            CacheFlag.VOICE_STATE,
+                            CacheFlag.EMOJI,
+                            CacheFlag.STICKER,
+                            CacheFlag.CLIENT_STATUS,
+                            CacheFlag.ONLINE_STATUS,
+                            CacheFlag.SCHEDULED_EVENTS
+                    )
+                    .enableIntents(GatewayIntent.GUILD_PRESENCES)
+                    .setBulkDeleteSplittingEnabled(false)
+                    .setLargeThreshold(50);
+        }
+
+        // The bot only sets its own activity, so nothing about guilds or members has to be kept
+        return sharedJdaResources.apply(JDABuilder.createLight(token, EnumSet.noneOf(GatewayIntent.class)))
+                .disableCache(EnumSet.allOf(CacheFlag.class))
+                .setMemberCachePolicy(MemberCachePolicy.NONE)
+                .setChunkingFilter(ChunkingFilter.NONE)
+                .setBulkDeleteSplittingEnabled(false)
+                .setLargeThreshold(50);
+    }
+
     private String envKey(int instanceIndex, String suffix)
     {
         return "INSTANCE_" + instanceIndex + "_" + suffix;
     }
 
+    private static ThreadFactory threadFactory(String prefix)
+    {
+        AtomicInteger counter = new AtomicInteger();
+        return r ->
+        {
+            Thread t = new Thread(r);
+            t.setName(prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
     void onShutdown(@Observes ShutdownEvent event)
     {
         logger.info("Quarkus ShutdownEvent triggered. Stopping bot gracefully...");
 
+        shuttingDown = true;
+        retryScheduler.shutdownNow();
+        startupExecutor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+
         for (DiscordBot bot : bots)
         {
-            JDA jda = bot.getJda();
+            shutdownConnection(bot);
+        }
+    }
 
-            if (jda != null)
+    private void shutdownConnection(DiscordBot bot)
+    {
+        PresenceConnection connection = bot.getConnection();
+
+        if (connection != null)
+        {
+            try
             {
-                try
-                {
-                    jda.shutdown();
-                    if (!jda.awaitShutdown(5, TimeUnit.SECONDS))
-                    {
-                        logger.warn("Timeout waiting for JDA to shut down — forcing close.");
-                        jda.shutdownNow();
-                    }
-                    else
-                    {
-                        logger.info("Discord bot stopped successfully.");
-                    }
-                }
-                catch (InterruptedException e)
+                if (!connection.shutdown(5, TimeUnit.SECONDS))
                 {
-                    Thread.currentThread().interrupt();
+                    logger.warn("Timeout waiting for Discord connection to shut down — forced close.");
                 }
-                catch (Exception e)
+                else
                 {
-                    logger.error("Error during shutdown: {}", e.getMessage());
+                    logger.info("Discord bot stopped successfully.");
                 }
             }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e)
+            {
+                logger.error("Error during shutdown: {}", e.getMessage());
+            }
         }
     }
-
-    private Activity.ActivityType getActivityType(String type)
-    {
-        return switch (type)
-        {
-            case "PLAYING" -> Activity.ActivityType.PLAYING;
-            case "LISTENING" -> Activity.ActivityType.LISTENING;
-            case "WATCHING" -> Activity.ActivityType.WATCHING;
-            case "COMPETING" -> Activity.ActivityType.COMPETING;
-            case "CUSTOM_STATUS" -> Activity.ActivityType.CUSTOM_STATUS;
-            default -> Activity.ActivityType.PLAYING;
-        };
-    }
 }
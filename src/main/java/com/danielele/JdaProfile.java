@@ -0,0 +1,25 @@
+package com.danielele;
+
+public enum JdaProfile
+{
+    /**
+     * No intents, no caches, no member chunking. Enough for setting the bot activity.
+     */
+    PRESENCE_ONLY,
+    /**
+     * Previous behaviour: GUILD_PRESENCES intent and the default member cache.
+     */
+    DEFAULT;
+
+    public static JdaProfile fromString(String text)
+    {
+        for (JdaProfile profile : values())
+        {
+            if (profile.name().equalsIgnoreCase(text))
+            {
+                return profile;
+            }
+        }
+        return null;
+    }
+}
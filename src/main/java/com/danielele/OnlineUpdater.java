@@ -1,8 +1,16 @@
 package com.danielele;
 
-import com.danielele.events.BotsReadyEvent;
-import com.danielele.provider.OnlineProviderType;
-import com.danielele.provider.OnlineProviderFactory;
+import com.danielele.channel.ChannelNameService;
+import com.danielele.config.ConfigService;
+import com.danielele.embed.StatusEmbedService;
+import com.danielele.events.BotReadyEvent;
+import com.danielele.events.BotStoppedEvent;
+import com.danielele.history.PlayerHistory;
+import com.danielele.metrics.ExecutorStats;
+import com.danielele.presence.PresenceRotation;
+import com.danielele.provider.QueryFailure;
+import com.danielele.provider.ServerQuery;
+import com.danielele.status.ServerStatusService;
 import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.Startup;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -10,31 +18,129 @@ import jakarta.enterprise.event.Observes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Startup
 @ApplicationScoped
 public class OnlineUpdater
 {
-    private final OnlineProviderFactory onlineProviderFactory;
+    private final ServerQuery serverQuery;
+    private final StatusEmbedService statusEmbedService;
+    private final ChannelNameService channelNameService;
+    private final ServerStatusService serverStatusService;
+    private final PlayerHistory playerHistory;
     private static final Logger logger = LoggerFactory.getLogger(OnlineUpdater.class);
+    private static final int MAX_ROTATION_THREADS = 4;
+    private static final long STOP_TIMEOUT_SECONDS = 5;
 
     private final Map<String, ScheduledExecutorService> schedulers = new ConcurrentHashMap<>();
-    private final Map<String, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+    private final Map<String, List<ScheduledFuture<?>>> tasks = new ConcurrentHashMap<>();
+    // Poll tasks of every bot, run once more on a forced refresh
+    private final Map<String, List<Runnable>> polls = new ConcurrentHashMap<>();
 
-    public OnlineUpdater(OnlineProviderFactory onlineProviderFactory)
+    public OnlineUpdater(ServerQuery serverQuery,
+                         StatusEmbedService statusEmbedService,
+                         ChannelNameService channelNameService,
+                         ServerStatusService serverStatusService,
+                         PlayerHistory playerHistory)
     {
-        this.onlineProviderFactory = onlineProviderFactory;
+        this.serverQuery = serverQuery;
+        this.statusEmbedService = statusEmbedService;
+        this.channelNameService = channelNameService;
+        this.serverStatusService = serverStatusService;
+        this.playerHistory = playerHistory;
     }
 
-    void onBotsReady(@Observes BotsReadyEvent event)
+    void onBotReady(@Observes BotReadyEvent event)
     {
-        logger.info("Bots are ready. Starting schedulers for {} bots...", event.getBots().size());
+        DiscordBot bot = event.getBot();
+        if (bot.getBotInstanceConfig().paused)
+        {
+            logger.info("Bot {} is paused, not polling", bot.getKey());
+            return;
+        }
+        startSchedulerForBot(bot);
+    }
+
+    public boolean isPolled(String botId)
+    {
+        return schedulers.containsKey(botId);
+    }
 
-        for (DiscordBot bot : event.getBots())
+    /**
+     * @return the updater schedulers of all bots, summed
+     */
+    public ExecutorStats getSchedulerStats()
+    {
+        ExecutorStats stats = new ExecutorStats("updater");
+        for (ScheduledExecutorService scheduler : schedulers.values())
         {
-            startSchedulerForBot(bot);
+            if (scheduler instanceof ThreadPoolExecutor executor)
+            {
+                stats.add(executor);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Polls all servers of the bot right away on its own scheduler, the regular cadence is not touched.
+     *
+     * @return false if the bot is not polled: unknown, paused or not connected yet
+     */
+    public boolean refresh(String botId)
+    {
+        ScheduledExecutorService scheduler = schedulers.get(botId);
+        List<Runnable> botPolls = polls.get(botId);
+        if (scheduler == null || botPolls == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            botPolls.forEach(scheduler::execute);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Stopped meanwhile
+            return false;
+        }
+    }
+
+    void onBotStopped(@Observes BotStoppedEvent event)
+    {
+        String botId = event.getBot().getKey();
+        polls.remove(botId);
+        List<ScheduledFuture<?>> botTasks = tasks.remove(botId);
+        if (botTasks != null)
+        {
+            botTasks.forEach(task -> task.cancel(false));
+        }
+
+        ScheduledExecutorService scheduler = schedulers.remove(botId);
+        if (scheduler != null)
+        {
+            // A reconfigure replaces the rotation right after this, running polls must be done with it
+            scheduler.shutdown();
+            try
+            {
+                if (!scheduler.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                {
+                    logger.warn("Poll of bot {} still running after {}s, interrupting it", botId, STOP_TIMEOUT_SECONDS);
+                    scheduler.shutdownNow();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Scheduler stopped for bot {}", botId);
         }
     }
 
@@ -42,9 +148,12 @@ public class OnlineUpdater
     {
         int interval = bot.getBotInstanceConfig().updater.intervalSeconds;
 
-        String botId = bot.getBotInstanceConfig().server.ip + ":" + bot.getBotInstanceConfig().server.port;
+        String botId = bot.getKey();
 
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        PresenceRotation rotation = bot.getRotation();
+        int threads = rotation != null ? Math.min(rotation.size(), MAX_ROTATION_THREADS) : 1;
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads, r ->
         {
             Thread t = new Thread(r);
             t.setName("updater-" + botId);
@@ -53,41 +162,154 @@ public class OnlineUpdater
 
         schedulers.put(botId, scheduler);
 
-        ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
-                () -> updateOnlineStats(bot),
-                0,
-                interval,
-                TimeUnit.SECONDS
-        );
+        List<ScheduledFuture<?>> botTasks = new CopyOnWriteArrayList<>();
+        List<Runnable> botPolls = new CopyOnWriteArrayList<>();
+        tasks.put(botId, botTasks);
+        polls.put(botId, botPolls);
 
-        tasks.put(botId, task);
+        bot.getPollStats().markScheduled(System.nanoTime());
+        Runnable poll = exclusive(() -> updateOnlineStats(bot));
+        botPolls.add(poll);
+        botTasks.add(scheduler.scheduleWithFixedDelay(poll, 0, interval, TimeUnit.SECONDS));
 
         logger.info("Scheduler started for bot {}: interval={}s", botId, interval);
+
+        if (rotation != null)
+        {
+            startRotation(bot, botId, scheduler, botTasks, botPolls);
+        }
+    }
+
+    // A refresh may land while the scheduled run of the same poll is busy, its result is just as fresh
+    private static Runnable exclusive(Runnable poll)
+    {
+        AtomicBoolean running = new AtomicBoolean();
+        return () ->
+        {
+            if (!running.compareAndSet(false, true))
+            {
+                return;
+            }
+            try
+            {
+                poll.run();
+            }
+            finally
+            {
+                running.set(false);
+            }
+        };
+    }
+
+    // Every rotation server keeps its own poll cadence, switching only re-publishes rendered text
+    private void startRotation(DiscordBot bot, String botId, ScheduledExecutorService scheduler,
+                               List<ScheduledFuture<?>> botTasks, List<Runnable> botPolls)
+    {
+        ConfigService.RotationConfig config = bot.getBotInstanceConfig().rotation;
+        // Tasks stay with the rotation they were started for, a poll that outlives a reconfigure cannot touch the new one
+        PresenceRotation rotation = bot.getRotation();
+
+        for (int i = 0; i < config.servers.size(); i++)
+        {
+            ConfigService.RotationServerConfig server = config.servers.get(i);
+            int slot = i + 1;
+
+            Runnable poll = exclusive(() -> updateRotationSlot(bot, rotation, slot, server));
+            botPolls.add(poll);
+            botTasks.add(scheduler.scheduleWithFixedDelay(poll, 0, server.updater.intervalSeconds, TimeUnit.SECONDS));
+        }
+
+        botTasks.add(scheduler.scheduleAtFixedRate(
+                () ->
+                {
+                    if (bot.getRotation() == rotation)
+                    {
+                        rotation.advance();
+                    }
+                },
+                config.intervalSeconds,
+                config.intervalSeconds,
+                TimeUnit.SECONDS
+        ));
+
+        logger.info("Rotation started for bot {}: {} servers, switching every {}s",
+                botId, rotation.size(), config.intervalSeconds);
+    }
+
+    void updateRotationSlot(DiscordBot bot, PresenceRotation rotation, int slot, ConfigService.RotationServerConfig server)
+    {
+        try
+        {
+            ServerOnlineFun serverOnline = serverQuery.query(server.server);
+            if (bot.getRotation() == rotation)
+            {
+                rotation.update(slot, serverOnline);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Error while updating rotation server {}:{} for bot {}",
+                    server.server.ip, server.server.port, bot.getBotInstanceConfig().server.ip, e);
+        }
     }
 
     void updateOnlineStats(DiscordBot bot)
     {
+        long startedAt = System.nanoTime();
         try
         {
-            ServerOnlineFun serverOnline = onlineProviderFactory.getStrategy(getProviderType(bot.getBotInstanceConfig().server.onlineProvider)).getServerOnline(bot.getBotInstanceConfig().server);
+            // One instance for the whole update, a reload may swap it meanwhile
+            ConfigService.BotInstance instance = bot.getBotInstanceConfig();
+            ServerOnlineFun serverOnline = awaitPrefetched(bot);
+            if (serverOnline == null)
+            {
+                serverOnline = serverQuery.query(instance);
+            }
+            bot.getPollStats().record(serverOnline.getFailure(), startedAt, System.nanoTime());
             bot.updatePresence(serverOnline);
+            statusEmbedService.update(instance, serverOnline);
+            channelNameService.update(instance, serverOnline);
+            serverStatusService.update(instance, serverOnline);
+            playerHistory.record(instance, serverOnline);
         }
         catch (Exception e)
         {
-        logger.error("Error while updating presence for bot {}", bot.getBotInstanceConfig().server.ip, e);
+            bot.getPollStats().record(QueryFailure.classify(e), startedAt, System.nanoTime());
+            logger.error("Error while updating presence for bot {}", bot.getBotInstanceConfig().server.ip, e);
         }
     }
 
-    private OnlineProviderType getProviderType(String provider)
+    // The first update uses the query that ran during login, it is usually done by now.
+    // A query still hanging after one poll interval is given up on, the poll queries again
+    private ServerOnlineFun awaitPrefetched(DiscordBot bot) throws InterruptedException
     {
-        return OnlineProviderType.fromString(provider.toUpperCase());
+        CompletableFuture<ServerOnlineFun> prefetch = bot.takePrefetched();
+        if (prefetch == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return prefetch.get(bot.getBotInstanceConfig().updater.intervalSeconds, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            logger.warn("Prefetched server query for bot {} did not finish, querying again", bot.getBotInstanceConfig().server.ip);
+            return null;
+        }
+        catch (ExecutionException | CancellationException e)
+        {
+            logger.warn("Prefetched server query failed for bot {}, querying again", bot.getBotInstanceConfig().server.ip);
+            return null;
+        }
     }
 
     void onShutdown(@Observes ShutdownEvent event)
     {
         logger.info("Stopping all schedulers gracefully...");
 
-        tasks.values().forEach(task -> task.cancel(true));
+        tasks.values().forEach(botTasks -> botTasks.forEach(task -> task.cancel(true)));
 
         schedulers.values().forEach(scheduler -> {
             scheduler.shutdown();
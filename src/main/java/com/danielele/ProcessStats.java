@@ -0,0 +1,62 @@
+package com.danielele;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public final class ProcessStats
+{
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+    private static final String RSS_PREFIX = "VmRSS:";
+
+    private ProcessStats()
+    {
+    }
+
+    public static int threadCount()
+    {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /**
+     * Resident set size in bytes, or -1 where {@code /proc} is not available.
+     */
+    public static long rssBytes()
+    {
+        try
+        {
+            List<String> lines = Files.readAllLines(PROC_STATUS);
+            for (String line : lines)
+            {
+                if (line.startsWith(RSS_PREFIX))
+                {
+                    String value = line.substring(RSS_PREFIX.length()).trim();
+                    int space = value.indexOf(' ');
+                    long kb = Long.parseLong(space > 0 ? value.substring(0, space) : value);
+                    return kb * 1024;
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return -1;
+        }
+        return -1;
+    }
+
+    public static long heapUsedBytes()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static String describe()
+    {
+        long rss = rssBytes();
+        return "threads=" + threadCount()
+                + ", rss=" + (rss >= 0 ? (rss / (1024 * 1024)) + "MB" : "n/a")
+                + ", heapUsed=" + (heapUsedBytes() / (1024 * 1024)) + "MB";
+    }
+}
@@ -1,5 +1,7 @@
 package com.danielele;
 
+import com.danielele.provider.QueryFailure;
+
 public interface ServerOnlineFun
 {
     Integer getCurrentPlayers();
@@ -8,4 +10,25 @@ public interface ServerOnlineFun
     Integer getQueueSize();
     Boolean isQueueActive();
     Boolean isOnline();
+
+    /**
+     * Servers behind this result that answered online, more than one for an aggregate instance.
+     */
+    default int getServersOnline()
+    {
+        return Boolean.TRUE.equals(isOnline()) ? 1 : 0;
+    }
+
+    default int getServersTotal()
+    {
+        return 1;
+    }
+
+    /**
+     * @return why the query failed, null if the server answered; an offline result may carry old data
+     */
+    default QueryFailure getFailure()
+    {
+        return null;
+    }
 }
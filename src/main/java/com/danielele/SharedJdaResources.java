@@ -0,0 +1,158 @@
+package com.danielele;
+
+import com.danielele.config.ConfigService;
+import com.danielele.metrics.ExecutorStats;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.interceptor.Interceptor;
+import net.dv8tion.jda.api.JDABuilder;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One set of executors and one HTTP client for every JDA instance in the process.
+ * JDA is told not to shut them down, they are closed here after all bots are stopped.
+ */
+@ApplicationScoped
+public class SharedJdaResources
+{
+    private static final Logger logger = LoggerFactory.getLogger(SharedJdaResources.class);
+    private static final int ELASTIC_KEEP_ALIVE_SECONDS = 60;
+
+    @Inject
+    ConfigService configService;
+
+    private ScheduledExecutorService rateLimitScheduler;
+    private ThreadPoolExecutor rateLimitElastic;
+    private ExecutorService callbackPool;
+    private ScheduledExecutorService gatewayPool;
+    private ExecutorService eventPool;
+    private OkHttpClient httpClient;
+
+    @PostConstruct
+    void init()
+    {
+        ConfigService.DiscordClientConfig config = configService.getDiscordClientConfig();
+
+        rateLimitScheduler = Executors.newScheduledThreadPool(config.rateLimitThreads, threadFactory("jda-ratelimit"));
+        rateLimitElastic = new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                ELASTIC_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory("jda-ratelimit-elastic")
+        );
+        callbackPool = Executors.newFixedThreadPool(config.callbackThreads, threadFactory("jda-callback"));
+        gatewayPool = Executors.newScheduledThreadPool(config.gatewayThreads, threadFactory("jda-gateway"));
+        eventPool = Executors.newFixedThreadPool(config.eventThreads, threadFactory("jda-event"));
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.httpMaxRequests);
+        dispatcher.setMaxRequestsPerHost(config.httpMaxRequestsPerHost);
+
+        httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.httpMaxRequestsPerHost, 5, TimeUnit.MINUTES))
+                .build();
+    }
+
+    public JDABuilder apply(JDABuilder builder)
+    {
+        return builder
+                .setHttpClient(httpClient)
+                .setRateLimitScheduler(rateLimitScheduler, false)
+                .setRateLimitElastic(rateLimitElastic, false)
+                .setCallbackPool(callbackPool, false)
+                .setGatewayPool(gatewayPool, false)
+                .setEventPool(eventPool, false);
+    }
+
+    public List<ExecutorStats> getPoolStats()
+    {
+        return List.of(
+                new ExecutorStats("jda-ratelimit").add((ThreadPoolExecutor) rateLimitScheduler),
+                new ExecutorStats("jda-ratelimit-elastic").add(rateLimitElastic),
+                new ExecutorStats("jda-callback").add((ThreadPoolExecutor) callbackPool),
+                new ExecutorStats("jda-gateway").add((ThreadPoolExecutor) gatewayPool),
+                new ExecutorStats("jda-event").add((ThreadPoolExecutor) eventPool)
+        );
+    }
+
+    public int getRunningHttpCalls()
+    {
+        return httpClient.dispatcher().runningCallsCount();
+    }
+
+    public int getQueuedHttpCalls()
+    {
+        return httpClient.dispatcher().queuedCallsCount();
+    }
+
+    void onShutdown(@Observes @Priority(Interceptor.Priority.LIBRARY_AFTER) ShutdownEvent event)
+    {
+        shutdown(rateLimitScheduler);
+        shutdown(rateLimitElastic);
+        shutdown(callbackPool);
+        shutdown(gatewayPool);
+        shutdown(eventPool);
+
+        if (httpClient != null)
+        {
+            httpClient.dispatcher().executorService().shutdown();
+            httpClient.connectionPool().evictAll();
+        }
+
+        logger.info("Shared JDA resources released");
+    }
+
+    private void shutdown(ExecutorService executor)
+    {
+        if (executor == null)
+        {
+            return;
+        }
+
+        executor.shutdown();
+        try
+        {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS))
+            {
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix)
+    {
+        AtomicInteger counter = new AtomicInteger();
+        return r ->
+        {
+            Thread t = new Thread(r);
+            t.setName(prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
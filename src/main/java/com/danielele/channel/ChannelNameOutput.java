@@ -0,0 +1,226 @@
+package com.danielele.channel;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.presence.template.PresenceFormat;
+
+/**
+ * Channel name of one instance: the newest rendered candidate and what the channel shows now.
+ */
+public class ChannelNameOutput
+{
+    static final int MAX_NAME_LENGTH = 100;
+
+    private final String channelId;
+    private final String token;
+    private final PresenceFormat format;
+    private final int significantChange;
+
+    // Only touched by the updater thread of this bot
+    private final StringBuilder buffer = new StringBuilder(MAX_NAME_LENGTH);
+
+    private volatile Candidate candidate;
+
+    // Only touched by the channel-name thread
+    private volatile String shownName;
+    private boolean shownOnline;
+    private int shownPlayers = -1;
+    private boolean nameLoaded;
+    private long staleSince;
+    private long nextAttemptAt;
+    private volatile boolean inFlight;
+
+    private volatile long renames;
+    private volatile long rateLimited;
+    private volatile long failures;
+
+    ChannelNameOutput(ConfigService.BotInstance instance)
+    {
+        this.channelId = instance.channelName.channelId;
+        this.token = instance.discord.token;
+        this.format = instance.channelName.format;
+        this.significantChange = instance.channelName.significantChange;
+    }
+
+    /**
+     * Keeps what the channel shows across a config reload, so the new output does not fetch
+     * the name again or spend a rename on an unchanged value. Runs on the channel-name thread.
+     */
+    void adopt(ChannelNameOutput previous)
+    {
+        if (previous.inFlight || !previous.channelId.equals(channelId))
+        {
+            return;
+        }
+
+        shownName = previous.shownName;
+        shownOnline = previous.shownOnline;
+        shownPlayers = previous.shownPlayers;
+        nameLoaded = previous.nameLoaded;
+        staleSince = previous.staleSince;
+        nextAttemptAt = previous.nextAttemptAt;
+        renames = previous.renames;
+        rateLimited = previous.rateLimited;
+        failures = previous.failures;
+    }
+
+    void submit(ServerOnlineFun serverOnline)
+    {
+        buffer.setLength(0);
+        format.render(serverOnline, buffer);
+
+        String name = buffer.length() > MAX_NAME_LENGTH ? buffer.substring(0, MAX_NAME_LENGTH).trim() : buffer.toString().trim();
+        boolean online = Boolean.TRUE.equals(serverOnline.isOnline());
+        Integer players = serverOnline.getCurrentPlayers();
+
+        candidate = new Candidate(name, online, online && players != null ? players : 0);
+    }
+
+    /**
+     * @return how much the candidate tells that the channel does not show yet; Integer.MAX_VALUE for an online/offline flip
+     */
+    int informationGain(Candidate c)
+    {
+        if (shownName == null || shownPlayers < 0 || c.online != shownOnline)
+        {
+            return Integer.MAX_VALUE;
+        }
+        return Math.abs(c.players - shownPlayers);
+    }
+
+    void markShown(Candidate c)
+    {
+        shownName = c.name;
+        shownOnline = c.online;
+        shownPlayers = c.players;
+        staleSince = 0;
+    }
+
+    /**
+     * @return wall-clock millis since the channel stopped matching the newest candidate
+     */
+    long staleFor(long now)
+    {
+        if (staleSince == 0)
+        {
+            staleSince = now;
+        }
+        return now - staleSince;
+    }
+
+    void clearStale()
+    {
+        staleSince = 0;
+    }
+
+    long getNextAttemptAt()
+    {
+        return nextAttemptAt;
+    }
+
+    void setNextAttemptAt(long nextAttemptAt)
+    {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    void markLoaded(String currentName)
+    {
+        shownName = currentName;
+        nameLoaded = true;
+    }
+
+    public String getChannelId()
+    {
+        return channelId;
+    }
+
+    String getToken()
+    {
+        return token;
+    }
+
+    int getSignificantChange()
+    {
+        return significantChange;
+    }
+
+    Candidate getCandidate()
+    {
+        return candidate;
+    }
+
+    String getShownName()
+    {
+        return shownName;
+    }
+
+    boolean isNameLoaded()
+    {
+        return nameLoaded;
+    }
+
+    boolean isInFlight()
+    {
+        return inFlight;
+    }
+
+    void setInFlight(boolean inFlight)
+    {
+        this.inFlight = inFlight;
+    }
+
+    void countRename()
+    {
+        renames++;
+    }
+
+    void countRateLimited()
+    {
+        rateLimited++;
+    }
+
+    void countFailure()
+    {
+        failures++;
+    }
+
+    public String getName()
+    {
+        return shownName;
+    }
+
+    public String getPendingName()
+    {
+        Candidate c = candidate;
+        return c != null && !c.name.equals(shownName) ? c.name : null;
+    }
+
+    public long getRenames()
+    {
+        return renames;
+    }
+
+    public long getRateLimited()
+    {
+        return rateLimited;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    static final class Candidate
+    {
+        final String name;
+        final boolean online;
+        final int players;
+
+        private Candidate(String name, boolean online, int players)
+        {
+            this.name = name;
+            this.online = online;
+            this.players = players;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.danielele.channel;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.discord.DiscordRestClient;
+import com.danielele.events.ConfigReloadedEvent;
+import io.quarkus.runtime.ShutdownEvent;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows server stats as a channel name ("Online: 42/60"). Discord allows about two renames per channel
+ * in ten minutes, so renames are scheduled against that window: the first free slot is used right away,
+ * the last one is kept for an online/offline flip or a big player change unless the name has been
+ * stale for half a window. The newest value is always the one sent.
+ */
+@ApplicationScoped
+public class ChannelNameService
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChannelNameService.class);
+
+    private static final int RENAMES_PER_WINDOW = 2;
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long TICK_MILLIS = 5000;
+    private static final long FAILURE_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final String BUDGET_FILE = "OnlineBot_ChannelBudget.json";
+
+    private static final String ROUTE_GET = "GET /channels/{channel.id}";
+    private static final String ROUTE_RENAME = "PATCH /channels/{channel.id}";
+
+    @Inject
+    ConfigService configService;
+    @Inject
+    DiscordRestClient restClient;
+
+    // Rebuilt on reload and swapped, never modified in place
+    private volatile Map<ConfigService.BotInstance, ChannelNameOutput> outputs = Map.of();
+    private volatile RenameBudget budget;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init()
+    {
+        outputs = build(Map.of());
+        if (!outputs.isEmpty())
+        {
+            start();
+        }
+    }
+
+    synchronized void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        if (scheduler == null)
+        {
+            init();
+            return;
+        }
+
+        // Shown state belongs to the channel-name thread, so the old outputs are read there
+        executeOnScheduler(() -> outputs = build(outputs));
+    }
+
+    private Map<ConfigService.BotInstance, ChannelNameOutput> build(Map<ConfigService.BotInstance, ChannelNameOutput> previous)
+    {
+        Map<String, ChannelNameOutput> previousByKey = new HashMap<>();
+        previous.forEach((instance, output) -> previousByKey.put(ConfigService.instanceKey(instance), output));
+
+        Map<ConfigService.BotInstance, ChannelNameOutput> outputs = new IdentityHashMap<>();
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            if (instance.channelName != null && instance.channelName.enabled)
+            {
+                ChannelNameOutput output = new ChannelNameOutput(instance);
+                ChannelNameOutput replaced = previousByKey.get(ConfigService.instanceKey(instance));
+                if (replaced != null)
+                {
+                    output.adopt(replaced);
+                }
+                outputs.put(instance, output);
+                logger.info("Channel name counter enabled for {}:{} in channel {}",
+                        instance.server.ip, instance.server.port, instance.channelName.channelId);
+            }
+        }
+        return outputs;
+    }
+
+    private void start()
+    {
+        budget = new RenameBudget(RENAMES_PER_WINDOW, WINDOW_MILLIS, Path.of(BUDGET_FILE));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("channel-name");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(budget::load);
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void update(ConfigService.BotInstance instance, ServerOnlineFun serverOnline)
+    {
+        ChannelNameOutput output = outputs.get(instance);
+        if (output != null)
+        {
+            output.submit(serverOnline);
+        }
+    }
+
+    public Collection<ChannelNameOutput> getOutputs()
+    {
+        return outputs.values();
+    }
+
+    /**
+     * @return renames left in the current window for the channel, for diagnostics
+     */
+    public int getAvailableRenames(ChannelNameOutput output)
+    {
+        return budget != null ? budget.available(output.getChannelId(), System.currentTimeMillis()) : 0;
+    }
+
+    public long getMillisUntilRename(ChannelNameOutput output)
+    {
+        return budget != null ? budget.waitMillis(output.getChannelId(), System.currentTimeMillis()) : 0;
+    }
+
+    private void tick()
+    {
+        long now = System.currentTimeMillis();
+        for (ChannelNameOutput output : outputs.values())
+        {
+            try
+            {
+                step(output, now);
+            }
+            catch (Exception e)
+            {
+                logger.error("Error while updating channel name of {}", output.getChannelId(), e);
+            }
+        }
+    }
+
+    private void step(ChannelNameOutput output, long now)
+    {
+        if (output.isInFlight() || now < output.getNextAttemptAt())
+        {
+            return;
+        }
+
+        if (!output.isNameLoaded())
+        {
+            loadCurrentName(output);
+            return;
+        }
+
+        ChannelNameOutput.Candidate candidate = output.getCandidate();
+        if (candidate == null || candidate.name.isEmpty() || candidate.name.equals(output.getShownName()))
+        {
+            output.clearStale();
+            return;
+        }
+
+        long staleFor = output.staleFor(now);
+        int available = budget.available(output.getChannelId(), now);
+        if (available == 0 || restClient.waitNanos(output.getToken(), ROUTE_RENAME, output.getChannelId()) > 0)
+        {
+            return;
+        }
+
+        boolean lastSlot = available < RENAMES_PER_WINDOW;
+        if (lastSlot
+                && output.informationGain(candidate) < output.getSignificantChange()
+                && staleFor < WINDOW_MILLIS / 2)
+        {
+            // Small change, keep the last rename of the window for something that matters more
+            return;
+        }
+
+        rename(output, candidate);
+    }
+
+    private void loadCurrentName(ChannelNameOutput output)
+    {
+        output.setInFlight(true);
+        restClient.request(output.getToken(), HttpMethod.GET, ROUTE_GET, output.getChannelId(),
+                        "/channels/" + output.getChannelId(), null)
+                .onComplete(ar ->
+                {
+                    if (ar.succeeded() && ar.result().statusCode() == 200)
+                    {
+                        String name = ar.result().bodyAsJsonObject().getString("name");
+                        executeOnScheduler(() ->
+                        {
+                            output.markLoaded(name);
+                            output.setInFlight(false);
+                        });
+                        return;
+                    }
+
+                    onFailure(output, ar.succeeded() ? "HTTP " + ar.result().statusCode() : ar.cause().getMessage());
+                });
+    }
+
+    private void rename(ChannelNameOutput output, ChannelNameOutput.Candidate candidate)
+    {
+        String channelId = output.getChannelId();
+        output.setInFlight(true);
+
+        restClient.request(output.getToken(), HttpMethod.PATCH, ROUTE_RENAME, channelId,
+                        "/channels/" + channelId, new JsonObject().put("name", candidate.name))
+                .onComplete(ar ->
+                {
+                    if (ar.failed())
+                    {
+                        onFailure(output, ar.cause().getMessage());
+                        return;
+                    }
+
+                    HttpResponse<Buffer> response = ar.result();
+                    long now = System.currentTimeMillis();
+                    if (response.statusCode() == 200)
+                    {
+                        executeOnScheduler(() ->
+                        {
+                            budget.recordRename(channelId, now);
+                            output.markShown(candidate);
+                            output.countRename();
+                            output.setInFlight(false);
+                        });
+                    }
+                    else if (response.statusCode() == 429)
+                    {
+                        Double retryAfter = DiscordRestClient.retryAfter(response);
+                        long until = now + (retryAfter != null ? (long) (retryAfter * 1000) : WINDOW_MILLIS);
+                        logger.warn("Channel {} rename rate limited for {}s", channelId, (until - now) / 1000);
+                        executeOnScheduler(() ->
+                        {
+                            budget.block(channelId, until);
+                            output.countRateLimited();
+                            output.setInFlight(false);
+                        });
+                    }
+                    else
+                    {
+                        onFailure(output, "HTTP " + response.statusCode());
+                    }
+                });
+    }
+
+    private void onFailure(ChannelNameOutput output, String reason)
+    {
+        logger.warn("Channel name update for {} failed: {}, retrying in {}s",
+                output.getChannelId(), reason, TimeUnit.MILLISECONDS.toSeconds(FAILURE_BACKOFF_MILLIS));
+        executeOnScheduler(() ->
+        {
+            output.countFailure();
+            output.setNextAttemptAt(System.currentTimeMillis() + FAILURE_BACKOFF_MILLIS);
+            output.setInFlight(false);
+        });
+    }
+
+    // Shown state belongs to the channel-name thread, responses arrive on the event loop.
+    // In-flight is cleared there too, so the next tick already sees the result.
+    private void executeOnScheduler(Runnable task)
+    {
+        try
+        {
+            scheduler.execute(task);
+        }
+        catch (RuntimeException e)
+        {
+            // Shutting down
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.danielele.channel;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sliding-window log of channel renames, kept in a file so a restart does not hand out
+ * a fresh budget that Discord still counts as spent. Uses wall-clock millis for that reason.
+ */
+class RenameBudget
+{
+    private static final Logger logger = LoggerFactory.getLogger(RenameBudget.class);
+
+    private final int renamesPerWindow;
+    private final long windowMillis;
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ChannelBudget> channels = new HashMap<>();
+
+    RenameBudget(int renamesPerWindow, long windowMillis, Path file)
+    {
+        this.renamesPerWindow = renamesPerWindow;
+        this.windowMillis = windowMillis;
+        this.file = file;
+    }
+
+    synchronized void load()
+    {
+        if (!Files.exists(file))
+        {
+            return;
+        }
+
+        try
+        {
+            channels.putAll(mapper.readValue(file.toFile(), new TypeReference<Map<String, ChannelBudget>>() {}));
+            logger.info("Loaded channel rename budget for {} channel(s) from {}", channels.size(), file);
+        }
+        catch (IOException e)
+        {
+            // A lost budget only risks a 429, Discord then tells us how long to wait
+            logger.warn("Could not read {}, starting with a full rename budget: {}", file, e.getMessage());
+        }
+    }
+
+    synchronized int available(String channelId, long now)
+    {
+        ChannelBudget budget = channels.get(channelId);
+        if (budget == null)
+        {
+            return renamesPerWindow;
+        }
+        if (budget.blockedUntil > now)
+        {
+            return 0;
+        }
+        return Math.max(0, renamesPerWindow - countInWindow(budget, now));
+    }
+
+    /**
+     * @return millis until a rename is allowed, 0 if one is available now
+     */
+    synchronized long waitMillis(String channelId, long now)
+    {
+        ChannelBudget budget = channels.get(channelId);
+        if (budget == null)
+        {
+            return 0;
+        }
+        if (budget.blockedUntil > now)
+        {
+            return budget.blockedUntil - now;
+        }
+        if (countInWindow(budget, now) < renamesPerWindow)
+        {
+            return 0;
+        }
+
+        // The oldest rename still in the window frees the next slot
+        long oldest = Long.MAX_VALUE;
+        for (long at : budget.renames)
+        {
+            if (at > now - windowMillis)
+            {
+                oldest = Math.min(oldest, at);
+            }
+        }
+        return oldest + windowMillis - now;
+    }
+
+    synchronized void recordRename(String channelId, long now)
+    {
+        ChannelBudget budget = channels.computeIfAbsent(channelId, k -> new ChannelBudget());
+        budget.renames.removeIf(at -> at <= now - windowMillis);
+        budget.renames.add(now);
+        save();
+    }
+
+    synchronized void block(String channelId, long until)
+    {
+        channels.computeIfAbsent(channelId, k -> new ChannelBudget()).blockedUntil = until;
+        save();
+    }
+
+    private int countInWindow(ChannelBudget budget, long now)
+    {
+        int count = 0;
+        for (long at : budget.renames)
+        {
+            if (at > now - windowMillis)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void save()
+    {
+        try
+        {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), channels);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Could not save channel rename budget to {}: {}", file, e.getMessage());
+        }
+    }
+
+    @RegisterForReflection
+    public static class ChannelBudget
+    {
+        public List<Long> renames = new ArrayList<>();
+        public long blockedUntil;
+    }
+}
@@ -0,0 +1,173 @@
+package com.danielele.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-instance difference between two validated configs. Instances are matched by
+ * {@link ConfigService#instanceKey}, each pair is classified by the most disruptive change.
+ */
+public class ConfigDiff
+{
+    public enum Kind
+    {
+        /** New instance, needs a bot */
+        ADDED,
+        /** Instance is gone, its bot is stopped */
+        REMOVED,
+        /** Token changed, the gateway session has to be replaced */
+        RESTART,
+        /** Paused, server, updater or output settings changed, polling restarts on the same session */
+        RECONFIGURE,
+        /** Only status or emojis changed, the compiled template is swapped */
+        TEMPLATE,
+        UNCHANGED
+    }
+
+    public static final class Change
+    {
+        private final Kind kind;
+        private final String key;
+        private final ConfigService.BotInstance previous;
+        private final ConfigService.BotInstance current;
+
+        private Change(Kind kind, String key, ConfigService.BotInstance previous, ConfigService.BotInstance current)
+        {
+            this.kind = kind;
+            this.key = key;
+            this.previous = previous;
+            this.current = current;
+        }
+
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * @return the instance of the old config, null for {@link Kind#ADDED}
+         */
+        public ConfigService.BotInstance getPrevious()
+        {
+            return previous;
+        }
+
+        /**
+         * @return the instance of the new config, null for {@link Kind#REMOVED}
+         */
+        public ConfigService.BotInstance getCurrent()
+        {
+            return current;
+        }
+    }
+
+    private final List<Change> changes;
+    private final boolean discordClientChanged;
+
+    private ConfigDiff(List<Change> changes, boolean discordClientChanged)
+    {
+        this.changes = Collections.unmodifiableList(changes);
+        this.discordClientChanged = discordClientChanged;
+    }
+
+    static ConfigDiff compute(ConfigService.AppConfig previous, ConfigService.AppConfig current, ObjectMapper mapper)
+    {
+        Map<String, ConfigService.BotInstance> remaining = new HashMap<>();
+        for (ConfigService.BotInstance instance : previous.instances)
+        {
+            remaining.put(ConfigService.instanceKey(instance), instance);
+        }
+
+        List<Change> changes = new ArrayList<>();
+        for (ConfigService.BotInstance instance : current.instances)
+        {
+            String key = ConfigService.instanceKey(instance);
+            ConfigService.BotInstance old = remaining.remove(key);
+            Kind kind = old == null ? Kind.ADDED : classify(old, instance, mapper);
+            changes.add(new Change(kind, key, old, instance));
+        }
+        for (Map.Entry<String, ConfigService.BotInstance> removed : remaining.entrySet())
+        {
+            changes.add(new Change(Kind.REMOVED, removed.getKey(), removed.getValue(), null));
+        }
+
+        boolean clientChanged = !Objects.equals(
+                mapper.valueToTree(previous.discordClient),
+                mapper.valueToTree(current.discordClient));
+
+        return new ConfigDiff(changes, clientChanged);
+    }
+
+    private static Kind classify(ConfigService.BotInstance old, ConfigService.BotInstance current, ObjectMapper mapper)
+    {
+        if (!same(old.discord, current.discord, mapper))
+        {
+            return Kind.RESTART;
+        }
+        if (old.paused != current.paused
+                || !same(old.server, current.server, mapper)
+                || !same(old.updater, current.updater, mapper)
+                || !same(old.statusEmbed, current.statusEmbed, mapper)
+                || !same(old.channelName, current.channelName, mapper)
+                || !same(old.rotation, current.rotation, mapper)
+                || !same(old.aggregate, current.aggregate, mapper))
+        {
+            return Kind.RECONFIGURE;
+        }
+        if (!same(old.status, current.status, mapper) || !same(old.emojis, current.emojis, mapper))
+        {
+            return Kind.TEMPLATE;
+        }
+        return Kind.UNCHANGED;
+    }
+
+    private static boolean same(Object a, Object b, ObjectMapper mapper)
+    {
+        JsonNode left = mapper.valueToTree(a);
+        JsonNode right = mapper.valueToTree(b);
+        return Objects.equals(left, right);
+    }
+
+    public List<Change> getChanges()
+    {
+        return changes;
+    }
+
+    public boolean isDiscordClientChanged()
+    {
+        return discordClientChanged;
+    }
+
+    public long count(Kind kind)
+    {
+        return changes.stream().filter(c -> c.kind == kind).count();
+    }
+
+    public boolean hasInstanceChanges()
+    {
+        return changes.stream().anyMatch(c -> c.kind != Kind.UNCHANGED);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "added=" + count(Kind.ADDED)
+                + " removed=" + count(Kind.REMOVED)
+                + " restarted=" + count(Kind.RESTART)
+                + " reconfigured=" + count(Kind.RECONFIGURE)
+                + " templates=" + count(Kind.TEMPLATE)
+                + " unchanged=" + count(Kind.UNCHANGED);
+    }
+}
@@ -1,15 +1,22 @@
 package com.danielele.config;
 
 import com.danielele.config.legacy.AppConfig;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 
 public class ConfigLoader
 {
@@ -19,23 +26,158 @@ public class ConfigLoader
 
     private final ObjectMapper mapper;
     private final String configFileName;
+    private final InstanceDirectory instanceDirectory;
 
     public ConfigLoader(ObjectMapper mapper, String configFileName)
     {
         this.mapper = mapper;
         this.configFileName = configFileName;
+        this.instanceDirectory = new InstanceDirectory(mapper);
     }
 
     public ConfigService.AppConfig loadFromFile(File file) throws IOException
     {
-        JsonNode rootNode = mapper.readTree(file);
-        return mapper.treeToValue(rootNode, ConfigService.AppConfig.class);
+        return mapper.readValue(file, ConfigService.AppConfig.class);
     }
 
-    public AppConfig loadLegacyFromFile(File file) throws IOException
+    /**
+     * Reads the file once. Top-level fields are copied into a token buffer while {@code version} and the
+     * shape are noted, the buffer is then bound to the current or the legacy model without parsing again.
+     * A file without {@code instances} or {@code instancesDir} is the single-bot legacy format.
+     */
+    public LoadedConfig load(File file) throws IOException
     {
-        JsonNode rootNode = mapper.readTree(file);
-        return mapper.treeToValue(rootNode, AppConfig.class);
+        try (JsonParser parser = mapper.getFactory().createParser(file))
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new JsonParseException(parser, "config root has to be an object");
+            }
+
+            TokenBuffer buffer = new TokenBuffer(parser);
+            buffer.writeStartObject();
+
+            Integer version = null;
+            boolean current = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String field = parser.currentName();
+                buffer.writeFieldName(field);
+                JsonToken value = parser.nextToken();
+
+                if ("version".equals(field) && value == JsonToken.VALUE_NUMBER_INT)
+                {
+                    version = parser.getIntValue();
+                }
+                else if ("instances".equals(field) || "instancesDir".equals(field))
+                {
+                    current = true;
+                }
+                buffer.copyCurrentStructure(parser);
+            }
+            buffer.writeEndObject();
+
+            try (JsonParser bound = buffer.asParser(mapper))
+            {
+                if (current)
+                {
+                    return new LoadedConfig(version, mapper.readValue(bound, ConfigService.AppConfig.class), null);
+                }
+                return new LoadedConfig(version, null, mapper.readValue(bound, AppConfig.class));
+            }
+        }
+    }
+
+    /**
+     * @return the instance directory of the config resolved next to the config file, null if it has none
+     */
+    public Path instancesDir(ConfigService.AppConfig config)
+    {
+        if (config.instancesDir == null || config.instancesDir.isBlank())
+        {
+            return null;
+        }
+        return Path.of(configFileName).toAbsolutePath().getParent().resolve(config.instancesDir).normalize();
+    }
+
+    /**
+     * Appends the instances of {@code instancesDir} after the inline ones. Only changed files are read again.
+     */
+    public void loadIncludes(ConfigService.AppConfig config) throws IOException
+    {
+        Path dir = instancesDir(config);
+        if (dir == null)
+        {
+            return;
+        }
+        if (dir.equals(Path.of(configFileName).toAbsolutePath().getParent()))
+        {
+            // The config file and its backups would be read as instances
+            throw new IOException("instancesDir must not be the directory of " + configFileName);
+        }
+        if (config.instances == null)
+        {
+            config.instances = new ArrayList<>();
+        }
+        config.instances.addAll(instanceDirectory.load(dir));
+    }
+
+    public void saveIncluded(ConfigService.BotInstance instance) throws IOException
+    {
+        instanceDirectory.save(instance);
+    }
+
+    public void deleteIncluded(ConfigService.BotInstance instance) throws IOException
+    {
+        instanceDirectory.delete(instance);
+    }
+
+    /**
+     * Fills sections and fields an instance leaves unset from the shared {@code defaults}.
+     * Runs before validation, what is still missing afterwards gets the built-in defaults.
+     * Works on the bound instance, so only null fields count as unset: a primitive field is always set
+     * and is only inherited together with its whole section.
+     */
+    public void applyDefaults(ConfigService.AppConfig config) throws IOException
+    {
+        if (config.defaults == null || config.instances == null)
+        {
+            return;
+        }
+
+        JsonNode defaults = mapper.valueToTree(config.defaults);
+        for (int i = 0; i < config.instances.size(); i++)
+        {
+            ConfigService.BotInstance instance = config.instances.get(i);
+            ObjectNode tree = mapper.valueToTree(instance);
+            fillMissing(tree, defaults);
+
+            ConfigService.BotInstance merged = mapper.treeToValue(tree, ConfigService.BotInstance.class);
+            merged.source = instance.source;
+            config.instances.set(i, merged);
+        }
+    }
+
+    private static void fillMissing(ObjectNode target, JsonNode defaults)
+    {
+        defaults.properties().forEach(entry ->
+        {
+            JsonNode value = entry.getValue();
+            if (value.isNull())
+            {
+                return;
+            }
+
+            JsonNode current = target.get(entry.getKey());
+            if (current == null || current.isNull())
+            {
+                target.set(entry.getKey(), value.deepCopy());
+            }
+            else if (current.isObject() && value.isObject())
+            {
+                fillMissing((ObjectNode) current, value);
+            }
+        });
     }
 
     public void saveConfig(ConfigService.AppConfig config) throws IOException
@@ -209,13 +351,50 @@ public class ConfigLoader
         withComments.append("//   ${time} - In-game time\n");
         withComments.append("//   ${queue} - Queue size\n");
         withComments.append("//   ${status.queueBlock} - Queue block (if enabled)\n");
+        withComments.append("//   ${servers} / ${servers.total} - Members online / all members (aggregate instances)\n");
         withComments.append("//\n");
         withComments.append("//   Possible values for activityType: PLAYING, LISTENING, WATCHING, COMPETING, CUSTOM_STATUS\n");
         withComments.append("//\n");
-        withComments.append("// Note: Changes require bot restart\n");
+        withComments.append("// Note: Changes are applied on save, only discordClient and history require a bot restart\n");
         withComments.append("//\n\n");
         withComments.append(json);
 
-        Files.writeString(file.toPath(), withComments.toString());
+        // Written next to the file and moved over it, the watcher and a crash never see half a config
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(temp, withComments.toString());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static final class LoadedConfig
+    {
+        private final Integer version;
+        private final ConfigService.AppConfig config;
+        private final AppConfig legacy;
+
+        private LoadedConfig(Integer version, ConfigService.AppConfig config, AppConfig legacy)
+        {
+            this.version = version;
+            this.config = config;
+            this.legacy = legacy;
+        }
+
+        Integer getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * @return the config in the current model, null for a legacy file
+         */
+        ConfigService.AppConfig getConfig()
+        {
+            return config;
+        }
+
+        AppConfig getLegacy()
+        {
+            return legacy;
+        }
     }
 }
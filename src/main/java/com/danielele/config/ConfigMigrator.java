@@ -1,5 +1,7 @@
 package com.danielele.config;
 
+import com.danielele.JdaProfile;
+import com.danielele.gateway.ClientImplementation;
 import com.danielele.config.legacy.AppConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +24,8 @@ public class ConfigMigrator
 
         ConfigService.AppConfig newConfig = new ConfigService.AppConfig();
         newConfig.version = targetVersion;
+        newConfig.discordClient = oldConfig.discordClient != null ? oldConfig.discordClient : createDefaultDiscordClient();
+        newConfig.history = oldConfig.history != null ? oldConfig.history : createDefaultHistory();
 
         if (oldConfig.instances != null && !oldConfig.instances.isEmpty())
         {
@@ -46,6 +50,8 @@ public class ConfigMigrator
 
         ConfigService.AppConfig newConfig = new ConfigService.AppConfig();
         newConfig.version = targetVersion;
+        newConfig.discordClient = createDefaultDiscordClient();
+        newConfig.history = createDefaultHistory();
 
         ConfigService.BotInstance botInstance = convertLegacyToInstance(legacyConfig);
 
@@ -80,6 +86,9 @@ public class ConfigMigrator
         instance.status.activityType = legacy.status.activityType;
         instance.status.serverOfflineMessage = legacy.status.serverOfflineMessage;
 
+        instance.statusEmbed = createDefaultStatusEmbed();
+        instance.channelName = createDefaultChannelName();
+
         instance.discord = new ConfigService.DiscordConfig();
         instance.discord.token = legacy.discord.token;
 
@@ -93,6 +102,8 @@ public class ConfigMigrator
     {
         ConfigService.AppConfig config = new ConfigService.AppConfig();
         config.version = targetVersion;
+        config.discordClient = createDefaultDiscordClient();
+        config.history = createDefaultHistory();
 
         config.instances = new ArrayList<>();
         config.instances.add(createDefaultInstance());
@@ -100,6 +111,33 @@ public class ConfigMigrator
         return config;
     }
 
+    private ConfigService.DiscordClientConfig createDefaultDiscordClient()
+    {
+        ConfigService.DiscordClientConfig discordClient = new ConfigService.DiscordClientConfig();
+        discordClient.implementation = ClientImplementation.JDA.name();
+        discordClient.gatewayUrl = "wss://gateway.discord.gg";
+        discordClient.profile = JdaProfile.PRESENCE_ONLY.name();
+        discordClient.startupThreads = 4;
+        discordClient.identifyConcurrency = 1;
+        discordClient.connectTimeoutSeconds = 60;
+        discordClient.rateLimitThreads = 2;
+        discordClient.callbackThreads = 2;
+        discordClient.gatewayThreads = 2;
+        discordClient.eventThreads = 1;
+        discordClient.httpMaxRequests = 64;
+        discordClient.httpMaxRequestsPerHost = 16;
+        return discordClient;
+    }
+
+    private ConfigService.HistoryConfig createDefaultHistory()
+    {
+        ConfigService.HistoryConfig history = new ConfigService.HistoryConfig();
+        history.directory = "history";
+        history.retentionDays = 7;
+        history.flushSeconds = 10;
+        return history;
+    }
+
     private ConfigService.BotInstance createDefaultInstance()
     {
         ConfigService.BotInstance instance = new ConfigService.BotInstance();
@@ -114,6 +152,8 @@ public class ConfigMigrator
         instance.updater = new ConfigService.UpdaterConfig();
         instance.updater.intervalSeconds = 10;
         instance.status = createDefaultStatus();
+        instance.statusEmbed = createDefaultStatusEmbed();
+        instance.channelName = createDefaultChannelName();
 
         instance.discord = new ConfigService.DiscordConfig();
         instance.discord.token = "YOUR_BOT_TOKEN_HERE";
@@ -131,6 +171,28 @@ public class ConfigMigrator
         return emojis;
     }
 
+    private ConfigService.StatusEmbedConfig createDefaultStatusEmbed()
+    {
+        ConfigService.StatusEmbedConfig statusEmbed = new ConfigService.StatusEmbedConfig();
+        statusEmbed.enabled = false;
+        statusEmbed.channelId = "";
+        statusEmbed.title = "";
+        statusEmbed.trendPoints = 12;
+        statusEmbed.trendStepSeconds = 300;
+        return statusEmbed;
+    }
+
+    private ConfigService.ChannelNameConfig createDefaultChannelName()
+    {
+        ConfigService.ChannelNameConfig channelName = new ConfigService.ChannelNameConfig();
+        channelName.enabled = false;
+        channelName.channelId = "";
+        channelName.template = "Online: ${online}/${max}";
+        channelName.offlineName = "Server offline";
+        channelName.significantChange = 5;
+        return channelName;
+    }
+
     private ConfigService.StatusConfig createDefaultStatus()
     {
         ConfigService.StatusConfig status = new ConfigService.StatusConfig();
@@ -1,21 +1,43 @@
 package com.danielele.config;
 
+import com.danielele.events.ConfigReloadedEvent;
+import com.danielele.presence.template.PresenceFormat;
+import com.danielele.provider.ServerTarget;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Priority;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
 import jakarta.interceptor.Interceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 @Startup
 @Priority(Interceptor.Priority.PLATFORM_BEFORE)
@@ -30,8 +52,18 @@ public class ConfigService
     private static final String ENV_INSTANCE_PREFIX = "INSTANCE_%d_";
     private static final String ENV_GLOBAL_SERVER_IP = "SERVER_IP";
     private static final String ENV_GLOBAL_DISCORD_TOKEN = "DISCORD_TOKEN";
-
-    private AppConfig config;
+    // Editors often write a file in several steps, wait for them to finish
+    private static final long RELOAD_DEBOUNCE_MILLIS = 500;
+    private static final int PRINTED_INSTANCES_LIMIT = 20;
+
+    @Inject
+    Event<ConfigReloadedEvent> configReloadedEvent;
+
+    private volatile AppConfig config;
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private volatile Path includeDir;
+    private final ObjectMapper mapper;
     private final ConfigLoader loader;
     private final ConfigValidator validator;
     private final ConfigMigrator migrator;
@@ -42,6 +74,7 @@ public class ConfigService
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
         mapper.enable(JsonParser.Feature.ALLOW_COMMENTS);
 
+        this.mapper = mapper;
         this.loader = new ConfigLoader(mapper, CONFIG_FILE);
         this.validator = new ConfigValidator();
         this.migrator = new ConfigMigrator(CONFIG_VERSION);
@@ -54,6 +87,266 @@ public class ConfigService
         loadConfig();
         logger.info("Configuration loaded successfully");
         printConfig();
+        startWatcher();
+    }
+
+    /**
+     * Reads the config file again and applies it. Instances are diffed against the running config,
+     * observers of {@link ConfigReloadedEvent} only touch what changed.
+     * {@code discordClient} is not applied, it needs a restart.
+     *
+     * @throws IOException if the file cannot be read or parsed, the running config is kept
+     */
+    public synchronized ConfigDiff reload() throws IOException
+    {
+        return apply(loadResolved());
+    }
+
+    /**
+     * Changes the config files and applies the result like a reload. The change works on the files' values,
+     * without shared defaults or environment overrides, so those are never written back.
+     * It also gets the key every file instance has once running, in the same order: environment overrides
+     * and generated ids for duplicates can make it differ from the key of the file values.
+     * Only the files whose instances changed are replaced, each atomically.
+     *
+     * @throws IllegalArgumentException from the change, nothing is saved then
+     */
+    public synchronized ConfigDiff edit(BiConsumer<AppConfig, List<String>> change) throws IOException
+    {
+        AppConfig edited = loadCurrentFile();
+        loader.loadIncludes(edited);
+
+        List<String> keys = new ArrayList<>();
+        List<BotInstance> resolved = loadResolved().instances;
+        // An empty file gets a placeholder instance, which is not in the file to edit
+        if (resolved.size() == edited.instances.size())
+        {
+            for (BotInstance instance : resolved)
+            {
+                keys.add(instanceKey(instance));
+            }
+        }
+
+        JsonNode mainBefore = mapper.valueToTree(inlineInstances(edited.instances));
+        Map<BotInstance, JsonNode> included = new IdentityHashMap<>();
+        for (BotInstance instance : edited.instances)
+        {
+            if (instance.source != null)
+            {
+                included.put(instance, mapper.valueToTree(instance));
+            }
+        }
+
+        change.accept(edited, keys);
+
+        for (BotInstance instance : edited.instances)
+        {
+            JsonNode before = instance.source != null ? included.remove(instance) : null;
+            if (before != null && !before.equals(mapper.valueToTree(instance)))
+            {
+                loader.saveIncluded(instance);
+            }
+        }
+        for (BotInstance removed : included.keySet())
+        {
+            loader.deleteIncluded(removed);
+        }
+
+        edited.instances = inlineInstances(edited.instances);
+        if (!mainBefore.equals(mapper.valueToTree(edited.instances)))
+        {
+            loader.saveConfig(edited);
+        }
+        return reload();
+    }
+
+    private static List<BotInstance> inlineInstances(List<BotInstance> instances)
+    {
+        List<BotInstance> inline = new ArrayList<>();
+        for (BotInstance instance : instances)
+        {
+            if (instance.source == null)
+            {
+                inline.add(instance);
+            }
+        }
+        return inline;
+    }
+
+    /**
+     * Parses one instance in the config file format, comments allowed.
+     */
+    public BotInstance readInstance(String json) throws IOException
+    {
+        return mapper.readValue(json, BotInstance.class);
+    }
+
+    private AppConfig loadCurrentFile() throws IOException
+    {
+        AppConfig loaded = loader.loadFromFile(new File(CONFIG_FILE));
+        if (loaded.version == null || loaded.version < CONFIG_VERSION)
+        {
+            throw new IOException("config version " + loaded.version + " has to be migrated, restart the bot to apply it");
+        }
+        return loaded;
+    }
+
+    // The file as it would run: includes, shared defaults, validation and environment overrides
+    private AppConfig loadResolved() throws IOException
+    {
+        AppConfig loaded = loadCurrentFile();
+        loader.loadIncludes(loaded);
+        loader.applyDefaults(loaded);
+        validator.validateAndFix(loaded);
+        applyEnvOverrides(loaded);
+        return loaded;
+    }
+
+    private ConfigDiff apply(AppConfig loaded)
+    {
+        ConfigDiff diff = ConfigDiff.compute(config, loaded, mapper);
+        if (!mapper.valueToTree(config.history).equals(mapper.valueToTree(loaded.history)))
+        {
+            logger.warn("history section changed, it is applied on the next restart");
+        }
+        loaded.history = config.history;
+
+        if (!diff.hasInstanceChanges() && !diff.isDiscordClientChanged())
+        {
+            // Usually our own save seen by the watcher
+            logger.debug("Config file saved without changes");
+            return diff;
+        }
+        if (diff.isDiscordClientChanged())
+        {
+            logger.warn("discordClient section changed, it is applied on the next restart");
+        }
+        loaded.discordClient = config.discordClient;
+
+        config = loaded;
+        logger.info("Config reloaded: {}", diff);
+        configReloadedEvent.fire(new ConfigReloadedEvent(diff));
+        return diff;
+    }
+
+    private void startWatcher()
+    {
+        Path file = Path.of(CONFIG_FILE).toAbsolutePath();
+        try
+        {
+            watchService = FileSystems.getDefault().newWatchService();
+            watchDir(file.getParent());
+        }
+        catch (IOException e)
+        {
+            logger.warn("Cannot watch {} for changes, edits need a restart: {}", file, e.getMessage());
+            return;
+        }
+        watchIncludes();
+
+        Thread watcher = new Thread(() -> watch(file), "config-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchDir(Path dir) throws IOException
+    {
+        if (!watchedDirs.containsValue(dir))
+        {
+            watchedDirs.put(dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE), dir);
+        }
+    }
+
+    // instancesDir can appear or change with a reload
+    private void watchIncludes()
+    {
+        Path dir = loader.instancesDir(config);
+        includeDir = dir;
+        if (dir == null || !Files.isDirectory(dir))
+        {
+            return;
+        }
+
+        try
+        {
+            watchDir(dir);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Cannot watch {} for changes: {}", dir, e.getMessage());
+        }
+    }
+
+    private boolean isConfigFile(Path dir, Path changed, Path file)
+    {
+        return changed.equals(file)
+                || (dir.equals(includeDir) && InstanceDirectory.isInstanceName(changed.getFileName().toString()));
+    }
+
+    private void watch(Path file)
+    {
+        try
+        {
+            while (true)
+            {
+                WatchKey key = watchService.take();
+                Path dir = watchedDirs.get(key);
+                boolean touched = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (dir != null && event.context() instanceof Path name)
+                    {
+                        touched |= isConfigFile(dir, dir.resolve(name), file);
+                    }
+                }
+                key.reset();
+
+                if (!touched)
+                {
+                    continue;
+                }
+
+                Thread.sleep(RELOAD_DEBOUNCE_MILLIS);
+                WatchKey pending;
+                while ((pending = watchService.poll()) != null)
+                {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+
+                try
+                {
+                    reload();
+                    watchIncludes();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Config change in {} not applied, keeping the running config: {}", CONFIG_FILE, e.getMessage());
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            // Shutting down
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (watchService != null)
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to close config watcher: {}", e.getMessage());
+            }
+        }
     }
 
     private void loadConfig()
@@ -74,37 +367,66 @@ public class ConfigService
 
             logger.info("Loading config from file: {}", CONFIG_FILE);
 
-            com.danielele.config.legacy.AppConfig legacyConfig = loadLegacyConfig(configFile);
+            long startedAt = System.nanoTime();
+            ConfigLoader.LoadedConfig loaded = loader.load(configFile);
+            long readAt = System.nanoTime();
 
             AppConfig loadedConfig;
+            boolean migrated = false;
 
-            if (legacyConfig != null)
+            if (loaded.getLegacy() != null)
             {
-                loadedConfig = migrator.migrateFromLegacy(legacyConfig);
+                loadedConfig = migrator.migrateFromLegacy(loaded.getLegacy());
             }
             else
             {
-                loadedConfig = loader.loadFromFile(configFile);
+                loadedConfig = loaded.getConfig();
 
-                if (loadedConfig.version == null || loadedConfig.version < CONFIG_VERSION)
+                if (loaded.getVersion() == null || loaded.getVersion() < CONFIG_VERSION)
                 {
-                    logger.warn("Config version mismatch: {} < {}", loadedConfig.version, CONFIG_VERSION);
+                    logger.warn("Config version mismatch: {} < {}", loaded.getVersion(), CONFIG_VERSION);
                     loadedConfig = migrator.migrate(loadedConfig);
-                    validator.validateAndFix(loadedConfig);
-                    loader.backupAndSave(configFile, loadedConfig);
+                    migrated = true;
                 }
             }
+            long migratedAt = System.nanoTime();
+
+            try
+            {
+                loader.loadIncludes(loadedConfig);
+            }
+            catch (IOException e)
+            {
+                // Not the main file's fault, it is kept as is; fixing the file reloads its instances
+                logger.error("Instances from {} not loaded: {}", loadedConfig.instancesDir, e.getMessage());
+            }
+            loader.applyDefaults(loadedConfig);
+            long includedAt = System.nanoTime();
 
             validator.validateAndFix(loadedConfig);
+            long validatedAt = System.nanoTime();
 
-            if (legacyConfig != null)
+            if (loaded.getLegacy() != null)
             {
                 loader.saveConfig(loadedConfig);
             }
+            else if (migrated)
+            {
+                loader.backupAndSave(configFile, loadedConfig);
+            }
 
             applyEnvOverrides(loadedConfig);
             config = loadedConfig;
-            logger.info("Config loaded and validated successfully");
+            long doneAt = System.nanoTime();
+
+            logger.info("Config loaded and validated successfully: {} instances in {} ms (read {} ms, migrate {} ms, includes {} ms, validate {} ms, save and env {} ms)",
+                    loadedConfig.instances.size(),
+                    millis(doneAt - startedAt),
+                    millis(readAt - startedAt),
+                    millis(migratedAt - readAt),
+                    millis(includedAt - migratedAt),
+                    millis(validatedAt - includedAt),
+                    millis(doneAt - validatedAt));
         }
         catch (Exception e)
         {
@@ -142,6 +464,8 @@ public class ConfigService
             {
                 instance.server.ip = envPair.serverIp;
                 instance.discord.token = envPair.discordToken;
+                // Compiled by the validator from the file's ip
+                instance.server.target = ServerTarget.compile(instance.server);
                 anyEnvOverride = true;
 
                 logger.info("Instance[{}]: using environment variables '{}' and '{}'.",
@@ -169,6 +493,16 @@ public class ConfigService
         }
     }
 
+    /**
+     * @return true if {@code INSTANCE_N_*} (or the global variables for instance 0) are set for this index,
+     * such an override stays with the index, not with the instance
+     */
+    public boolean isEnvOverridden(int instanceIndex)
+    {
+        EnvPair envPair = resolveEnvPair(instanceIndex);
+        return envPair.hasFullPair() || envPair.hasPartialPair();
+    }
+
     private boolean isCloudRunAlikeEnvironment()
     {
         return hasValue(System.getenv("K_SERVICE"));
@@ -256,30 +590,48 @@ public class ConfigService
         }
     }
 
-    private com.danielele.config.legacy.AppConfig loadLegacyConfig(File configFile)
+    private static long millis(long nanos)
     {
-        try
-        {
-            return loader.loadLegacyFromFile(configFile);
-        }
-        catch (IOException e)
-        {
-            return null;
-        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
     private void printConfig()
     {
         logger.info("Config version: {}", config.version);
         logger.info("Bot instances configured: {}", config.instances != null ? config.instances.size() : 0);
+        logger.info("Discord client: implementation={}, profile={}, startupThreads={}, identifyConcurrency={}, connectTimeout={}s, rateLimitThreads={}, callbackThreads={}, gatewayThreads={}, eventThreads={}, httpMaxRequests={} ({} per host)",
+                config.discordClient.implementation,
+                config.discordClient.profile,
+                config.discordClient.startupThreads,
+                config.discordClient.identifyConcurrency,
+                config.discordClient.connectTimeoutSeconds,
+                config.discordClient.rateLimitThreads,
+                config.discordClient.callbackThreads,
+                config.discordClient.gatewayThreads,
+                config.discordClient.eventThreads,
+                config.discordClient.httpMaxRequests,
+                config.discordClient.httpMaxRequestsPerHost);
 
         if (config.instances != null)
         {
+            // Large fleets list only the first instances, the rest at debug level
             for (int i = 0; i < config.instances.size(); i++)
             {
                 BotInstance inst = config.instances.get(i);
-                logger.info("  Instance[{}]: {}:{} (update: {}s)",
-                        i, inst.server.ip, inst.server.port, inst.updater.intervalSeconds);
+                if (i < PRINTED_INSTANCES_LIMIT)
+                {
+                    logger.info("  Instance[{}]: {}:{} (update: {}s)",
+                            i, inst.server.ip, inst.server.port, inst.updater.intervalSeconds);
+                }
+                else
+                {
+                    logger.debug("  Instance[{}]: {}:{} (update: {}s)",
+                            i, inst.server.ip, inst.server.port, inst.updater.intervalSeconds);
+                }
+            }
+            if (config.instances.size() > PRINTED_INSTANCES_LIMIT)
+            {
+                logger.info("  ... and {} more instances", config.instances.size() - PRINTED_INSTANCES_LIMIT);
             }
         }
     }
@@ -290,21 +642,109 @@ public class ConfigService
         return config.instances;
     }
 
+    public DiscordClientConfig getDiscordClientConfig()
+    {
+        return config.discordClient;
+    }
+
+    public HistoryConfig getHistoryConfig()
+    {
+        return config.history;
+    }
+
+    /**
+     * @return the directory of the durable history, null if it is kept in memory only
+     */
+    public Path getHistoryDirectory()
+    {
+        String directory = config.history.directory;
+        if (directory == null || directory.isBlank())
+        {
+            return null;
+        }
+        return Path.of(CONFIG_FILE).toAbsolutePath().getParent().resolve(directory).normalize();
+    }
+
+    /**
+     * Identity of an instance across reloads: its {@code id}, or {@code ip:port} when no id is set.
+     */
+    public static String instanceKey(BotInstance instance)
+    {
+        if (instance.id != null && !instance.id.isBlank())
+        {
+            return instance.id;
+        }
+        return instance.server.ip + ":" + instance.server.port;
+    }
+
     @RegisterForReflection
     public static class AppConfig
     {
         public Integer version;
+        public DiscordClientConfig discordClient;
+        // Shared by all instances, each instance can still override any field
+        public InstanceDefaults defaults;
+        // Directory with one instance per <name>.json file, relative to the config file
+        public String instancesDir;
+        public HistoryConfig history;
         public List<BotInstance> instances = new ArrayList<>();
     }
 
+    @RegisterForReflection
+    public static class HistoryConfig
+    {
+        // Relative to the config file, empty keeps the history in memory only
+        public String directory;
+        public int retentionDays;
+        public int flushSeconds;
+    }
+
+    @RegisterForReflection
+    public static class InstanceDefaults
+    {
+        public EmojisConfig emojis;
+        public UpdaterConfig updater;
+        public StatusConfig status;
+    }
+
+    @RegisterForReflection
+    public static class DiscordClientConfig
+    {
+        public String implementation;
+        public String gatewayUrl;
+        public String profile;
+        public int startupThreads;
+        public int identifyConcurrency;
+        public int connectTimeoutSeconds;
+        public int rateLimitThreads;
+        public int callbackThreads;
+        public int gatewayThreads;
+        public int eventThreads;
+        public int httpMaxRequests;
+        public int httpMaxRequestsPerHost;
+    }
+
     @RegisterForReflection
     public static class BotInstance
     {
+        public String id;
+        // Stays connected but is not polled
+        public boolean paused;
         public DiscordConfig discord;
         public ServerConfig server;
         public EmojisConfig emojis;
         public UpdaterConfig updater;
         public StatusConfig status;
+        public StatusEmbedConfig statusEmbed;
+        public ChannelNameConfig channelName;
+        public RotationConfig rotation;
+        public AggregateConfig aggregate;
+
+        @JsonIgnore
+        public PresenceFormat presenceFormat;
+        // File of an instance from instancesDir, null for instances in the main config
+        @JsonIgnore
+        public Path source;
     }
 
     @RegisterForReflection
@@ -314,6 +754,10 @@ public class ConfigService
         public int port;
         public int steamQueryPort;
         public String onlineProvider;
+
+        // Compiled by the validator
+        @JsonIgnore
+        public ServerTarget target;
     }
 
     @RegisterForReflection
@@ -335,6 +779,60 @@ public class ConfigService
         public String serverOfflineMessage;
     }
 
+    @RegisterForReflection
+    public static class StatusEmbedConfig
+    {
+        public boolean enabled;
+        public String channelId;
+        public String title;
+        public int trendPoints;
+        public int trendStepSeconds;
+    }
+
+    @RegisterForReflection
+    public static class ChannelNameConfig
+    {
+        public boolean enabled;
+        public String channelId;
+        public String template;
+        public String offlineName;
+        public int significantChange;
+
+        @JsonIgnore
+        public PresenceFormat format;
+    }
+
+    /**
+     * Extra servers shown in turn by the bot of an instance, the instance's own server comes first.
+     */
+    @RegisterForReflection
+    public static class RotationConfig
+    {
+        public int intervalSeconds;
+        public List<RotationServerConfig> servers = new ArrayList<>();
+    }
+
+    @RegisterForReflection
+    public static class RotationServerConfig
+    {
+        public ServerConfig server;
+        public UpdaterConfig updater;
+        public StatusConfig status;
+
+        @JsonIgnore
+        public PresenceFormat presenceFormat;
+    }
+
+    /**
+     * Member servers whose totals are shown by one bot, the instance's own {@code server} is then not queried.
+     */
+    @RegisterForReflection
+    public static class AggregateConfig
+    {
+        public int deadlineMillis;
+        public List<ServerConfig> members = new ArrayList<>();
+    }
+
     @RegisterForReflection
     public static class UpdaterConfig
     {
@@ -1,21 +1,44 @@
 package com.danielele.config;
 
+import com.danielele.JdaProfile;
+import com.danielele.gateway.ClientImplementation;
+import com.danielele.presence.template.PresenceFormat;
+import com.danielele.presence.template.PresenceTemplateException;
+import com.danielele.provider.ServerTarget;
 import net.dv8tion.jda.api.entities.Activity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 public class ConfigValidator
 {
     private static final Logger logger = LoggerFactory.getLogger(ConfigValidator.class);
+    // Presence updates are limited to 5 per 20 seconds per connection
+    private static final int MIN_ROTATION_INTERVAL_SECONDS = 10;
+    private static final int DEFAULT_ROTATION_INTERVAL_SECONDS = 15;
+    private static final int DEFAULT_AGGREGATE_DEADLINE_MILLIS = 3000;
+    // Discord rejects a message with more embeds
+    private static final int MAX_EMBEDS_PER_MESSAGE = 10;
 
     public void validateAndFix(ConfigService.AppConfig config)
     {
+        validateAndFixDiscordClient(config);
+        validateAndFixHistory(config);
+
         if (config.instances == null || config.instances.isEmpty())
         {
             logger.warn("No bot instances configured, adding default instance");
-            config.instances = java.util.List.of(createDefaultInstance());
+            ConfigService.BotInstance instance = createDefaultInstance();
+            compilePresenceFormat(instance, 0, instance);
+            compileTargets(instance);
+            config.instances = java.util.List.of(instance);
         }
         else
         {
@@ -24,6 +47,149 @@ public class ConfigValidator
                 logger.debug("Validating instance {}", i);
                 validateAndFixInstance(config.instances.get(i), i);
             }
+            ensureUniqueKeys(config);
+            limitStatusEmbedsPerChannel(config);
+        }
+    }
+
+    // Instances of one channel share a message with one embed each, a message over the limit would never be sent
+    private void limitStatusEmbedsPerChannel(ConfigService.AppConfig config)
+    {
+        Map<String, Integer> perChannel = new HashMap<>();
+        for (int i = 0; i < config.instances.size(); i++)
+        {
+            ConfigService.StatusEmbedConfig embed = config.instances.get(i).statusEmbed;
+            if (embed == null || !embed.enabled)
+            {
+                continue;
+            }
+            int count = perChannel.merge(embed.channelId, 1, Integer::sum);
+            if (count > MAX_EMBEDS_PER_MESSAGE)
+            {
+                logger.warn("Instance[{}]: channel {} already has {} status embeds, the most one message can hold, status embed disabled",
+                        i, embed.channelId, MAX_EMBEDS_PER_MESSAGE);
+                embed.enabled = false;
+            }
+        }
+    }
+
+    // Instances are matched by key on reload and bots are registered by it, so it has to be unique
+    private void ensureUniqueKeys(ConfigService.AppConfig config)
+    {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < config.instances.size(); i++)
+        {
+            ConfigService.BotInstance instance = config.instances.get(i);
+            String key = ConfigService.instanceKey(instance);
+            if (!keys.add(key))
+            {
+                instance.id = key + "#" + i;
+                keys.add(instance.id);
+                logger.warn("Instance[{}]: '{}' is used by another instance, using id '{}'. Set a unique 'id' to keep it stable",
+                        i, key, instance.id);
+            }
+        }
+    }
+
+    private void validateAndFixDiscordClient(ConfigService.AppConfig config)
+    {
+        ConfigService.DiscordClientConfig defaults = createDefaultDiscordClient();
+
+        if (config.discordClient == null)
+        {
+            logger.info("Discord client section missing, using defaults");
+            config.discordClient = defaults;
+            return;
+        }
+
+        ConfigService.DiscordClientConfig client = config.discordClient;
+        if (ClientImplementation.fromString(client.implementation) == null)
+        {
+            logger.warn("Invalid discordClient.implementation '{}', using default ({})", client.implementation, defaults.implementation);
+            client.implementation = defaults.implementation;
+        }
+        if (client.gatewayUrl == null || !(client.gatewayUrl.startsWith("wss://") || client.gatewayUrl.startsWith("ws://")))
+        {
+            logger.warn("Invalid discordClient.gatewayUrl '{}', using default", client.gatewayUrl);
+            client.gatewayUrl = defaults.gatewayUrl;
+        }
+        else if (client.gatewayUrl.endsWith("/"))
+        {
+            client.gatewayUrl = client.gatewayUrl.substring(0, client.gatewayUrl.length() - 1);
+        }
+        if (JdaProfile.fromString(client.profile) == null)
+        {
+            logger.warn("Invalid discordClient.profile '{}', using default ({})", client.profile, defaults.profile);
+            client.profile = defaults.profile;
+        }
+        if (client.startupThreads <= 0)
+        {
+            logger.warn("Invalid discordClient.startupThreads '{}', using default", client.startupThreads);
+            client.startupThreads = defaults.startupThreads;
+        }
+        if (client.identifyConcurrency <= 0)
+        {
+            logger.warn("Invalid discordClient.identifyConcurrency '{}', using default", client.identifyConcurrency);
+            client.identifyConcurrency = defaults.identifyConcurrency;
+        }
+        if (client.connectTimeoutSeconds <= 0)
+        {
+            logger.warn("Invalid discordClient.connectTimeoutSeconds '{}', using default", client.connectTimeoutSeconds);
+            client.connectTimeoutSeconds = defaults.connectTimeoutSeconds;
+        }
+        if (client.rateLimitThreads <= 0)
+        {
+            logger.warn("Invalid discordClient.rateLimitThreads '{}', using default", client.rateLimitThreads);
+            client.rateLimitThreads = defaults.rateLimitThreads;
+        }
+        if (client.callbackThreads <= 0)
+        {
+            logger.warn("Invalid discordClient.callbackThreads '{}', using default", client.callbackThreads);
+            client.callbackThreads = defaults.callbackThreads;
+        }
+        if (client.gatewayThreads <= 0)
+        {
+            logger.warn("Invalid discordClient.gatewayThreads '{}', using default", client.gatewayThreads);
+            client.gatewayThreads = defaults.gatewayThreads;
+        }
+        if (client.eventThreads <= 0)
+        {
+            logger.warn("Invalid discordClient.eventThreads '{}', using default", client.eventThreads);
+            client.eventThreads = defaults.eventThreads;
+        }
+        if (client.httpMaxRequests <= 0)
+        {
+            logger.warn("Invalid discordClient.httpMaxRequests '{}', using default", client.httpMaxRequests);
+            client.httpMaxRequests = defaults.httpMaxRequests;
+        }
+        if (client.httpMaxRequestsPerHost <= 0 || client.httpMaxRequestsPerHost > client.httpMaxRequests)
+        {
+            logger.warn("Invalid discordClient.httpMaxRequestsPerHost '{}', using default", client.httpMaxRequestsPerHost);
+            client.httpMaxRequestsPerHost = Math.min(defaults.httpMaxRequestsPerHost, client.httpMaxRequests);
+        }
+    }
+
+    private void validateAndFixHistory(ConfigService.AppConfig config)
+    {
+        ConfigService.HistoryConfig defaults = createDefaultHistory();
+
+        if (config.history == null)
+        {
+            logger.info("History section missing, using defaults");
+            config.history = defaults;
+            return;
+        }
+
+        ConfigService.HistoryConfig history = config.history;
+        if (history.retentionDays <= 0)
+        {
+            logger.warn("Invalid history.retentionDays '{}', using default", history.retentionDays);
+            history.retentionDays = defaults.retentionDays;
+        }
+        if (history.flushSeconds <= 0)
+        {
+            logger.warn("Invalid history.flushSeconds '{}', using default", history.flushSeconds);
+            history.flushSeconds = defaults.flushSeconds;
         }
     }
 
@@ -150,6 +316,287 @@ public class ConfigValidator
                 }
             }
         }
+
+        validateAndFixStatusEmbed(instance, index, defaults);
+        compilePresenceFormat(instance, index, defaults);
+        validateAndFixChannelName(instance, index, defaults);
+        validateAndFixRotation(instance, index, defaults);
+        validateAndFixAggregate(instance, index, defaults);
+        compileTargets(instance);
+    }
+
+    // Runs last, every server section is final by now
+    private void compileTargets(ConfigService.BotInstance instance)
+    {
+        instance.server.target = ServerTarget.compile(instance.server);
+        if (instance.aggregate != null)
+        {
+            for (ConfigService.ServerConfig member : instance.aggregate.members)
+            {
+                member.target = ServerTarget.compile(member);
+            }
+        }
+        if (instance.rotation != null)
+        {
+            for (ConfigService.RotationServerConfig entry : instance.rotation.servers)
+            {
+                entry.server.target = ServerTarget.compile(entry.server);
+            }
+        }
+    }
+
+    private void validateAndFixAggregate(ConfigService.BotInstance instance, int index, ConfigService.BotInstance defaults)
+    {
+        if (instance.aggregate == null)
+        {
+            return;
+        }
+
+        ConfigService.AggregateConfig aggregate = instance.aggregate;
+        if (aggregate.deadlineMillis <= 0)
+        {
+            logger.warn("Instance[{}]: Invalid aggregate.deadlineMillis '{}', using default", index, aggregate.deadlineMillis);
+            aggregate.deadlineMillis = DEFAULT_AGGREGATE_DEADLINE_MILLIS;
+        }
+        if (aggregate.members == null)
+        {
+            aggregate.members = new ArrayList<>();
+        }
+
+        Iterator<ConfigService.ServerConfig> it = aggregate.members.iterator();
+        int i = 0;
+        while (it.hasNext())
+        {
+            ConfigService.ServerConfig member = it.next();
+            if (member == null || member.ip == null || member.ip.isBlank() || member.port <= 0 || member.port > 65535)
+            {
+                logger.warn("Instance[{}]: aggregate.members[{}] has no valid ip/port, skipped", index, i++);
+                it.remove();
+                continue;
+            }
+            if (member.steamQueryPort <= 0 || member.steamQueryPort > 65535)
+            {
+                member.steamQueryPort = defaults.server.steamQueryPort;
+            }
+            if (member.onlineProvider == null || member.onlineProvider.isEmpty())
+            {
+                member.onlineProvider = instance.server.onlineProvider;
+            }
+            i++;
+        }
+
+        if (aggregate.members.isEmpty())
+        {
+            logger.warn("Instance[{}]: aggregate has no members, showing the instance's own server", index);
+            instance.aggregate = null;
+        }
+    }
+
+    private void validateAndFixRotation(ConfigService.BotInstance instance, int index, ConfigService.BotInstance defaults)
+    {
+        if (instance.rotation == null)
+        {
+            return;
+        }
+
+        ConfigService.RotationConfig rotation = instance.rotation;
+        if (rotation.intervalSeconds < MIN_ROTATION_INTERVAL_SECONDS)
+        {
+            logger.warn("Instance[{}]: rotation.intervalSeconds '{}' is below {}s, using {}s",
+                    index, rotation.intervalSeconds, MIN_ROTATION_INTERVAL_SECONDS, DEFAULT_ROTATION_INTERVAL_SECONDS);
+            rotation.intervalSeconds = DEFAULT_ROTATION_INTERVAL_SECONDS;
+        }
+        if (rotation.servers == null)
+        {
+            rotation.servers = new ArrayList<>();
+        }
+
+        Iterator<ConfigService.RotationServerConfig> it = rotation.servers.iterator();
+        int i = 0;
+        while (it.hasNext())
+        {
+            ConfigService.RotationServerConfig entry = it.next();
+            if (entry == null || entry.server == null || entry.server.ip == null || entry.server.ip.isBlank()
+                    || entry.server.port <= 0 || entry.server.port > 65535)
+            {
+                logger.warn("Instance[{}]: rotation.servers[{}] has no valid ip/port, skipped", index, i++);
+                it.remove();
+                continue;
+            }
+
+            if (entry.server.steamQueryPort <= 0 || entry.server.steamQueryPort > 65535)
+            {
+                entry.server.steamQueryPort = defaults.server.steamQueryPort;
+            }
+            if (entry.server.onlineProvider == null || entry.server.onlineProvider.isEmpty())
+            {
+                entry.server.onlineProvider = instance.server.onlineProvider;
+            }
+            if (entry.updater == null || entry.updater.intervalSeconds <= 0)
+            {
+                entry.updater = new ConfigService.UpdaterConfig();
+                entry.updater.intervalSeconds = instance.updater.intervalSeconds;
+            }
+
+            // Without its own status section a server uses the instance's templates
+            if (entry.status == null)
+            {
+                entry.presenceFormat = instance.presenceFormat;
+            }
+            else
+            {
+                inheritStatus(entry.status, instance.status);
+                try
+                {
+                    entry.presenceFormat = PresenceFormat.compile(entry.status, instance.emojis);
+                }
+                catch (PresenceTemplateException e)
+                {
+                    logger.error("Instance[{}]: Rejected status template of rotation.servers[{}]: {}. Using the instance's status",
+                            index, i, e.getMessage());
+                    entry.presenceFormat = instance.presenceFormat;
+                }
+            }
+            i++;
+        }
+
+        if (rotation.servers.isEmpty())
+        {
+            logger.warn("Instance[{}]: rotation has no servers, rotation disabled", index);
+            instance.rotation = null;
+        }
+    }
+
+    private void inheritStatus(ConfigService.StatusConfig status, ConfigService.StatusConfig parent)
+    {
+        if (status.message == null || status.message.isBlank())
+            status.message = parent.message;
+        if (status.queueBlock == null)
+            status.queueBlock = parent.queueBlock;
+        if (status.activityType == null)
+            status.activityType = parent.activityType;
+        if (status.serverOfflineMessage == null || status.serverOfflineMessage.isBlank())
+            status.serverOfflineMessage = parent.serverOfflineMessage;
+    }
+
+    private void validateAndFixChannelName(ConfigService.BotInstance instance, int index, ConfigService.BotInstance defaults)
+    {
+        if (instance.channelName == null)
+        {
+            instance.channelName = defaults.channelName;
+            return;
+        }
+
+        ConfigService.ChannelNameConfig channelName = instance.channelName;
+        if (channelName.template == null || channelName.template.isBlank())
+        {
+            logger.warn("Instance[{}]: Invalid channelName.template, using default", index);
+            channelName.template = defaults.channelName.template;
+        }
+        if (channelName.offlineName == null || channelName.offlineName.isBlank())
+        {
+            channelName.offlineName = defaults.channelName.offlineName;
+        }
+        if (channelName.significantChange <= 0)
+        {
+            logger.warn("Instance[{}]: Invalid channelName.significantChange '{}', using default", index, channelName.significantChange);
+            channelName.significantChange = defaults.channelName.significantChange;
+        }
+        if (channelName.enabled && (channelName.channelId == null || !channelName.channelId.matches("\\d+")))
+        {
+            logger.warn("Instance[{}]: channelName.channelId '{}' is not a channel id, channel name counter disabled", index, channelName.channelId);
+            channelName.enabled = false;
+        }
+
+        // Same placeholders as the activity, the queue block of the status section is reused
+        ConfigService.StatusConfig status = new ConfigService.StatusConfig();
+        status.message = channelName.template;
+        status.queueBlock = instance.status.queueBlock;
+        status.showQueueIfNotActive = instance.status.showQueueIfNotActive;
+        status.activityType = instance.status.activityType;
+        status.serverOfflineMessage = channelName.offlineName;
+
+        try
+        {
+            channelName.format = PresenceFormat.compile(status, instance.emojis);
+        }
+        catch (PresenceTemplateException e)
+        {
+            logger.error("Instance[{}]: Rejected channelName.template: {}. Channel name counter disabled", index, e.getMessage());
+            channelName.enabled = false;
+        }
+    }
+
+    private void validateAndFixStatusEmbed(ConfigService.BotInstance instance, int index, ConfigService.BotInstance defaults)
+    {
+        if (instance.statusEmbed == null)
+        {
+            instance.statusEmbed = defaults.statusEmbed;
+            return;
+        }
+
+        ConfigService.StatusEmbedConfig embed = instance.statusEmbed;
+        if (embed.title == null)
+        {
+            embed.title = defaults.statusEmbed.title;
+        }
+        if (embed.trendPoints < 2 || embed.trendPoints > 60)
+        {
+            logger.warn("Instance[{}]: Invalid statusEmbed.trendPoints '{}', using default", index, embed.trendPoints);
+            embed.trendPoints = defaults.statusEmbed.trendPoints;
+        }
+        if (embed.trendStepSeconds < 10)
+        {
+            logger.warn("Instance[{}]: Invalid statusEmbed.trendStepSeconds '{}', using default", index, embed.trendStepSeconds);
+            embed.trendStepSeconds = defaults.statusEmbed.trendStepSeconds;
+        }
+        if (embed.enabled && (embed.channelId == null || !embed.channelId.matches("\\d+")))
+        {
+            logger.warn("Instance[{}]: statusEmbed.channelId '{}' is not a channel id, status embed disabled", index, embed.channelId);
+            embed.enabled = false;
+        }
+    }
+
+    private void compilePresenceFormat(ConfigService.BotInstance instance, int index, ConfigService.BotInstance defaults)
+    {
+        try
+        {
+            instance.presenceFormat = PresenceFormat.compile(instance.status, instance.emojis);
+        }
+        catch (PresenceTemplateException e)
+        {
+            logger.error("Instance[{}]: Rejected status template: {}. Using default message and queue block", index, e.getMessage());
+            instance.status.message = defaults.status.message;
+            instance.status.queueBlock = defaults.status.queueBlock;
+            instance.presenceFormat = PresenceFormat.compile(instance.status, instance.emojis);
+        }
+    }
+
+    private ConfigService.DiscordClientConfig createDefaultDiscordClient()
+    {
+        ConfigService.DiscordClientConfig discordClient = new ConfigService.DiscordClientConfig();
+        discordClient.implementation = ClientImplementation.JDA.name();
+        discordClient.gatewayUrl = "wss://gateway.discord.gg";
+        discordClient.profile = JdaProfile.PRESENCE_ONLY.name();
+        discordClient.startupThreads = 4;
+        discordClient.identifyConcurrency = 1;
+        discordClient.connectTimeoutSeconds = 60;
+        discordClient.rateLimitThreads = 2;
+        discordClient.callbackThreads = 2;
+        discordClient.gatewayThreads = 2;
+        discordClient.eventThreads = 1;
+        discordClient.httpMaxRequests = 64;
+        discordClient.httpMaxRequestsPerHost = 16;
+        return discordClient;
+    }
+
+    private ConfigService.HistoryConfig createDefaultHistory()
+    {
+        ConfigService.HistoryConfig history = new ConfigService.HistoryConfig();
+        history.directory = "history";
+        history.retentionDays = 7;
+        history.flushSeconds = 10;
+        return history;
     }
 
     private ConfigService.BotInstance createDefaultInstance()
@@ -178,6 +625,20 @@ public class ConfigValidator
         instance.status.showQueueIfNotActive = true;
         instance.status.activityType = "PLAYING";
 
+        instance.statusEmbed = new ConfigService.StatusEmbedConfig();
+        instance.statusEmbed.enabled = false;
+        instance.statusEmbed.channelId = "";
+        instance.statusEmbed.title = "";
+        instance.statusEmbed.trendPoints = 12;
+        instance.statusEmbed.trendStepSeconds = 300;
+
+        instance.channelName = new ConfigService.ChannelNameConfig();
+        instance.channelName.enabled = false;
+        instance.channelName.channelId = "";
+        instance.channelName.template = "Online: ${online}/${max}";
+        instance.channelName.offlineName = "Server offline";
+        instance.channelName.significantChange = 5;
+
         instance.discord = new ConfigService.DiscordConfig();
         instance.discord.token = "YOUR_BOT_TOKEN_HERE";
 
@@ -0,0 +1,170 @@
+package com.danielele.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Instances kept one per file ({@code <name>.json}) in a directory. Files are parsed in parallel and
+ * the parsed trees are cached by modification time and size, so a reload only reads the files that changed.
+ * An instance without an {@code id} gets the file name. A file that cannot be loaded only costs its own instance:
+ * it is skipped, or keeps its last good version if it had one.
+ */
+class InstanceDirectory
+{
+    private static final Logger logger = LoggerFactory.getLogger(InstanceDirectory.class);
+    private static final String SUFFIX = ".json";
+
+    private final ObjectMapper mapper;
+    private final Map<Path, CachedFile> cache = new ConcurrentHashMap<>();
+
+    InstanceDirectory(ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    List<ConfigService.BotInstance> load(Path dir) throws IOException
+    {
+        if (!Files.isDirectory(dir))
+        {
+            logger.warn("Instance directory {} does not exist, no instances loaded from it", dir);
+            cache.clear();
+            return List.of();
+        }
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir))
+        {
+            files = listing.filter(InstanceDirectory::isInstanceFile).sorted().toList();
+        }
+        cache.keySet().retainAll(files);
+
+        long startedAt = System.nanoTime();
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<ConfigService.BotInstance> instances = files.parallelStream()
+                .map(file -> loadFile(file, read, failed))
+                .filter(Objects::nonNull)
+                .toList();
+
+        logger.info("Loaded {} instance files from {} ({} read, {} cached, {} failed) in {} ms",
+                instances.size(), dir, read.get(), files.size() - read.get() - failed.get(), failed.get(),
+                (System.nanoTime() - startedAt) / 1_000_000);
+        return instances;
+    }
+
+    /**
+     * Replaces the file of the instance atomically.
+     */
+    void save(ConfigService.BotInstance instance) throws IOException
+    {
+        Path temp = instance.source.resolveSibling(instance.source.getFileName() + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), instance);
+        Files.move(temp, instance.source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void delete(ConfigService.BotInstance instance) throws IOException
+    {
+        Files.deleteIfExists(instance.source);
+        cache.remove(instance.source);
+    }
+
+    static boolean isInstanceName(String fileName)
+    {
+        return fileName.endsWith(SUFFIX);
+    }
+
+    private static boolean isInstanceFile(Path file)
+    {
+        return isInstanceName(file.getFileName().toString()) && Files.isRegularFile(file);
+    }
+
+    /**
+     * @return null if the file cannot be loaded and was never loaded before
+     */
+    private ConfigService.BotInstance loadFile(Path file, AtomicInteger read, AtomicInteger failed)
+    {
+        // Only trees that bound to an instance are cached, so the cached one is always the last good version
+        CachedFile cached = cache.get(file);
+        try
+        {
+            FileTime modified = Files.getLastModifiedTime(file);
+            long size = Files.size(file);
+            if (cached != null && cached.modified.equals(modified) && cached.size == size)
+            {
+                return bind(file, cached.tree);
+            }
+
+            JsonNode tree = mapper.readTree(file.toFile());
+            ConfigService.BotInstance instance = bind(file, tree);
+            cache.put(file, new CachedFile(modified, size, tree));
+            read.incrementAndGet();
+            return instance;
+        }
+        catch (IOException e)
+        {
+            failed.incrementAndGet();
+            if (cached == null)
+            {
+                logger.error("Instance file {} not loaded, skipped until it is fixed: {}", file.getFileName(), e.getMessage());
+                return null;
+            }
+
+            // A file caught half-saved must not look like a removed instance
+            logger.error("Instance file {} not loaded, keeping its previous version: {}", file.getFileName(), e.getMessage());
+            try
+            {
+                return bind(file, cached.tree);
+            }
+            catch (IOException again)
+            {
+                return null;
+            }
+        }
+    }
+
+    // Bound again on every load, the validator changes the instance it gets
+    private ConfigService.BotInstance bind(Path file, JsonNode tree) throws IOException
+    {
+        if (tree == null || !tree.isObject())
+        {
+            throw new IOException("not a JSON object");
+        }
+
+        ConfigService.BotInstance instance = mapper.treeToValue(tree, ConfigService.BotInstance.class);
+        instance.source = file;
+        if (instance.id == null || instance.id.isBlank())
+        {
+            String name = file.getFileName().toString();
+            instance.id = name.substring(0, name.length() - SUFFIX.length());
+        }
+        return instance;
+    }
+
+    private static final class CachedFile
+    {
+        private final FileTime modified;
+        private final long size;
+        private final JsonNode tree;
+
+        private CachedFile(FileTime modified, long size, JsonNode tree)
+        {
+            this.modified = modified;
+            this.size = size;
+            this.tree = tree;
+        }
+    }
+}
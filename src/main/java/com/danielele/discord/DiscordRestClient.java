@@ -0,0 +1,97 @@
+package com.danielele.discord;
+
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal Discord REST client for the few calls the bot makes outside the gateway.
+ * It does not queue: callers ask {@link #waitNanos} first and schedule the request themselves.
+ */
+@ApplicationScoped
+public class DiscordRestClient
+{
+    private static final String API_BASE = "https://discord.com/api/v10";
+    private static final String USER_AGENT = "DiscordBot (https://github.com/DaniilOpryshko/DiscordOnlineDayzBot, 1.0)";
+    private static final int REQUEST_TIMEOUT_MS = 10_000;
+
+    private final WebClient webClient;
+    private final Map<String, RateLimitBuckets> bucketsByToken = new ConcurrentHashMap<>();
+
+    @Inject
+    public DiscordRestClient(WebClient webClient)
+    {
+        this.webClient = webClient;
+    }
+
+    /**
+     * @param route   route template used for bucket lookup, e.g. {@code PATCH /channels/{channel.id}/messages/{message.id}}
+     * @param majorId the major parameter of the route (channel or guild id), buckets are kept per major parameter
+     * @return nanos until the route may be used again, 0 if a request can be sent now
+     */
+    public long waitNanos(String token, String route, String majorId)
+    {
+        return buckets(token).waitNanos(route, majorId, System.nanoTime());
+    }
+
+    /**
+     * Sends the request and records the rate-limit headers of the response. Non-2xx responses
+     * are returned as they are, only connection errors fail the future.
+     */
+    public Future<HttpResponse<Buffer>> request(String token,
+                                                HttpMethod method,
+                                                String route,
+                                                String majorId,
+                                                String path,
+                                                JsonObject body)
+    {
+        RateLimitBuckets buckets = buckets(token);
+        buckets.reserve(route, majorId, System.nanoTime());
+
+        HttpRequest<Buffer> request = webClient.requestAbs(method, API_BASE + path)
+                .putHeader("Authorization", "Bot " + token)
+                .putHeader("User-Agent", USER_AGENT)
+                .timeout(REQUEST_TIMEOUT_MS);
+
+        Future<HttpResponse<Buffer>> response = body != null ? request.sendJsonObject(body) : request.send();
+
+        return response.onSuccess(r -> buckets.update(
+                route,
+                majorId,
+                r.statusCode(),
+                r.headers(),
+                r.statusCode() == 429 ? retryAfter(r) : null,
+                System.nanoTime()
+        ));
+    }
+
+    /**
+     * @return {@code retry_after} of a 429 response in seconds, null if the body does not carry it
+     */
+    public static Double retryAfter(HttpResponse<Buffer> response)
+    {
+        try
+        {
+            JsonObject json = response.bodyAsJsonObject();
+            return json != null ? json.getDouble("retry_after") : null;
+        }
+        catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    private RateLimitBuckets buckets(String token)
+    {
+        return bucketsByToken.computeIfAbsent(token, t -> new RateLimitBuckets());
+    }
+}
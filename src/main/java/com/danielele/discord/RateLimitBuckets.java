@@ -0,0 +1,117 @@
+package com.danielele.discord;
+
+import io.vertx.core.MultiMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discord rate-limit state of one token. Routes are mapped to the bucket Discord reports
+ * in {@code X-RateLimit-Bucket}, a bucket is tracked per major parameter (channel, guild).
+ */
+class RateLimitBuckets
+{
+    private final Map<String, String> routeBuckets = new HashMap<>();
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private long globalResetAt;
+
+    /**
+     * @return nanos to wait before a request on this route may be sent, 0 if it can go now
+     */
+    synchronized long waitNanos(String route, String majorId, long now)
+    {
+        if (globalResetAt - now > 0)
+        {
+            return globalResetAt - now;
+        }
+
+        Bucket bucket = buckets.get(bucketKey(route, majorId));
+        if (bucket == null || bucket.remaining > 0 || now - bucket.resetAt >= 0)
+        {
+            return 0;
+        }
+        return bucket.resetAt - now;
+    }
+
+    /**
+     * Takes one request from the bucket so parallel senders do not overshoot before the response arrives.
+     */
+    synchronized void reserve(String route, String majorId, long now)
+    {
+        Bucket bucket = buckets.get(bucketKey(route, majorId));
+        if (bucket != null && bucket.remaining > 0 && now - bucket.resetAt < 0)
+        {
+            bucket.remaining--;
+        }
+    }
+
+    synchronized void update(String route, String majorId, int statusCode, MultiMap headers, Double retryAfterSeconds, long now)
+    {
+        String bucketHash = headers.get("X-RateLimit-Bucket");
+        if (bucketHash != null)
+        {
+            routeBuckets.put(route, bucketHash);
+        }
+
+        if (statusCode == 429)
+        {
+            long retryAfter = secondsToNanos(retryAfterSeconds != null ? retryAfterSeconds : parse(headers.get("Retry-After")));
+            if ("true".equalsIgnoreCase(headers.get("X-RateLimit-Global")))
+            {
+                globalResetAt = now + retryAfter;
+                return;
+            }
+
+            Bucket bucket = buckets.computeIfAbsent(bucketKey(route, majorId), k -> new Bucket());
+            bucket.remaining = 0;
+            bucket.resetAt = now + retryAfter;
+            return;
+        }
+
+        Double remaining = parse(headers.get("X-RateLimit-Remaining"));
+        Double resetAfter = parse(headers.get("X-RateLimit-Reset-After"));
+        if (remaining == null || resetAfter == null)
+        {
+            return;
+        }
+
+        Bucket bucket = buckets.computeIfAbsent(bucketKey(route, majorId), k -> new Bucket());
+        bucket.remaining = remaining.intValue();
+        bucket.resetAt = now + secondsToNanos(resetAfter);
+    }
+
+    private String bucketKey(String route, String majorId)
+    {
+        return routeBuckets.getOrDefault(route, route) + ":" + majorId;
+    }
+
+    private static Double parse(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private static long secondsToNanos(Double seconds)
+    {
+        // Without any hint wait a second rather than hammering the route
+        return seconds != null ? (long) (seconds * TimeUnit.SECONDS.toNanos(1)) : TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static final class Bucket
+    {
+        private int remaining;
+        private long resetAt;
+    }
+}
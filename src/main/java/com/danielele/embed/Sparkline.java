@@ -0,0 +1,61 @@
+package com.danielele.embed;
+
+/**
+ * Fixed number of player-count points, one per step. Within a step the newest value replaces the
+ * last point, so the line only shifts once per step and does not force an edit on every poll.
+ * Not thread-safe, each instance is written by the updater thread of its bot.
+ */
+final class Sparkline
+{
+    private static final char[] BARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    private final int[] values;
+    private final long stepNanos;
+    private int count;
+    private int next;
+    private long stepStartedAt;
+
+    Sparkline(int points, long stepNanos)
+    {
+        this.values = new int[points];
+        this.stepNanos = stepNanos;
+    }
+
+    boolean hasSameShape(Sparkline other)
+    {
+        return values.length == other.values.length && stepNanos == other.stepNanos;
+    }
+
+    void record(int value, long now)
+    {
+        if (count > 0 && now - stepStartedAt < stepNanos)
+        {
+            values[(next - 1 + values.length) % values.length] = value;
+            return;
+        }
+
+        values[next] = value;
+        next = (next + 1) % values.length;
+        count = Math.min(count + 1, values.length);
+        stepStartedAt = now;
+    }
+
+    /**
+     * @param scaleMax value drawn as a full bar, usually the server slot count
+     */
+    void render(int scaleMax, StringBuilder out)
+    {
+        int max = Math.max(scaleMax, 1);
+        int start = (next - count + values.length) % values.length;
+
+        for (int i = 0; i < count; i++)
+        {
+            max = Math.max(max, values[(start + i) % values.length]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            int value = Math.max(values[(start + i) % values.length], 0);
+            out.append(BARS[(int) ((long) value * (BARS.length - 1) / max)]);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.danielele.embed;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.discord.DiscordRestClient;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One pinned message in one channel, carrying an embed per server posted there.
+ * All servers of the channel are edited together, so updates from several bots
+ * in the same guild cost one message edit.
+ */
+public class StatusBoard
+{
+    private static final Logger logger = LoggerFactory.getLogger(StatusBoard.class);
+
+    private static final String ROUTE_EDIT = "PATCH /channels/{channel.id}/messages/{message.id}";
+    private static final String ROUTE_CREATE = "POST /channels/{channel.id}/messages";
+    private static final String ROUTE_PINS = "GET /channels/{channel.id}/pins";
+    private static final String ROUTE_PIN = "PUT /channels/{channel.id}/pins/{message.id}";
+    private static final String ROUTE_ME = "GET /users/@me";
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final String channelId;
+    private final String token;
+    private final List<ConfigService.BotInstance> members;
+    private final Sparkline[] trends;
+    private final AtomicReferenceArray<JsonObject> embeds;
+    private final DiscordRestClient restClient;
+
+    private volatile boolean dirty;
+    private volatile boolean inFlight;
+    private volatile String messageId;
+    private volatile String lastSentBody;
+    private volatile long nextAttemptAt;
+
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong edits = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    StatusBoard(String channelId, List<ConfigService.BotInstance> members, DiscordRestClient restClient)
+    {
+        this.channelId = channelId;
+        // The message belongs to the bot that created it, so the first server's bot does all edits
+        this.token = members.get(0).discord.token;
+        this.members = members;
+        this.restClient = restClient;
+        this.embeds = new AtomicReferenceArray<>(members.size());
+        this.trends = new Sparkline[members.size()];
+
+        for (int i = 0; i < members.size(); i++)
+        {
+            ConfigService.StatusEmbedConfig config = members.get(i).statusEmbed;
+            trends[i] = new Sparkline(config.trendPoints, TimeUnit.SECONDS.toNanos(config.trendStepSeconds));
+        }
+    }
+
+    /**
+     * Takes over the message and the trends of the board this one replaces after a config reload.
+     * Members are matched by instance key, a trend is kept only if its shape did not change.
+     */
+    void adopt(StatusBoard previous)
+    {
+        if (previous.token.equals(token))
+        {
+            messageId = previous.messageId;
+            lastSentBody = previous.lastSentBody;
+        }
+
+        for (int i = 0; i < members.size(); i++)
+        {
+            String key = ConfigService.instanceKey(members.get(i));
+            for (int j = 0; j < previous.members.size(); j++)
+            {
+                if (key.equals(ConfigService.instanceKey(previous.members.get(j)))
+                        && previous.trends[j].hasSameShape(trends[i]))
+                {
+                    trends[i] = previous.trends[j];
+                    embeds.set(i, previous.embeds.get(j));
+                }
+            }
+        }
+        // Removed servers disappear from the message without waiting for a poll
+        dirty = true;
+    }
+
+    /**
+     * Called from the updater thread of the member's bot.
+     */
+    void submit(int memberIndex, ServerOnlineFun serverOnline)
+    {
+        Sparkline trend = trends[memberIndex];
+        Integer players = serverOnline.getCurrentPlayers();
+        trend.record(Boolean.TRUE.equals(serverOnline.isOnline()) && players != null ? players : 0, System.nanoTime());
+
+        embeds.set(memberIndex, StatusEmbedRenderer.render(members.get(memberIndex), serverOnline, trend));
+        renders.incrementAndGet();
+        dirty = true;
+    }
+
+    /**
+     * Called from the single embed scheduler thread.
+     */
+    void tick(long now)
+    {
+        if (!dirty || inFlight || now - nextAttemptAt < 0)
+        {
+            return;
+        }
+
+        // Cleared before composing, a render that lands meanwhile marks the board again
+        dirty = false;
+        String body = composeBody();
+        if (body.equals(lastSentBody))
+        {
+            unchanged.incrementAndGet();
+            return;
+        }
+
+        if (messageId == null)
+        {
+            inFlight = true;
+            resolveMessage(body).onComplete(ar ->
+            {
+                inFlight = false;
+                if (ar.failed())
+                {
+                    onFailure("could not create or find the status message", ar.cause());
+                }
+            });
+            return;
+        }
+
+        if (restClient.waitNanos(token, ROUTE_EDIT, channelId) > 0)
+        {
+            // Newer renders replace this one until the bucket refills
+            dirty = true;
+            deferred.incrementAndGet();
+            return;
+        }
+
+        inFlight = true;
+        restClient.request(token, HttpMethod.PATCH, ROUTE_EDIT, channelId,
+                        "/channels/" + channelId + "/messages/" + messageId, new JsonObject(body))
+                .onComplete(ar ->
+                {
+                    inFlight = false;
+                    if (ar.failed())
+                    {
+                        onFailure("edit failed", ar.cause());
+                        return;
+                    }
+
+                    HttpResponse<Buffer> response = ar.result();
+                    if (response.statusCode() == 200)
+                    {
+                        lastSentBody = body;
+                        edits.incrementAndGet();
+                    }
+                    else if (response.statusCode() == 404)
+                    {
+                        logger.warn("Status message in channel {} was deleted, creating a new one", channelId);
+                        messageId = null;
+                        dirty = true;
+                    }
+                    else if (response.statusCode() == 429)
+                    {
+                        deferred.incrementAndGet();
+                        dirty = true;
+                    }
+                    else
+                    {
+                        onFailure("edit failed with HTTP " + response.statusCode(), null);
+                    }
+                });
+    }
+
+    private String composeBody()
+    {
+        JsonArray list = new JsonArray();
+        for (int i = 0; i < embeds.length(); i++)
+        {
+            JsonObject embed = embeds.get(i);
+            if (embed != null)
+            {
+                list.add(embed);
+            }
+        }
+        return new JsonObject().put("embeds", list).encode();
+    }
+
+    /**
+     * Reuses the newest pinned message of this bot that has embeds, otherwise posts and pins a new one.
+     */
+    private Future<Void> resolveMessage(String body)
+    {
+        return restClient.request(token, HttpMethod.GET, ROUTE_ME, "", "/users/@me", null)
+                .compose(me ->
+                {
+                    String botUserId = expectOk(me, "GET /users/@me").bodyAsJsonObject().getString("id");
+                    return restClient.request(token, HttpMethod.GET, ROUTE_PINS, channelId, "/channels/" + channelId + "/pins", null)
+                            .map(pins -> findOwnPinned(expectOk(pins, "GET pins").bodyAsJsonArray(), botUserId));
+                })
+                .compose(existing ->
+                {
+                    if (existing != null)
+                    {
+                        messageId = existing;
+                        dirty = true;
+                        logger.info("Status embed for channel {} reuses pinned message {}", channelId, existing);
+                        return Future.succeededFuture();
+                    }
+
+                    return restClient.request(token, HttpMethod.POST, ROUTE_CREATE, channelId,
+                                    "/channels/" + channelId + "/messages", new JsonObject(body))
+                            .compose(created ->
+                            {
+                                String id = expectOk(created, "create message").bodyAsJsonObject().getString("id");
+                                messageId = id;
+                                lastSentBody = body;
+                                edits.incrementAndGet();
+                                logger.info("Status embed for channel {} posted as message {}", channelId, id);
+
+                                return restClient.request(token, HttpMethod.PUT, ROUTE_PIN, channelId,
+                                        "/channels/" + channelId + "/pins/" + id, null);
+                            })
+                            .map(pin ->
+                            {
+                                if (pin.statusCode() != 204)
+                                {
+                                    logger.warn("Could not pin status message in channel {} (HTTP {}), it will be found by id only while the bot runs",
+                                            channelId, pin.statusCode());
+                                }
+                                return null;
+                            });
+                });
+    }
+
+    private static String findOwnPinned(JsonArray pins, String botUserId)
+    {
+        for (int i = 0; i < pins.size(); i++)
+        {
+            JsonObject message = pins.getJsonObject(i);
+            JsonObject author = message.getJsonObject("author");
+            JsonArray messageEmbeds = message.getJsonArray("embeds");
+            if (author != null && botUserId.equals(author.getString("id")) && messageEmbeds != null && !messageEmbeds.isEmpty())
+            {
+                return message.getString("id");
+            }
+        }
+        return null;
+    }
+
+    private static HttpResponse<Buffer> expectOk(HttpResponse<Buffer> response, String call)
+    {
+        if (response.statusCode() / 100 != 2)
+        {
+            throw new IllegalStateException(call + " returned HTTP " + response.statusCode());
+        }
+        return response;
+    }
+
+    private void onFailure(String reason, Throwable cause)
+    {
+        failures.incrementAndGet();
+        dirty = true;
+        nextAttemptAt = System.nanoTime() + FAILURE_BACKOFF_NANOS;
+        logger.warn("Status embed for channel {}: {}{}, retrying in {}s",
+                channelId,
+                reason,
+                cause != null ? " (" + cause.getMessage() + ")" : "",
+                TimeUnit.NANOSECONDS.toSeconds(FAILURE_BACKOFF_NANOS));
+    }
+
+    public String getChannelId()
+    {
+        return channelId;
+    }
+
+    public int getMemberCount()
+    {
+        return members.size();
+    }
+
+    public String getMessageId()
+    {
+        return messageId;
+    }
+
+    public long getRenders()
+    {
+        return renders.get();
+    }
+
+    public long getEdits()
+    {
+        return edits.get();
+    }
+
+    public long getUnchanged()
+    {
+        return unchanged.get();
+    }
+
+    public long getDeferred()
+    {
+        return deferred.get();
+    }
+
+    public long getFailures()
+    {
+        return failures.get();
+    }
+}
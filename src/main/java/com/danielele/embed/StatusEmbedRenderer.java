@@ -0,0 +1,69 @@
+package com.danielele.embed;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.presence.template.PresenceFormat;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Builds the embed of one server. The output only depends on the server state, no timestamps,
+ * so two renders of the same state encode to the same JSON and can be compared as strings.
+ */
+final class StatusEmbedRenderer
+{
+    private static final int COLOR_ONLINE = 0x2ECC71;
+    private static final int COLOR_OFFLINE = 0xE74C3C;
+
+    private StatusEmbedRenderer()
+    {
+    }
+
+    static JsonObject render(ConfigService.BotInstance instance, ServerOnlineFun serverOnline, Sparkline trend)
+    {
+        String title = instance.statusEmbed.title.isBlank()
+                ? instance.server.target.getKey()
+                : instance.statusEmbed.title;
+
+        JsonObject embed = new JsonObject().put("title", title);
+        JsonArray fields = new JsonArray();
+
+        boolean online = Boolean.TRUE.equals(serverOnline.isOnline());
+        if (online)
+        {
+            embed.put("color", COLOR_ONLINE);
+
+            fields.add(field("Players", serverOnline.getCurrentPlayers() + " / " + serverOnline.getMaxPlayers(), true));
+            if (Boolean.TRUE.equals(serverOnline.isQueueActive()) || instance.status.showQueueIfNotActive)
+            {
+                fields.add(field("Queue", String.valueOf(serverOnline.getQueueSize()), true));
+            }
+
+            String time = serverOnline.getServerTime();
+            if (time != null)
+            {
+                String emoji = PresenceFormat.isDay(time) ? instance.emojis.day : instance.emojis.night;
+                fields.add(field("Time", emoji + " " + time, true));
+            }
+        }
+        else
+        {
+            embed.put("color", COLOR_OFFLINE);
+            embed.put("description", instance.status.serverOfflineMessage);
+        }
+
+        StringBuilder line = new StringBuilder(instance.statusEmbed.trendPoints + 2).append('`');
+        trend.render(online && serverOnline.getMaxPlayers() != null ? serverOnline.getMaxPlayers() : 0, line);
+        fields.add(field("Trend", line.append('`').toString(), false));
+
+        return embed.put("fields", fields);
+    }
+
+    private static JsonObject field(String name, String value, boolean inline)
+    {
+        return new JsonObject()
+                .put("name", name)
+                .put("value", value)
+                .put("inline", inline);
+    }
+}
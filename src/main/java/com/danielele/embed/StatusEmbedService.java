@@ -0,0 +1,155 @@
+package com.danielele.embed;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.discord.DiscordRestClient;
+import com.danielele.events.ConfigReloadedEvent;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pinned status embeds current. Updaters hand in fresh server data, a single thread
+ * sends an edit only when the rendered message changed and its rate-limit bucket allows it.
+ */
+@ApplicationScoped
+public class StatusEmbedService
+{
+    private static final Logger logger = LoggerFactory.getLogger(StatusEmbedService.class);
+    private static final long TICK_MILLIS = 1000;
+
+    @Inject
+    ConfigService configService;
+    @Inject
+    DiscordRestClient restClient;
+
+    // Both maps are rebuilt on reload and swapped, never modified in place
+    private volatile Map<String, StatusBoard> boards = Map.of();
+    private volatile Map<ConfigService.BotInstance, Member> members = Map.of();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init()
+    {
+        build(Map.of());
+    }
+
+    synchronized void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        build(boards);
+    }
+
+    private void build(Map<String, StatusBoard> previous)
+    {
+        Map<String, StatusBoard> boards = new LinkedHashMap<>();
+        Map<ConfigService.BotInstance, Member> members = new IdentityHashMap<>();
+        Map<String, List<ConfigService.BotInstance>> byChannel = new LinkedHashMap<>();
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            if (instance.statusEmbed != null && instance.statusEmbed.enabled)
+            {
+                byChannel.computeIfAbsent(instance.statusEmbed.channelId, k -> new ArrayList<>()).add(instance);
+            }
+        }
+
+        byChannel.forEach((channelId, instances) ->
+        {
+            StatusBoard board = new StatusBoard(channelId, instances, restClient);
+            StatusBoard replaced = previous.get(channelId);
+            if (replaced != null)
+            {
+                board.adopt(replaced);
+            }
+            boards.put(channelId, board);
+            for (int i = 0; i < instances.size(); i++)
+            {
+                members.put(instances.get(i), new Member(board, i));
+            }
+            logger.info("Status embed enabled in channel {} for {} server(s)", channelId, instances.size());
+        });
+
+        this.members = members;
+        this.boards = boards;
+
+        if (!boards.isEmpty() && scheduler == null)
+        {
+            startScheduler();
+        }
+    }
+
+    private void startScheduler()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("status-embed");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void update(ConfigService.BotInstance instance, ServerOnlineFun serverOnline)
+    {
+        Member member = members.get(instance);
+        if (member != null)
+        {
+            member.board.submit(member.index, serverOnline);
+        }
+    }
+
+    public Collection<StatusBoard> getBoards()
+    {
+        return boards.values();
+    }
+
+    private void tick()
+    {
+        long now = System.nanoTime();
+        for (StatusBoard board : boards.values())
+        {
+            try
+            {
+                board.tick(now);
+            }
+            catch (Exception e)
+            {
+                logger.error("Error while updating status embed in channel {}", board.getChannelId(), e);
+            }
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static final class Member
+    {
+        private final StatusBoard board;
+        private final int index;
+
+        private Member(StatusBoard board, int index)
+        {
+            this.board = board;
+            this.index = index;
+        }
+    }
+}
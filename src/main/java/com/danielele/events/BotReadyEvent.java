@@ -0,0 +1,18 @@
+package com.danielele.events;
+
+import com.danielele.DiscordBot;
+
+public class BotReadyEvent
+{
+    private final DiscordBot bot;
+
+    public BotReadyEvent(DiscordBot bot)
+    {
+        this.bot = bot;
+    }
+
+    public DiscordBot getBot()
+    {
+        return bot;
+    }
+}
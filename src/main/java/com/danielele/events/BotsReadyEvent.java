@@ -1,20 +0,0 @@
-package com.danielele.events;
-
-import com.danielele.DiscordBot;
-
-import java.util.List;
-
-public class BotsReadyEvent
-{
-    private final List<DiscordBot> bots;
-    
-    public BotsReadyEvent(List<DiscordBot> bots)
-    {
-        this.bots = bots;
-    }
-
-    public List<DiscordBot> getBots()
-    {
-        return bots;
-    }
-}
\ No newline at end of file
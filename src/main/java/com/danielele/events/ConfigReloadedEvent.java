@@ -0,0 +1,18 @@
+package com.danielele.events;
+
+import com.danielele.config.ConfigDiff;
+
+public class ConfigReloadedEvent
+{
+    private final ConfigDiff diff;
+
+    public ConfigReloadedEvent(ConfigDiff diff)
+    {
+        this.diff = diff;
+    }
+
+    public ConfigDiff getDiff()
+    {
+        return diff;
+    }
+}
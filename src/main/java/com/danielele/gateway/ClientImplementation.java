@@ -0,0 +1,19 @@
+package com.danielele.gateway;
+
+public enum ClientImplementation
+{
+    JDA,
+    LIGHTWEIGHT;
+
+    public static ClientImplementation fromString(String text)
+    {
+        for (ClientImplementation implementation : values())
+        {
+            if (implementation.name().equalsIgnoreCase(text))
+            {
+                return implementation;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,14 @@
+package com.danielele.gateway;
+
+/**
+ * Discord refused the session for a reason a reconnect will not fix (invalid token, bad intents...).
+ */
+public class GatewayRejectedException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public GatewayRejectedException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,70 @@
+package com.danielele.gateway;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces IDENTIFY per bot token: Discord allows {@code max_concurrency} identifies every 5 seconds.
+ * {@link #acquire} blocks and is only called on the startup executor, event loop threads use {@link #tryAcquire}.
+ */
+public class IdentifyLimiter
+{
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final int concurrency;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public IdentifyLimiter(int concurrency)
+    {
+        this.concurrency = concurrency;
+    }
+
+    public void acquire(String token) throws InterruptedException
+    {
+        long waitNanos;
+        while ((waitNanos = tryAcquire(token)) > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Non-blocking variant for event loop threads.
+     *
+     * @return 0 if a slot was taken, otherwise nanos to wait before trying again
+     */
+    public long tryAcquire(String token)
+    {
+        return buckets.computeIfAbsent(token, k -> new Bucket(concurrency)).tryAcquire(System.nanoTime());
+    }
+
+    private static final class Bucket
+    {
+        private final long[] slots;
+        private int next;
+
+        private Bucket(int concurrency)
+        {
+            this.slots = new long[concurrency];
+            long past = System.nanoTime() - WINDOW_NANOS;
+            Arrays.fill(slots, past);
+        }
+
+        /**
+         * @return 0 if a slot was taken, otherwise nanos to wait before trying again
+         */
+        private synchronized long tryAcquire(long now)
+        {
+            long freeAt = slots[next] + WINDOW_NANOS;
+            if (now < freeAt)
+            {
+                return freeAt - now;
+            }
+            slots[next] = now;
+            next = (next + 1) % slots.length;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.danielele.gateway;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.events.session.SessionRecreateEvent;
+import net.dv8tion.jda.api.events.session.SessionResumeEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.concurrent.TimeUnit;
+
+public class JdaPresenceConnection implements PresenceConnection
+{
+    private static final long READY_POLL_MILLIS = 50;
+
+    private final JDA jda;
+    private volatile Runnable reconnectListener;
+
+    public JdaPresenceConnection(JDA jda)
+    {
+        this.jda = jda;
+        jda.addEventListener(new ListenerAdapter()
+        {
+            @Override
+            public void onSessionResume(SessionResumeEvent event)
+            {
+                notifyReconnect();
+            }
+
+            @Override
+            public void onSessionRecreate(SessionRecreateEvent event)
+            {
+                notifyReconnect();
+            }
+        });
+    }
+
+    public JDA getJda()
+    {
+        return jda;
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return jda.getStatus() == JDA.Status.CONNECTED;
+    }
+
+    @Override
+    public String getStatus()
+    {
+        return jda.getStatus().name();
+    }
+
+    @Override
+    public void setActivity(Activity.ActivityType type, String text)
+    {
+        jda.getPresence().setActivity(Activity.of(type, text));
+    }
+
+    @Override
+    public void setReconnectListener(Runnable listener)
+    {
+        this.reconnectListener = listener;
+    }
+
+    private void notifyReconnect()
+    {
+        Runnable listener = reconnectListener;
+        if (listener != null)
+        {
+            listener.run();
+        }
+    }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (true)
+        {
+            JDA.Status status = jda.getStatus();
+            if (status == JDA.Status.CONNECTED)
+            {
+                return true;
+            }
+            if (status == JDA.Status.FAILED_TO_LOGIN)
+            {
+                throw new GatewayRejectedException("Discord rejected the login");
+            }
+            if (status == JDA.Status.SHUTTING_DOWN || status == JDA.Status.SHUTDOWN)
+            {
+                throw new IllegalStateException("JDA was shut down before it became ready");
+            }
+            if (System.nanoTime() >= deadline)
+            {
+                return false;
+            }
+            Thread.sleep(READY_POLL_MILLIS);
+        }
+    }
+
+    @Override
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        jda.shutdown();
+        if (!jda.awaitShutdown(timeout, unit))
+        {
+            jda.shutdownNow();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package com.danielele.gateway;
+
+import com.danielele.config.ConfigService;
+import io.quarkus.runtime.ShutdownEvent;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketClientOptions;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.interceptor.Interceptor;
+import net.dv8tion.jda.api.entities.Activity;
+
+/**
+ * Creates {@link LightGatewayConnection}s. All connections share one Vert.x WebSocket client,
+ * so a connection costs a socket, a zlib context and a few timers.
+ */
+@ApplicationScoped
+public class LightGatewayClient
+{
+    private static final int MAX_MESSAGE_SIZE = 4 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+
+    private final Vertx vertx;
+    private final ConfigService configService;
+    private volatile WebSocketClient client;
+
+    @Inject
+    public LightGatewayClient(Vertx vertx, ConfigService configService)
+    {
+        this.vertx = vertx;
+        this.configService = configService;
+    }
+
+    /**
+     * @param identifyLimiter paces the IDENTIFYs after a lost session, the first one is up to the caller
+     */
+    public LightGatewayConnection connect(String token,
+                                          IdentifyLimiter identifyLimiter,
+                                          Activity.ActivityType activityType,
+                                          String activityText)
+    {
+        LightGatewayConnection connection = new LightGatewayConnection(
+                vertx,
+                client(),
+                configService.getDiscordClientConfig().gatewayUrl,
+                token,
+                identifyLimiter,
+                activityType,
+                activityText
+        );
+        connection.connect();
+        return connection;
+    }
+
+    private WebSocketClient client()
+    {
+        WebSocketClient current = client;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = client;
+                if (current == null)
+                {
+                    WebSocketClientOptions options = new WebSocketClientOptions()
+                            .setMaxMessageSize(MAX_MESSAGE_SIZE)
+                            .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                            .setTryUsePerMessageCompression(false);
+                    current = vertx.createWebSocketClient(options);
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    void onShutdown(@Observes @Priority(Interceptor.Priority.LIBRARY_AFTER) ShutdownEvent event)
+    {
+        WebSocketClient current = client;
+        if (current != null)
+        {
+            current.close();
+        }
+    }
+}
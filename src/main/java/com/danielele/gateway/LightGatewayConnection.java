@@ -0,0 +1,547 @@
+package com.danielele.gateway;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketConnectOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import net.dv8tion.jda.api.entities.Activity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Minimal Discord gateway session: IDENTIFY / RESUME, heartbeats and presence updates, nothing else.
+ * All socket state is only touched on the Vert.x context the connection was created on.
+ */
+public class LightGatewayConnection implements PresenceConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(LightGatewayConnection.class);
+
+    private static final String GATEWAY_QUERY = "/?v=10&encoding=json&compress=zlib-stream";
+    private static final String CUSTOM_STATUS_NAME = "Custom Status";
+
+    private static final int OP_DISPATCH = 0;
+    private static final int OP_HEARTBEAT = 1;
+    private static final int OP_IDENTIFY = 2;
+    private static final int OP_PRESENCE_UPDATE = 3;
+    private static final int OP_RESUME = 6;
+    private static final int OP_RECONNECT = 7;
+    private static final int OP_INVALID_SESSION = 9;
+    private static final int OP_HELLO = 10;
+    private static final int OP_HEARTBEAT_ACK = 11;
+
+    private static final short CLOSE_NORMAL = 1000;
+    private static final short CLOSE_RECONNECT = 4900;
+    private static final int CLOSE_INVALID_SEQ = 4007;
+    private static final int CLOSE_SESSION_TIMED_OUT = 4009;
+    private static final Set<Integer> FATAL_CLOSE_CODES = Set.of(4004, 4010, 4011, 4012, 4013, 4014);
+
+    private static final long MIN_RECONNECT_DELAY_MS = 1_000;
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+    private final Vertx vertx;
+    private final Context context;
+    private final WebSocketClient client;
+    private final String gatewayUrl;
+    private final String token;
+    private final IdentifyLimiter identifyLimiter;
+    private final ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
+
+    private volatile Status status = Status.INITIALIZING;
+    private volatile Activity.ActivityType activityType;
+    private volatile String activityText;
+    private volatile Runnable reconnectListener;
+
+    private WebSocket socket;
+    private int generation;
+    private long heartbeatTimer = -1;
+    private boolean heartbeatAcked;
+    private Long sequence;
+    private String sessionId;
+    private String resumeUrl;
+    private int reconnectAttempts;
+    private boolean identified;
+    private boolean shuttingDown;
+
+    LightGatewayConnection(Vertx vertx,
+                           WebSocketClient client,
+                           String gatewayUrl,
+                           String token,
+                           IdentifyLimiter identifyLimiter,
+                           Activity.ActivityType activityType,
+                           String activityText)
+    {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.client = client;
+        this.gatewayUrl = gatewayUrl;
+        this.token = token;
+        this.identifyLimiter = identifyLimiter;
+        this.activityType = activityType;
+        this.activityText = activityText;
+    }
+
+    void connect()
+    {
+        context.runOnContext(v -> openSocket());
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return status == Status.CONNECTED;
+    }
+
+    @Override
+    public String getStatus()
+    {
+        return status.name();
+    }
+
+    @Override
+    public void setActivity(Activity.ActivityType type, String text)
+    {
+        this.activityType = type;
+        this.activityText = text;
+
+        context.runOnContext(v ->
+        {
+            if (status == Status.CONNECTED)
+            {
+                send(OP_PRESENCE_UPDATE, presencePayload());
+            }
+        });
+    }
+
+    @Override
+    public void setReconnectListener(Runnable listener)
+    {
+        this.reconnectListener = listener;
+    }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        try
+        {
+            ready.get(timeout, unit);
+            return true;
+        }
+        catch (TimeoutException e)
+        {
+            return false;
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            throw new IllegalStateException("Gateway connection failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        context.runOnContext(v ->
+        {
+            shuttingDown = true;
+            generation++;
+            cancelHeartbeat();
+            status = Status.SHUTDOWN;
+
+            if (socket != null && !socket.isClosed())
+            {
+                socket.close(CLOSE_NORMAL, "shutdown").onComplete(ar -> finishShutdown());
+            }
+            else
+            {
+                finishShutdown();
+            }
+        });
+
+        try
+        {
+            closed.get(timeout, unit);
+            return true;
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            return false;
+        }
+    }
+
+    private void finishShutdown()
+    {
+        decoder.close();
+        ready.completeExceptionally(new IllegalStateException("Connection was shut down"));
+        closed.complete(null);
+    }
+
+    private void openSocket()
+    {
+        if (shuttingDown)
+        {
+            return;
+        }
+
+        int socketGeneration = ++generation;
+        boolean resuming = sessionId != null;
+        String baseUrl = resuming && resumeUrl != null ? resumeUrl : gatewayUrl;
+
+        status = resuming ? Status.RESUMING : Status.CONNECTING;
+        decoder.reset();
+
+        WebSocketConnectOptions options = new WebSocketConnectOptions()
+                .setAbsoluteURI(baseUrl + GATEWAY_QUERY);
+
+        client.connect(options).onComplete(ar ->
+        {
+            if (ar.failed())
+            {
+                if (socketGeneration == generation)
+                {
+                    logger.warn("Gateway connect failed: {}", ar.cause().getMessage());
+                    scheduleReconnect(true);
+                }
+                return;
+            }
+
+            WebSocket ws = ar.result();
+            if (socketGeneration != generation || shuttingDown)
+            {
+                ws.close();
+                return;
+            }
+
+            socket = ws;
+            ws.binaryMessageHandler(buffer -> onBinaryMessage(socketGeneration, buffer));
+            ws.textMessageHandler(text -> onPayload(socketGeneration, text));
+            ws.exceptionHandler(e -> logger.debug("Gateway socket error: {}", e.getMessage()));
+            ws.closeHandler(v -> onClose(socketGeneration, ws.closeStatusCode(), ws.closeReason()));
+        });
+    }
+
+    private void onBinaryMessage(int socketGeneration, Buffer buffer)
+    {
+        if (socketGeneration != generation)
+        {
+            return;
+        }
+
+        String payload;
+        try
+        {
+            payload = decoder.decode(buffer.getBytes());
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to decompress gateway payload, reconnecting: {}", e.getMessage());
+            reconnect(true, 0);
+            return;
+        }
+        if (payload != null)
+        {
+            onPayload(socketGeneration, payload);
+        }
+    }
+
+    private void onPayload(int socketGeneration, String payload)
+    {
+        if (socketGeneration != generation)
+        {
+            return;
+        }
+
+        int op = -1;
+        try
+        {
+            JsonObject message = new JsonObject(payload);
+            op = message.getInteger("op", -1);
+
+            switch (op)
+            {
+                case OP_HELLO -> onHello(message.getJsonObject("d"));
+                case OP_HEARTBEAT_ACK -> heartbeatAcked = true;
+                case OP_HEARTBEAT -> sendHeartbeat();
+                case OP_DISPATCH -> onDispatch(message);
+                case OP_RECONNECT ->
+                {
+                    logger.info("Gateway requested reconnect");
+                    reconnect(true, 0);
+                }
+                case OP_INVALID_SESSION ->
+                {
+                    boolean resumable = Boolean.TRUE.equals(message.getValue("d"));
+                    logger.info("Gateway session invalidated (resumable={})", resumable);
+                    // Discord asks to wait 1-5 seconds before identifying again
+                    reconnect(resumable, ThreadLocalRandom.current().nextLong(1_000, 5_000));
+                }
+                default -> logger.debug("Ignoring gateway opcode {}", op);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Thrown into Vert.x it would only reach the socket's exception handler
+            logger.warn("Ignoring invalid gateway payload (op {}): {}", op, e.toString());
+            if (op == OP_HELLO)
+            {
+                // Without heartbeats the session can never become ready
+                reconnect(true, 0);
+            }
+        }
+    }
+
+    private void onHello(JsonObject data)
+    {
+        long interval = data.getLong("heartbeat_interval");
+        heartbeatAcked = true;
+        cancelHeartbeat();
+
+        int socketGeneration = generation;
+        long firstBeat = (long) (interval * ThreadLocalRandom.current().nextDouble());
+        heartbeatTimer = vertx.setTimer(Math.max(1, firstBeat), id ->
+        {
+            if (socketGeneration != generation)
+            {
+                return;
+            }
+            sendHeartbeat();
+            heartbeatTimer = vertx.setPeriodic(interval, periodicId -> onHeartbeatTick(socketGeneration));
+        });
+
+        if (sessionId != null)
+        {
+            send(OP_RESUME, new JsonObject()
+                    .put("token", token)
+                    .put("session_id", sessionId)
+                    .put("seq", sequence));
+        }
+        else
+        {
+            identify(socketGeneration);
+        }
+    }
+
+    // The first IDENTIFY was paced by the startup executor, the ones after a lost session take their slot here
+    private void identify(int socketGeneration)
+    {
+        if (socketGeneration != generation)
+        {
+            return;
+        }
+
+        if (identified)
+        {
+            long waitNanos = identifyLimiter.tryAcquire(token);
+            if (waitNanos > 0)
+            {
+                vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)), id -> identify(socketGeneration));
+                return;
+            }
+        }
+
+        identified = true;
+        send(OP_IDENTIFY, identifyPayload());
+    }
+
+    private void onHeartbeatTick(int socketGeneration)
+    {
+        if (socketGeneration != generation)
+        {
+            return;
+        }
+
+        if (!heartbeatAcked)
+        {
+            logger.warn("Gateway heartbeat was not acknowledged, reconnecting");
+            reconnect(true, 0);
+            return;
+        }
+
+        sendHeartbeat();
+    }
+
+    private void sendHeartbeat()
+    {
+        heartbeatAcked = false;
+        JsonObject message = new JsonObject().put("op", OP_HEARTBEAT).put("d", sequence);
+        if (socket != null)
+        {
+            socket.writeTextMessage(message.encode());
+        }
+    }
+
+    private void onDispatch(JsonObject message)
+    {
+        Long seq = message.getLong("s");
+        if (seq != null)
+        {
+            sequence = seq;
+        }
+
+        String type = message.getString("t");
+        if ("READY".equals(type))
+        {
+            JsonObject data = message.getJsonObject("d");
+            sessionId = data.getString("session_id");
+            resumeUrl = data.getString("resume_gateway_url");
+            onConnected();
+        }
+        else if ("RESUMED".equals(type))
+        {
+            onConnected();
+        }
+    }
+
+    private void onConnected()
+    {
+        status = Status.CONNECTED;
+        reconnectAttempts = 0;
+
+        // complete() is false once the first session was ready, so this is a resume or a new session
+        Runnable listener = reconnectListener;
+        if (!ready.complete(null) && listener != null)
+        {
+            listener.run();
+        }
+    }
+
+    private void onClose(int socketGeneration, Short code, String reason)
+    {
+        if (socketGeneration != generation || shuttingDown)
+        {
+            return;
+        }
+
+        int closeCode = code != null ? code : -1;
+        cancelHeartbeat();
+
+        if (FATAL_CLOSE_CODES.contains(closeCode))
+        {
+            logger.error("Gateway closed the connection with {} ({}), not reconnecting", closeCode, reason);
+            status = Status.FAILED;
+            generation++;
+            ready.completeExceptionally(new GatewayRejectedException("Gateway close code " + closeCode + ": " + reason));
+            return;
+        }
+
+        boolean resume = closeCode != CLOSE_INVALID_SEQ && closeCode != CLOSE_SESSION_TIMED_OUT;
+        logger.info("Gateway connection closed with {} ({}), reconnecting", closeCode, reason);
+        scheduleReconnect(resume);
+    }
+
+    private void reconnect(boolean resume, long delayMs)
+    {
+        generation++;
+        cancelHeartbeat();
+
+        WebSocket old = socket;
+        socket = null;
+        if (old != null && !old.isClosed())
+        {
+            old.close(CLOSE_RECONNECT, "reconnect");
+        }
+
+        if (!resume)
+        {
+            sessionId = null;
+            sequence = null;
+        }
+
+        status = Status.RECONNECTING;
+        if (delayMs <= 0)
+        {
+            openSocket();
+        }
+        else
+        {
+            vertx.setTimer(delayMs, id -> openSocket());
+        }
+    }
+
+    private void scheduleReconnect(boolean resume)
+    {
+        long delay = Math.min(MAX_RECONNECT_DELAY_MS, MIN_RECONNECT_DELAY_MS << Math.min(reconnectAttempts, 6));
+        reconnectAttempts++;
+        reconnect(resume, delay + ThreadLocalRandom.current().nextLong(MIN_RECONNECT_DELAY_MS));
+    }
+
+    private void cancelHeartbeat()
+    {
+        if (heartbeatTimer >= 0)
+        {
+            vertx.cancelTimer(heartbeatTimer);
+            heartbeatTimer = -1;
+        }
+    }
+
+    private void send(int op, JsonObject data)
+    {
+        if (socket == null || socket.isClosed())
+        {
+            return;
+        }
+        socket.writeTextMessage(new JsonObject().put("op", op).put("d", data).encode());
+    }
+
+    private JsonObject identifyPayload()
+    {
+        return new JsonObject()
+                .put("token", token)
+                .put("intents", 0)
+                .put("large_threshold", 50)
+                .put("compress", false)
+                .put("properties", new JsonObject()
+                        .put("os", System.getProperty("os.name"))
+                        .put("browser", "DiscordOnlineDayzBot")
+                        .put("device", "DiscordOnlineDayzBot"))
+                .put("presence", presencePayload());
+    }
+
+    private JsonObject presencePayload()
+    {
+        Activity.ActivityType type = activityType;
+        String text = activityText;
+
+        JsonObject activity = new JsonObject().put("type", type.getKey());
+        if (type == Activity.ActivityType.CUSTOM_STATUS)
+        {
+            activity.put("name", CUSTOM_STATUS_NAME).put("state", text);
+        }
+        else
+        {
+            activity.put("name", text);
+        }
+
+        return new JsonObject()
+                .put("since", null)
+                .put("activities", new JsonArray().add(activity))
+                .put("status", "online")
+                .put("afk", false);
+    }
+
+    public enum Status
+    {
+        INITIALIZING,
+        CONNECTING,
+        RESUMING,
+        CONNECTED,
+        RECONNECTING,
+        FAILED,
+        SHUTDOWN
+    }
+}
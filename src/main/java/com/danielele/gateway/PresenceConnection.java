@@ -0,0 +1,33 @@
+package com.danielele.gateway;
+
+import net.dv8tion.jda.api.entities.Activity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The part of a Discord gateway session a status bot needs: connect, stay connected and show an activity.
+ */
+public interface PresenceConnection
+{
+    boolean isConnected();
+
+    String getStatus();
+
+    void setActivity(Activity.ActivityType type, String text);
+
+    /**
+     * Called after the session was resumed or re-established, not for the first ready.
+     */
+    void setReconnectListener(Runnable listener);
+
+    /**
+     * @return {@code false} if the session did not become ready within the timeout
+     * @throws GatewayRejectedException if Discord refused the session and retrying would not help
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * @return {@code false} if the connection had to be closed forcefully after the timeout
+     */
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException;
+}
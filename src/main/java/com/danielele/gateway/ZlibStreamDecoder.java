@@ -0,0 +1,101 @@
+package com.danielele.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder for Discord's {@code compress=zlib-stream} transport compression.
+ * One zlib context spans the whole connection, every payload ends with a Z_SYNC_FLUSH marker.
+ * Not thread-safe.
+ */
+class ZlibStreamDecoder
+{
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] SYNC_FLUSH_SUFFIX = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private final Inflater inflater = new Inflater();
+
+    private byte[] compressed = new byte[INITIAL_BUFFER_SIZE];
+    private int compressedLength;
+    private byte[] decompressed = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * @return the decoded payload, or {@code null} if the frame did not complete a payload yet
+     */
+    String decode(byte[] data) throws DataFormatException
+    {
+        append(data);
+
+        if (!endsWithSuffix())
+        {
+            return null;
+        }
+
+        inflater.setInput(compressed, 0, compressedLength);
+        int length = 0;
+        while (true)
+        {
+            if (length == decompressed.length)
+            {
+                decompressed = Arrays.copyOf(decompressed, decompressed.length * 2);
+            }
+
+            int inflated = inflater.inflate(decompressed, length, decompressed.length - length);
+            length += inflated;
+
+            // Output buffer not filled up means everything up to the sync flush was written out
+            if (length < decompressed.length && inflater.needsInput())
+            {
+                break;
+            }
+            if (inflated == 0 && (inflater.needsDictionary() || inflater.finished()))
+            {
+                throw new DataFormatException("Unexpected end of zlib stream");
+            }
+        }
+
+        compressedLength = 0;
+        return new String(decompressed, 0, length, StandardCharsets.UTF_8);
+    }
+
+    void reset()
+    {
+        inflater.reset();
+        compressedLength = 0;
+    }
+
+    void close()
+    {
+        inflater.end();
+    }
+
+    private void append(byte[] data)
+    {
+        if (compressedLength + data.length > compressed.length)
+        {
+            compressed = Arrays.copyOf(compressed, Math.max(compressed.length * 2, compressedLength + data.length));
+        }
+        System.arraycopy(data, 0, compressed, compressedLength, data.length);
+        compressedLength += data.length;
+    }
+
+    private boolean endsWithSuffix()
+    {
+        if (compressedLength < SYNC_FLUSH_SUFFIX.length)
+        {
+            return false;
+        }
+
+        int offset = compressedLength - SYNC_FLUSH_SUFFIX.length;
+        for (int i = 0; i < SYNC_FLUSH_SUFFIX.length; i++)
+        {
+            if (compressed[offset + i] != SYNC_FLUSH_SUFFIX[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+package com.danielele.health;
+
+import com.danielele.DiscordBot;
+import com.danielele.DiscordBotService;
+import com.danielele.OnlineUpdater;
+import com.danielele.config.ConfigService;
+import com.danielele.presence.PresenceDispatcher;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watchdog behind the liveness and readiness probes. It looks at poll timestamps, gateway status and
+ * recent poll outcomes every few seconds and publishes the result as one snapshot, so a probe only reads a field.
+ * Live: no updater and no presence dispatcher stopped moving. Ready: every active instance is connected,
+ * polled and most of its recent polls succeeded.
+ */
+@Startup
+@ApplicationScoped
+public class HealthMonitor
+{
+    private static final Logger logger = LoggerFactory.getLogger(HealthMonitor.class);
+
+    private static final long CHECK_MILLIS = 5000;
+    private static final double MIN_SUCCESS_RATIO = 0.5;
+    // A poll may take a few timeouts on top of its interval before it counts as stalled
+    private static final int STALL_INTERVALS = 3;
+    private static final long STALL_GRACE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long DISPATCHER_STALL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // The watchdog itself missed this many runs
+    private static final long SNAPSHOT_STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(CHECK_MILLIS * 3);
+
+    @Inject
+    ConfigService configService;
+    @Inject
+    DiscordBotService discordBotService;
+    @Inject
+    OnlineUpdater onlineUpdater;
+    @Inject
+    PresenceDispatcher presenceDispatcher;
+
+    private volatile HealthSnapshot snapshot = new HealthSnapshot(true, false, "starting\n", System.nanoTime());
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("health-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public HealthSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * @return false when the watchdog stopped publishing, then nothing in the snapshot can be trusted
+     */
+    public boolean isFresh(HealthSnapshot snapshot, long now)
+    {
+        return now - snapshot.getCreatedAt() < SNAPSHOT_STALE_NANOS;
+    }
+
+    void check()
+    {
+        try
+        {
+            HealthSnapshot previous = snapshot;
+            HealthSnapshot next = evaluate(System.nanoTime());
+            snapshot = next;
+
+            if (previous.isLive() != next.isLive() || previous.isReady() != next.isReady())
+            {
+                logger.info("Health changed: live={} ready={}", next.isLive(), next.isReady());
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Health check failed", e);
+        }
+    }
+
+    private HealthSnapshot evaluate(long now)
+    {
+        Map<String, DiscordBot> bots = new HashMap<>();
+        for (DiscordBot bot : discordBotService.getBots())
+        {
+            bots.put(bot.getKey(), bot);
+        }
+
+        boolean live = true;
+        boolean ready = true;
+        StringBuilder details = new StringBuilder();
+
+        long dispatcherIdle = now - presenceDispatcher.getLastTickAt();
+        if (dispatcherIdle > DISPATCHER_STALL_NANOS)
+        {
+            live = false;
+            details.append("presence-dispatcher stalled idle_s=").append(TimeUnit.NANOSECONDS.toSeconds(dispatcherIdle)).append('\n');
+        }
+
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            String key = ConfigService.instanceKey(instance);
+            details.append(key);
+
+            if (instance.paused)
+            {
+                details.append(" paused\n");
+                continue;
+            }
+
+            DiscordBot bot = bots.get(key);
+            if (bot == null)
+            {
+                ready = false;
+                details.append(" ready=false gateway=not_connected\n");
+                continue;
+            }
+
+            PollStats stats = bot.getPollStats();
+            boolean connected = bot.getConnection().isConnected();
+            boolean polled = onlineUpdater.isPolled(key);
+            long idle = stats.getIdleNanos(now);
+            long stallAfter = TimeUnit.SECONDS.toNanos((long) instance.updater.intervalSeconds * STALL_INTERVALS) + STALL_GRACE_NANOS;
+            boolean stalled = polled && idle > stallAfter;
+            double ratio = stats.getSuccessRatio();
+            boolean instanceReady = connected && polled && !stalled && ratio >= MIN_SUCCESS_RATIO;
+
+            live &= !stalled;
+            ready &= instanceReady;
+
+            details.append(" ready=").append(instanceReady)
+                    .append(" gateway=").append(connected ? "connected" : "disconnected")
+                    .append(" polled=").append(polled)
+                    .append(" stalled=").append(stalled)
+                    .append(" success_ratio=").append(String.format(Locale.ROOT, "%.2f", ratio))
+                    .append(" idle_s=").append(TimeUnit.NANOSECONDS.toSeconds(idle))
+                    .append(" last_failure=").append(stats.getLastFailure() != null ? stats.getLastFailure().getLabel() : "none")
+                    .append('\n');
+        }
+
+        return new HealthSnapshot(live, ready, details.toString(), now);
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
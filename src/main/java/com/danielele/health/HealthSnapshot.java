@@ -0,0 +1,43 @@
+package com.danielele.health;
+
+/**
+ * Health as the watchdog saw it on its last run, published as a whole.
+ */
+public final class HealthSnapshot
+{
+    private final boolean live;
+    private final boolean ready;
+    private final String details;
+    private final long createdAt;
+
+    HealthSnapshot(boolean live, boolean ready, String details, long createdAt)
+    {
+        this.live = live;
+        this.ready = ready;
+        this.details = details;
+        this.createdAt = createdAt;
+    }
+
+    public boolean isLive()
+    {
+        return live;
+    }
+
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * @return one line per instance and per stalled component
+     */
+    public String getDetails()
+    {
+        return details;
+    }
+
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+}
@@ -0,0 +1,118 @@
+package com.danielele.health;
+
+import com.danielele.metrics.LatencyHistogram;
+import com.danielele.provider.QueryFailure;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Outcome of the recent polls of one bot. Written only by the updater thread of the bot,
+ * read by the health watchdog.
+ */
+public class PollStats
+{
+    // One bit per poll, newest lowest, set for a failure
+    private static final int WINDOW = 32;
+
+    private volatile long scheduledAt;
+    private volatile long lastFinishedAt;
+    private volatile long lastDurationNanos;
+    private volatile int recentFailures;
+    private volatile int samples;
+    private volatile QueryFailure lastFailure;
+    private volatile long successes;
+    private volatile long failures;
+    private final AtomicLongArray failuresByCause = new AtomicLongArray(QueryFailure.values().length);
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Called when the bot's updater (re)starts, the stall clock starts from here.
+     */
+    public void markScheduled(long now)
+    {
+        scheduledAt = now;
+    }
+
+    public void record(QueryFailure failure, long startedAt, long now)
+    {
+        recentFailures = (recentFailures << 1) | (failure != null ? 1 : 0);
+        samples = Math.min(samples + 1, WINDOW);
+        lastDurationNanos = now - startedAt;
+        lastFinishedAt = now;
+        latency.record(lastDurationNanos);
+
+        if (failure != null)
+        {
+            lastFailure = failure;
+            failures++;
+            failuresByCause.incrementAndGet(failure.ordinal());
+        }
+        else
+        {
+            successes++;
+        }
+    }
+
+    /**
+     * @return nanos since the last finished poll, or since the updater started when none finished after that
+     */
+    public long getIdleNanos(long now)
+    {
+        return now - Math.max(scheduledAt, lastFinishedAt);
+    }
+
+    /**
+     * @return share of successful polls among the last 32, 1 before the first poll
+     */
+    public double getSuccessRatio()
+    {
+        int n = samples;
+        if (n == 0)
+        {
+            return 1;
+        }
+        int mask = n == WINDOW ? -1 : (1 << n) - 1;
+        return 1 - (double) Integer.bitCount(recentFailures & mask) / n;
+    }
+
+    public int getSamples()
+    {
+        return samples;
+    }
+
+    public long getLastDurationNanos()
+    {
+        return lastDurationNanos;
+    }
+
+    /**
+     * @return cause of the most recent failed poll, null if none failed yet
+     */
+    public QueryFailure getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    public long getSuccesses()
+    {
+        return successes;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public long getFailures(QueryFailure cause)
+    {
+        return failuresByCause.get(cause.ordinal());
+    }
+
+    /**
+     * @return duration of the server query of each poll, including a wait for the prefetched login query
+     */
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+}
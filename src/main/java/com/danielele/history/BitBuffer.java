@@ -0,0 +1,77 @@
+package com.danielele.history;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit string over a {@code long[]}, written and read least significant bit first.
+ */
+final class BitBuffer
+{
+    private long[] words;
+    private int size;
+
+    BitBuffer(int initialWords)
+    {
+        words = new long[Math.max(1, initialWords)];
+    }
+
+    /**
+     * Appends the lowest {@code count} bits of the value, 1 to 64.
+     */
+    void write(long value, int count)
+    {
+        int needed = (size + count + 63) >>> 6;
+        if (needed > words.length)
+        {
+            words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+        }
+
+        if (count < 64)
+        {
+            value &= (1L << count) - 1;
+        }
+
+        int word = size >>> 6;
+        int offset = size & 63;
+        words[word] |= value << offset;
+        if (offset + count > 64)
+        {
+            words[word + 1] |= value >>> (64 - offset);
+        }
+        size += count;
+    }
+
+    long read(int position, int count)
+    {
+        int word = position >>> 6;
+        int offset = position & 63;
+        long value = words[word] >>> offset;
+        if (offset + count > 64)
+        {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return count < 64 ? value & ((1L << count) - 1) : value;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Drops the unused tail once nothing is appended anymore.
+     */
+    void trim()
+    {
+        int used = Math.max(1, (size + 63) >>> 6);
+        if (used < words.length)
+        {
+            words = Arrays.copyOf(words, used);
+        }
+    }
+
+    int capacityBytes()
+    {
+        return words.length * Long.BYTES;
+    }
+}
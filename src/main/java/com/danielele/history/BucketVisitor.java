@@ -0,0 +1,13 @@
+package com.danielele.history;
+
+@FunctionalInterface
+public interface BucketVisitor
+{
+    /**
+     * @param start   epoch seconds the bucket starts at
+     * @param samples polls in the bucket
+     * @param sum     players summed over all polls, divided by samples for the average
+     * @param online  polls that found the server online
+     */
+    void accept(long start, int samples, int min, int max, long sum, int maxQueue, int online);
+}
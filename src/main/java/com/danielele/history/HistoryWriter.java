@@ -0,0 +1,173 @@
+package com.danielele.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves samples from the poll threads to the segment store. Polls only put a sample into a bounded queue,
+ * a full queue drops the sample instead of waiting. One thread appends, forces and expires segments.
+ */
+final class HistoryWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(HistoryWriter.class);
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long DRAIN_MILLIS = 1000;
+    private static final long EXPIRE_MINUTES = 60;
+    private static final long CHECKPOINT_MINUTES = 15;
+
+    private final SegmentStore store;
+    private final long retentionSeconds;
+    private final Runnable checkpoint;
+    private final BlockingQueue<Sample> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private boolean failed;
+
+    /**
+     * @param checkpoint saves the rollups, runs on the writer thread every few minutes and on stop
+     */
+    HistoryWriter(SegmentStore store, long retentionSeconds, Runnable checkpoint)
+    {
+        this.store = store;
+        this.retentionSeconds = retentionSeconds;
+        this.checkpoint = checkpoint;
+    }
+
+    void start(int flushSeconds)
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("history-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain, DRAIN_MILLIS, DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::force, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::expire, 0, EXPIRE_MINUTES, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(checkpoint, CHECKPOINT_MINUTES, CHECKPOINT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Never blocks.
+     */
+    void offer(long keyHash, long time, int players, int queue, boolean online)
+    {
+        if (!this.queue.offer(new Sample(keyHash, time, players, queue, online)))
+        {
+            if (dropped.getAndIncrement() == 0)
+            {
+                logger.warn("History writer is behind, samples are dropped from the durable history");
+            }
+        }
+    }
+
+    long getDropped()
+    {
+        return dropped.get();
+    }
+
+    long getWritten()
+    {
+        return written.get();
+    }
+
+    void stop()
+    {
+        if (scheduler == null)
+        {
+            return;
+        }
+
+        scheduler.shutdown();
+        try
+        {
+            if (!scheduler.awaitTermination(2, TimeUnit.SECONDS))
+            {
+                scheduler.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // The scheduler is done, this thread owns the store now
+        drain();
+        store.close();
+        checkpoint.run();
+    }
+
+    private void drain()
+    {
+        if (failed)
+        {
+            queue.clear();
+            return;
+        }
+
+        Sample sample;
+        while ((sample = queue.poll()) != null)
+        {
+            try
+            {
+                store.append(sample.keyHash, sample.time, sample.players, sample.queue, sample.online);
+                written.incrementAndGet();
+            }
+            catch (IOException e)
+            {
+                // Most likely a full or read-only disk, the in-memory history keeps working
+                failed = true;
+                queue.clear();
+                logger.error("History segment could not be written, durable history stopped: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void force()
+    {
+        try
+        {
+            store.force();
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("History segment could not be flushed: {}", e.getMessage());
+        }
+    }
+
+    private void expire()
+    {
+        store.expire(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - retentionSeconds);
+    }
+
+    private static final class Sample
+    {
+        private final long keyHash;
+        private final long time;
+        private final int players;
+        private final int queue;
+        private final boolean online;
+
+        private Sample(long keyHash, long time, int players, int queue, boolean online)
+        {
+            this.keyHash = keyHash;
+            this.time = time;
+            this.players = players;
+            this.queue = queue;
+            this.online = online;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.danielele.history;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.events.ConfigReloadedEvent;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players, queue and online state of every poll, kept in memory per instance for charts over the last days.
+ * With a history directory every sample is also written to disk and read back on the next start.
+ */
+@Startup
+@ApplicationScoped
+public class PlayerHistory
+{
+    private static final Logger logger = LoggerFactory.getLogger(PlayerHistory.class);
+
+    static final long CHUNK_SECONDS = TimeUnit.HOURS.toSeconds(2);
+    private static final long SEGMENT_ROLL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    private static final String CHECKPOINT_FILE = "rollups.dat";
+
+    @Inject
+    ConfigService configService;
+
+    private final Map<String, PlayerSeries> series = new ConcurrentHashMap<>();
+    private long retentionSeconds;
+    private HistoryWriter writer;
+    private RollupCheckpoint checkpoint;
+
+    @PostConstruct
+    void init()
+    {
+        ConfigService.HistoryConfig config = configService.getHistoryConfig();
+        retentionSeconds = TimeUnit.DAYS.toSeconds(config.retentionDays);
+
+        Path directory = configService.getHistoryDirectory();
+        if (directory == null)
+        {
+            logger.info("History directory not set, player history is kept in memory only");
+            return;
+        }
+
+        // Read before the first poll, so restored samples stay in front of new ones
+        long startedAt = System.nanoTime();
+        SegmentStore store = new SegmentStore(directory, SEGMENT_ROLL_SECONDS);
+        try
+        {
+            Map<Long, String> keys = new HashMap<>();
+            for (ConfigService.BotInstance instance : configService.getInstances())
+            {
+                String key = ConfigService.instanceKey(instance);
+                keys.put(SegmentStore.keyHash(key), key);
+            }
+
+            // Rollups first, samples up to the checkpoint are already counted in them
+            checkpoint = new RollupCheckpoint(directory.resolve(CHECKPOINT_FILE));
+            int rolledUp = checkpoint.load(keyHash ->
+            {
+                String key = keys.get(keyHash);
+                return key != null ? seriesOf(key) : null;
+            });
+
+            long restored = store.recover(now() - retentionSeconds, (keyHash, time, players, queue, online) ->
+            {
+                String key = keys.get(keyHash);
+                if (key != null)
+                {
+                    seriesOf(key).append(time, players, queue, online);
+                }
+            });
+
+            logger.info("History restored from {}: {} samples in {} segments, rollups of {} instances, {} ms",
+                    directory, restored, store.getSegmentCount(), rolledUp, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            writer = new HistoryWriter(store, retentionSeconds, this::saveCheckpoint);
+            writer.start(config.flushSeconds);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("History directory {} is not usable, player history is kept in memory only: {}", directory, e.getMessage());
+        }
+    }
+
+    public void record(ConfigService.BotInstance instance, ServerOnlineFun serverOnline)
+    {
+        boolean online = Boolean.TRUE.equals(serverOnline.isOnline());
+        int players = online ? valueOf(serverOnline.getCurrentPlayers()) : 0;
+        int queue = online ? valueOf(serverOnline.getQueueSize()) : 0;
+        long time = now();
+        String key = ConfigService.instanceKey(instance);
+
+        seriesOf(key).append(time, players, queue, online);
+        if (writer != null)
+        {
+            writer.offer(SegmentStore.keyHash(key), time, players, queue, online);
+        }
+    }
+
+    /**
+     * @return null if nothing was recorded for the instance
+     */
+    public PlayerSeries get(String key)
+    {
+        return series.get(key);
+    }
+
+    public long getBytes()
+    {
+        long bytes = 0;
+        for (PlayerSeries s : series.values())
+        {
+            bytes += s.getBytes();
+        }
+        return bytes;
+    }
+
+    public long getSamples()
+    {
+        long samples = 0;
+        for (PlayerSeries s : series.values())
+        {
+            samples += s.getSamples();
+        }
+        return samples;
+    }
+
+    /**
+     * @return samples written to disk, 0 without a history directory
+     */
+    public long getWritten()
+    {
+        return writer != null ? writer.getWritten() : 0;
+    }
+
+    /**
+     * @return samples that did not make it to disk because the writer was behind
+     */
+    public long getDropped()
+    {
+        return writer != null ? writer.getDropped() : 0;
+    }
+
+    void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        // Samples of removed instances stay on disk until they expire, the instance may come back
+        Set<String> keys = new HashSet<>();
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            keys.add(ConfigService.instanceKey(instance));
+        }
+        series.keySet().retainAll(keys);
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (writer != null)
+        {
+            writer.stop();
+        }
+    }
+
+    private void saveCheckpoint()
+    {
+        try
+        {
+            checkpoint.save(series);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("Rollup checkpoint could not be saved: {}", e.getMessage());
+        }
+    }
+
+    private PlayerSeries seriesOf(String key)
+    {
+        return series.computeIfAbsent(key, k -> new PlayerSeries(CHUNK_SECONDS, retentionSeconds));
+    }
+
+    private static long now()
+    {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    private static int valueOf(Integer value)
+    {
+        return value != null ? value : 0;
+    }
+}
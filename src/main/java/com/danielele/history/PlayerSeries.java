@@ -0,0 +1,270 @@
+package com.danielele.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player history of one instance: a chain of compressed chunks, each covering a fixed span of time.
+ * A chunk is sealed when its span is over, chunks that end before the retention window are dropped.
+ * Every sample also goes into minute, hour and day rollups, which reach further back than the samples.
+ */
+public final class PlayerSeries
+{
+    /**
+     * Resolution of the samples themselves.
+     */
+    public static final int RAW = 0;
+
+    private static final int MINUTE = 60;
+    private static final int HOUR = (int) TimeUnit.HOURS.toSeconds(1);
+    private static final int DAY = (int) TimeUnit.DAYS.toSeconds(1);
+
+    private final long chunkSeconds;
+    private final long retentionSeconds;
+    private final ArrayDeque<SampleChunk> chunks = new ArrayDeque<>();
+
+    // Finest first
+    private final Rollup[] rollups = {
+            new Rollup(MINUTE, (int) TimeUnit.DAYS.toMinutes(1)),
+            new Rollup(HOUR, (int) TimeUnit.DAYS.toHours(35)),
+            new Rollup(DAY, 400)
+    };
+    // Hour and day rollups restored from a checkpoint already hold every sample up to here
+    private long rolledUntil = -1;
+
+    PlayerSeries(long chunkSeconds, long retentionSeconds)
+    {
+        this.chunkSeconds = chunkSeconds;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    synchronized void append(long time, int players, int queue, boolean online)
+    {
+        SampleChunk open = chunks.peekLast();
+        if (open == null || time - open.getFirstTime() >= chunkSeconds || time < open.getLastTime())
+        {
+            if (open != null)
+            {
+                open.seal();
+            }
+            open = new SampleChunk(time);
+            chunks.addLast(open);
+        }
+        open.append(time, players, queue, online);
+
+        long horizon = time - retentionSeconds;
+        while (chunks.size() > 1 && chunks.peekFirst().getLastTime() < horizon)
+        {
+            chunks.removeFirst();
+        }
+
+        // Not kept in checkpoints, rebuilt from the samples
+        rollups[0].add(time, players, queue, online);
+        if (time > rolledUntil)
+        {
+            for (int i = 1; i < rollups.length; i++)
+            {
+                rollups[i].add(time, players, queue, online);
+            }
+        }
+    }
+
+    /**
+     * Visits the samples between both epoch seconds, inclusive, oldest first.
+     */
+    public synchronized void forEach(long from, long to, SampleVisitor visitor)
+    {
+        for (SampleChunk chunk : chunks)
+        {
+            if (chunk.getLastTime() >= from && chunk.getFirstTime() <= to)
+            {
+                chunk.forEach(from, to, visitor);
+            }
+        }
+    }
+
+    /**
+     * Picks the coarsest resolution not coarser than {@code step}. When that one does not reach back to
+     * {@code from} while older data exists, the next coarser one that does is used instead.
+     *
+     * @return {@link #RAW} or the bucket width in seconds
+     */
+    public synchronized int chooseResolution(long from, long step)
+    {
+        int level = -1;
+        for (int i = 0; i < rollups.length; i++)
+        {
+            if (rollups[i].getStep() <= step)
+            {
+                level = i;
+            }
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for (int i = -1; i < rollups.length; i++)
+        {
+            long first = firstTime(i);
+            if (first >= 0)
+            {
+                earliest = Math.min(earliest, first);
+            }
+        }
+
+        long needed = Math.max(from, earliest);
+        while (level < rollups.length - 1 && (firstTime(level) < 0 || firstTime(level) > needed))
+        {
+            level++;
+        }
+        return level < 0 ? RAW : rollups[level].getStep();
+    }
+
+    /**
+     * Visits one point per {@code step} seconds from {@code from} to {@code to}, merged from the samples or
+     * buckets of the given resolution. Points without data are left out.
+     *
+     * @param step multiple of the resolution
+     */
+    public synchronized void query(long from, long to, long step, int resolution, BucketVisitor visitor)
+    {
+        PointMerger merger = new PointMerger(step, visitor);
+        if (resolution == RAW)
+        {
+            forEach(from, to, (time, players, queue, online) ->
+                    merger.accept(time, 1, players, players, players, queue, online ? 1 : 0));
+        }
+        else
+        {
+            for (Rollup rollup : rollups)
+            {
+                if (rollup.getStep() == resolution)
+                {
+                    rollup.forEach(from, to, merger);
+                }
+            }
+        }
+        merger.flush();
+    }
+
+    public synchronized int getSamples()
+    {
+        int samples = 0;
+        for (SampleChunk chunk : chunks)
+        {
+            samples += chunk.getCount();
+        }
+        return samples;
+    }
+
+    /**
+     * @return bytes held by the compressed chunks and the rollups
+     */
+    public synchronized long getBytes()
+    {
+        long bytes = 0;
+        for (SampleChunk chunk : chunks)
+        {
+            bytes += chunk.getBytes();
+        }
+        for (Rollup rollup : rollups)
+        {
+            bytes += rollup.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the hour and day rollups, the minute rollup is rebuilt from the stored samples.
+     */
+    synchronized void writeRollups(DataOutput out) throws IOException
+    {
+        SampleChunk last = chunks.peekLast();
+        out.writeLong(last != null ? last.getLastTime() : rolledUntil);
+        out.writeInt(rollups.length - 1);
+        for (int i = 1; i < rollups.length; i++)
+        {
+            rollups[i].write(out);
+        }
+    }
+
+    /**
+     * Restores rollups written by {@link #writeRollups}, before any sample is appended.
+     */
+    synchronized void readRollups(DataInput in) throws IOException
+    {
+        rolledUntil = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            Rollup rollup = i + 1 < rollups.length ? rollups[i + 1] : new Rollup(DAY, 1);
+            rollup.read(in);
+        }
+    }
+
+    // -1 is the samples themselves
+    private long firstTime(int level)
+    {
+        if (level >= 0)
+        {
+            return rollups[level].getFirstTime();
+        }
+        SampleChunk first = chunks.peekFirst();
+        return first != null ? first.getFirstTime() : -1;
+    }
+
+    /**
+     * Merges samples or buckets into points of a wider step. Input arrives oldest first.
+     */
+    private static final class PointMerger implements BucketVisitor
+    {
+        private final long step;
+        private final BucketVisitor out;
+        private long start = Long.MIN_VALUE;
+        private int samples;
+        private int min;
+        private int max;
+        private long sum;
+        private int maxQueue;
+        private int online;
+
+        private PointMerger(long step, BucketVisitor out)
+        {
+            this.step = step;
+            this.out = out;
+        }
+
+        @Override
+        public void accept(long time, int bucketSamples, int bucketMin, int bucketMax, long bucketSum, int bucketMaxQueue, int bucketOnline)
+        {
+            long pointStart = Math.floorDiv(time, step) * step;
+            if (pointStart != start)
+            {
+                flush();
+                start = pointStart;
+                min = Integer.MAX_VALUE;
+                max = Integer.MIN_VALUE;
+            }
+
+            samples += bucketSamples;
+            min = Math.min(min, bucketMin);
+            max = Math.max(max, bucketMax);
+            sum += bucketSum;
+            maxQueue = Math.max(maxQueue, bucketMaxQueue);
+            online += bucketOnline;
+        }
+
+        private void flush()
+        {
+            if (samples > 0)
+            {
+                out.accept(start, samples, min, max, sum, maxQueue, online);
+            }
+            samples = 0;
+            sum = 0;
+            maxQueue = 0;
+            online = 0;
+        }
+    }
+}
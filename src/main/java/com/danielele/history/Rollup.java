@@ -0,0 +1,235 @@
+package com.danielele.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed-width time buckets of one resolution, updated with every sample. The buckets form a ring over the
+ * last {@code capacity} steps, a sample for a newer step takes over the slot of the oldest one.
+ * The ring is allocated in pages as buckets fill, a new instance does not pay for the whole span up front.
+ */
+final class Rollup
+{
+    private static final int PAGE_SLOTS = 60;
+    private static final int SLOT_BYTES = 2 * Long.BYTES + 5 * Integer.BYTES;
+
+    private final int step;
+    private final int capacity;
+
+    // One slot per bucket, slot = bucket index modulo capacity, in page slot / PAGE_SLOTS
+    private final Page[] pages;
+    private int allocatedSlots;
+    private long newest = -1;
+    // Exact time of the oldest sample still in the ring, buckets only know their start
+    private long firstTime = -1;
+
+    Rollup(int step, int capacity)
+    {
+        this.step = step;
+        this.capacity = capacity;
+        this.pages = new Page[(capacity + PAGE_SLOTS - 1) / PAGE_SLOTS];
+    }
+
+    int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return epoch seconds of the oldest sample still in the ring, -1 while empty
+     */
+    long getFirstTime()
+    {
+        return firstTime;
+    }
+
+    void add(long time, int players, int queue, boolean isOnline)
+    {
+        long bucket = time / step;
+        if (newest >= 0 && bucket <= newest - capacity)
+        {
+            // Older than the ring
+            return;
+        }
+
+        int slot = (int) (bucket % capacity);
+        Page page = allocate(slot);
+        int i = slot % PAGE_SLOTS;
+        if (page.index[i] != bucket)
+        {
+            page.index[i] = bucket;
+            page.samples[i] = 0;
+            page.min[i] = Integer.MAX_VALUE;
+            page.max[i] = Integer.MIN_VALUE;
+            page.sum[i] = 0;
+            page.maxQueue[i] = 0;
+            page.online[i] = 0;
+        }
+
+        page.samples[i]++;
+        page.min[i] = Math.min(page.min[i], players);
+        page.max[i] = Math.max(page.max[i], players);
+        page.sum[i] += players;
+        page.maxQueue[i] = Math.max(page.maxQueue[i], queue);
+        if (isOnline)
+        {
+            page.online[i]++;
+        }
+        newest = Math.max(newest, bucket);
+        firstTime = firstTime < 0 ? time : Math.min(firstTime, time);
+        firstTime = Math.max(firstTime, oldestStart());
+    }
+
+    private long oldestStart()
+    {
+        return Math.max(0, newest - capacity + 1) * step;
+    }
+
+    private Page allocate(int slot)
+    {
+        Page page = pages[slot / PAGE_SLOTS];
+        if (page == null)
+        {
+            // The last page only covers what is left of the capacity
+            int slots = Math.min(PAGE_SLOTS, capacity - slot / PAGE_SLOTS * PAGE_SLOTS);
+            page = new Page(slots);
+            pages[slot / PAGE_SLOTS] = page;
+            allocatedSlots += slots;
+        }
+        return page;
+    }
+
+    /**
+     * Visits the buckets overlapping both epoch seconds, inclusive, oldest first.
+     */
+    void forEach(long from, long to, BucketVisitor visitor)
+    {
+        if (newest < 0)
+        {
+            return;
+        }
+
+        long first = Math.max(Math.max(0, newest - capacity + 1), Math.floorDiv(from, step));
+        long last = Math.min(newest, Math.floorDiv(to, step));
+        for (long bucket = first; bucket <= last; bucket++)
+        {
+            int slot = (int) (bucket % capacity);
+            Page page = pages[slot / PAGE_SLOTS];
+            int i = slot % PAGE_SLOTS;
+            if (page != null && page.index[i] == bucket && page.samples[i] > 0)
+            {
+                visitor.accept(bucket * step, page.samples[i], page.min[i], page.max[i], page.sum[i], page.maxQueue[i], page.online[i]);
+            }
+        }
+    }
+
+    int getBytes()
+    {
+        return allocatedSlots * SLOT_BYTES;
+    }
+
+    void write(DataOutput out) throws IOException
+    {
+        int used = 0;
+        for (Page page : pages)
+        {
+            for (int i = 0; page != null && i < page.index.length; i++)
+            {
+                if (page.index[i] >= 0 && page.samples[i] > 0)
+                {
+                    used++;
+                }
+            }
+        }
+
+        out.writeInt(step);
+        out.writeLong(firstTime);
+        out.writeInt(used);
+        for (Page page : pages)
+        {
+            for (int i = 0; page != null && i < page.index.length; i++)
+            {
+                if (page.index[i] >= 0 && page.samples[i] > 0)
+                {
+                    out.writeLong(page.index[i]);
+                    out.writeInt(page.samples[i]);
+                    out.writeInt(page.min[i]);
+                    out.writeInt(page.max[i]);
+                    out.writeLong(page.sum[i]);
+                    out.writeInt(page.maxQueue[i]);
+                    out.writeInt(page.online[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads buckets written by {@link #write}. Buckets of a different step are skipped, the ring keeps what fits.
+     */
+    void read(DataInput in) throws IOException
+    {
+        int writtenStep = in.readInt();
+        long writtenFirstTime = in.readLong();
+        int used = in.readInt();
+        for (int i = 0; i < used; i++)
+        {
+            long bucket = in.readLong();
+            int bucketSamples = in.readInt();
+            int bucketMin = in.readInt();
+            int bucketMax = in.readInt();
+            long bucketSum = in.readLong();
+            int bucketMaxQueue = in.readInt();
+            int bucketOnline = in.readInt();
+            if (writtenStep != step || bucket < 0)
+            {
+                continue;
+            }
+
+            int slot = (int) (bucket % capacity);
+            Page page = allocate(slot);
+            int s = slot % PAGE_SLOTS;
+            if (page.index[s] > bucket)
+            {
+                continue;
+            }
+            page.index[s] = bucket;
+            page.samples[s] = bucketSamples;
+            page.min[s] = bucketMin;
+            page.max[s] = bucketMax;
+            page.sum[s] = bucketSum;
+            page.maxQueue[s] = bucketMaxQueue;
+            page.online[s] = bucketOnline;
+            newest = Math.max(newest, bucket);
+        }
+
+        if (writtenStep == step && newest >= 0)
+        {
+            firstTime = Math.max(writtenFirstTime, oldestStart());
+        }
+    }
+
+    private static final class Page
+    {
+        private final long[] index;
+        private final int[] samples;
+        private final int[] min;
+        private final int[] max;
+        private final long[] sum;
+        private final int[] maxQueue;
+        private final int[] online;
+
+        private Page(int slots)
+        {
+            index = new long[slots];
+            samples = new int[slots];
+            min = new int[slots];
+            max = new int[slots];
+            sum = new long[slots];
+            maxQueue = new int[slots];
+            online = new int[slots];
+            Arrays.fill(index, -1);
+        }
+    }
+}
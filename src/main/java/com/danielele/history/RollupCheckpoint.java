@@ -0,0 +1,119 @@
+package com.danielele.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Hour and day rollups of all series in one file, so charts keep reaching back past the sample retention
+ * after a restart. Written to a temp file and moved over the old one, a trailing CRC32C rejects a damaged file.
+ */
+final class RollupCheckpoint
+{
+    private static final Logger logger = LoggerFactory.getLogger(RollupCheckpoint.class);
+
+    private static final int MAGIC = 0x445A5255;
+    private static final int VERSION = 1;
+
+    private final Path file;
+
+    RollupCheckpoint(Path file)
+    {
+        this.file = file;
+    }
+
+    void save(Map<String, PlayerSeries> series) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(series.size());
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        for (Map.Entry<String, PlayerSeries> e : series.entrySet())
+        {
+            entry.reset();
+            e.getValue().writeRollups(new DataOutputStream(entry));
+            out.writeLong(SegmentStore.keyHash(e.getKey()));
+            out.writeInt(entry.size());
+            entry.writeTo(out);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param series the series of a key hash, null to skip entries of instances that are gone
+     * @return number of series restored
+     */
+    int load(Function<Long, PlayerSeries> series) throws IOException
+    {
+        byte[] data;
+        try
+        {
+            data = Files.readAllBytes(file);
+        }
+        catch (NoSuchFileException e)
+        {
+            return 0;
+        }
+
+        if (data.length < 4 * Integer.BYTES)
+        {
+            logger.warn("Rollup checkpoint {} is too short, ignored", file.getFileName());
+            return 0;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - Integer.BYTES);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - Integer.BYTES, Integer.BYTES).getInt())
+        {
+            logger.warn("Rollup checkpoint {} is damaged, ignored", file.getFileName());
+            return 0;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - Integer.BYTES));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+            logger.warn("Rollup checkpoint {} has an unknown header, ignored", file.getFileName());
+            return 0;
+        }
+
+        int count = in.readInt();
+        int restored = 0;
+        for (int i = 0; i < count; i++)
+        {
+            long keyHash = in.readLong();
+            int length = in.readInt();
+            PlayerSeries target = series.apply(keyHash);
+            if (target == null)
+            {
+                in.skipNBytes(length);
+                continue;
+            }
+            target.readRollups(in);
+            restored++;
+        }
+        return restored;
+    }
+}
@@ -0,0 +1,170 @@
+package com.danielele.history;
+
+/**
+ * Compressed run of samples, in the spirit of the Gorilla encoding. Timestamps are stored as the difference
+ * between consecutive poll intervals, a steady poll costs one bit and a second of jitter four. Players and queue are stored as the zigzag
+ * difference to the previous sample in a short variable length code, an unchanged value costs one bit.
+ * Counts move by small steps, a difference packs tighter than an XOR of the two values.
+ */
+final class SampleChunk
+{
+    private static final int INITIAL_WORDS = 16;
+    // Prefix of n ones then a zero selects the width, the longest prefix has no closing zero
+    private static final int[] TIMESTAMP_WIDTHS = {0, 2, 7, 12, 32};
+    private static final int[] VALUE_WIDTHS = {0, 4, 8, 64};
+
+    private final BitBuffer bits = new BitBuffer(INITIAL_WORDS);
+    private final long firstTime;
+    private long lastTime;
+    private long lastDelta;
+    private int lastPlayers;
+    private int lastQueue;
+    private int count;
+
+    SampleChunk(long firstTime)
+    {
+        this.firstTime = firstTime;
+        this.lastTime = firstTime;
+    }
+
+    void append(long time, int players, int queue, boolean online)
+    {
+        if (count > 0)
+        {
+            long delta = time - lastTime;
+            writeTimestamp(delta - lastDelta);
+            lastDelta = delta;
+        }
+        lastTime = time;
+
+        writeValue(players - lastPlayers);
+        writeValue(queue - lastQueue);
+        bits.write(online ? 1 : 0, 1);
+        lastPlayers = players;
+        lastQueue = queue;
+        count++;
+    }
+
+    void seal()
+    {
+        bits.trim();
+    }
+
+    long getFirstTime()
+    {
+        return firstTime;
+    }
+
+    long getLastTime()
+    {
+        return lastTime;
+    }
+
+    int getCount()
+    {
+        return count;
+    }
+
+    int getBytes()
+    {
+        return bits.capacityBytes();
+    }
+
+    void forEach(long from, long to, SampleVisitor visitor)
+    {
+        int position = 0;
+        long time = firstTime;
+        long delta = 0;
+        int players = 0;
+        int queue = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0)
+            {
+                int prefix = readPrefix(position, 4);
+                position += Math.min(prefix + 1, 4);
+                int width = TIMESTAMP_WIDTHS[prefix];
+                long dod = width == 0 ? 0 : unzigzag(bits.read(position, width));
+                position += width;
+                delta += dod;
+                time += delta;
+            }
+
+            int prefix = readPrefix(position, 3);
+            position += Math.min(prefix + 1, 3);
+            int width = VALUE_WIDTHS[prefix];
+            players += width == 0 ? 0 : (int) unzigzag(bits.read(position, width));
+            position += width;
+
+            prefix = readPrefix(position, 3);
+            position += Math.min(prefix + 1, 3);
+            width = VALUE_WIDTHS[prefix];
+            queue += width == 0 ? 0 : (int) unzigzag(bits.read(position, width));
+            position += width;
+
+            boolean online = bits.read(position, 1) == 1;
+            position++;
+
+            if (time > to)
+            {
+                return;
+            }
+            if (time >= from)
+            {
+                visitor.accept(time, players, queue, online);
+            }
+        }
+    }
+
+    private void writeTimestamp(long dod)
+    {
+        writeCoded(zigzag(dod), TIMESTAMP_WIDTHS);
+    }
+
+    private void writeValue(long difference)
+    {
+        writeCoded(zigzag(difference), VALUE_WIDTHS);
+    }
+
+    private void writeCoded(long zigzag, int[] widths)
+    {
+        int last = widths.length - 1;
+        int code = last;
+        for (int i = 0; i < last; i++)
+        {
+            if (widths[i] == 0 ? zigzag == 0 : zigzag < (1L << widths[i]))
+            {
+                code = i;
+                break;
+            }
+        }
+
+        // code ones, closed by a zero unless it is the longest prefix
+        bits.write((1L << code) - 1, code + (code < last ? 1 : 0));
+        if (widths[code] > 0)
+        {
+            bits.write(zigzag, widths[code]);
+        }
+    }
+
+    private int readPrefix(int position, int max)
+    {
+        int ones = 0;
+        while (ones < max && bits.read(position + ones, 1) == 1)
+        {
+            ones++;
+        }
+        return ones;
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,10 @@
+package com.danielele.history;
+
+@FunctionalInterface
+public interface SampleVisitor
+{
+    /**
+     * @param time epoch seconds of the poll
+     */
+    void accept(long time, int players, int queue, boolean online);
+}
@@ -0,0 +1,350 @@
+package com.danielele.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only store of poll samples in segment files of fixed size records, written through a memory mapping.
+ * Slot 0 of a segment is its header, every other slot is one sample:
+ * <pre>
+ *  0 time (epoch seconds, long)   8 instance key hash (long)
+ * 16 players (int)               20 queue (int)
+ * 24 flags (int, bit 0 online)   28 CRC32C of bytes 0-27 (int)
+ * </pre>
+ * An all-zero slot ends a segment. A slot with a wrong checksum is a torn write, recovery cuts the last
+ * segment there. Mapped pages can reach the disk out of order, so recovery also clears every slot after the cut
+ * of the last segment. Not thread safe, only the history writer thread uses it.
+ */
+final class SegmentStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+    static final int RECORD_BYTES = 32;
+    static final int SEGMENT_RECORDS = 1 << 16;
+    private static final long SEGMENT_BYTES = (long) RECORD_BYTES * SEGMENT_RECORDS;
+    private static final int MAGIC = 0x445A4853;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+
+    private final Path directory;
+    // A segment is rolled after this span even if it is not full, so retention can drop whole days
+    private final long rollSeconds;
+    private final CRC32C crc = new CRC32C();
+    private final byte[] record = new byte[RECORD_BYTES - Integer.BYTES];
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private MappedByteBuffer buffer;
+    private int slot;
+    // Also counts files that were skipped, a new segment never reuses a name
+    private long highestNumber = -1;
+
+    SegmentStore(Path directory, long rollSeconds)
+    {
+        this.directory = directory;
+        this.rollSeconds = rollSeconds;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor
+    {
+        void accept(long keyHash, long time, int players, int queue, boolean online);
+    }
+
+    /**
+     * Reads every valid record from {@code from} on, oldest segment first, and leaves the store ready to append
+     * after the last valid record.
+     *
+     * @return number of records handed to the visitor
+     */
+    long recover(long from, RecordVisitor visitor) throws IOException
+    {
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+        {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+
+        long restored = 0;
+        for (int i = 0; i < files.size(); i++)
+        {
+            boolean last = i == files.size() - 1;
+            restored += recoverSegment(files.get(i), last, from, visitor);
+        }
+        return restored;
+    }
+
+    private long recoverSegment(Path file, boolean last, long from, RecordVisitor visitor) throws IOException
+    {
+        long number = parseNumber(file);
+        if (number < 0)
+        {
+            return 0;
+        }
+        highestNumber = Math.max(highestNumber, number);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            if (channel.size() != SEGMENT_BYTES)
+            {
+                logger.warn("History segment {} has an unexpected size of {} bytes, skipped", file.getFileName(), channel.size());
+                return 0;
+            }
+
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != RECORD_BYTES)
+            {
+                logger.warn("History segment {} has an unknown header, skipped", file.getFileName());
+                return 0;
+            }
+
+            Segment segment = new Segment(file, map.getLong(16));
+            long restored = 0;
+            int end = 1;
+            while (end < SEGMENT_RECORDS)
+            {
+                int offset = end * RECORD_BYTES;
+                if (isEmpty(map, offset))
+                {
+                    break;
+                }
+                if (!isValid(map, offset))
+                {
+                    if (last)
+                    {
+                        logger.warn("History segment {}: torn record at slot {}, cut there", file.getFileName(), end);
+                        break;
+                    }
+                    logger.warn("History segment {}: damaged record at slot {}, skipped", file.getFileName(), end);
+                    end++;
+                    continue;
+                }
+
+                long time = map.getLong(offset);
+                segment.lastTime = Math.max(segment.lastTime, time);
+                if (time >= from)
+                {
+                    visitor.accept(map.getLong(offset + 8), time, map.getInt(offset + 16), map.getInt(offset + 20),
+                            (map.getInt(offset + 24) & 1) != 0);
+                    restored++;
+                }
+                end++;
+            }
+
+            if (last)
+            {
+                int cleared = clearFrom(map, end);
+                if (cleared > 0)
+                {
+                    map.force();
+                    logger.warn("History segment {}: {} stale slots after slot {} cleared", file.getFileName(), cleared, end);
+                }
+            }
+
+            segments.add(segment);
+            if (last && end < SEGMENT_RECORDS)
+            {
+                current = segment;
+                buffer = map;
+                slot = end;
+            }
+            return restored;
+        }
+    }
+
+    void append(long keyHash, long time, int players, int queue, boolean online) throws IOException
+    {
+        if (buffer == null || slot >= SEGMENT_RECORDS || time - current.createdAt >= rollSeconds)
+        {
+            roll(time);
+        }
+
+        int offset = slot * RECORD_BYTES;
+        buffer.putLong(offset, time);
+        buffer.putLong(offset + 8, keyHash);
+        buffer.putInt(offset + 16, players);
+        buffer.putInt(offset + 20, queue);
+        buffer.putInt(offset + 24, online ? 1 : 0);
+        buffer.putInt(offset + 28, checksum(buffer, offset));
+        slot++;
+        current.lastTime = Math.max(current.lastTime, time);
+    }
+
+    /**
+     * Writes the appended records of the open segment to disk. Without it they survive a crash of the process,
+     * but not one of the machine.
+     */
+    void force()
+    {
+        if (buffer != null)
+        {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Deletes closed segments whose newest record is older than {@code before}.
+     */
+    void expire(long before)
+    {
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext())
+        {
+            Segment segment = it.next();
+            if (segment == current || segment.lastTime >= before)
+            {
+                continue;
+            }
+            try
+            {
+                Files.deleteIfExists(segment.file);
+                it.remove();
+                logger.info("History segment {} expired", segment.file.getFileName());
+            }
+            catch (IOException e)
+            {
+                logger.warn("Could not delete expired history segment {}: {}", segment.file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    void close()
+    {
+        force();
+        buffer = null;
+        current = null;
+    }
+
+    private void roll(long time) throws IOException
+    {
+        force();
+
+        long number = ++highestNumber;
+        Path file = directory.resolve(String.format("%s%016x%s", PREFIX, number, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_BYTES);
+        buffer.putInt(12, SEGMENT_RECORDS);
+        buffer.putLong(16, time);
+        buffer.force();
+
+        current = new Segment(file, time);
+        segments.add(current);
+        slot = 1;
+        logger.debug("History segment {} started", file.getFileName());
+    }
+
+    private int checksum(MappedByteBuffer map, int offset)
+    {
+        map.get(offset, record);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private boolean isValid(MappedByteBuffer map, int offset)
+    {
+        return map.getInt(offset + 28) == checksum(map, offset);
+    }
+
+    private static boolean isEmpty(MappedByteBuffer map, int offset)
+    {
+        for (int i = 0; i < RECORD_BYTES; i += Long.BYTES)
+        {
+            if (map.getLong(offset + i) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Later records may have reached the disk before the cut, past a gap too. Appends would overwrite them
+    // one by one, so they must go now or they come back after the next crash.
+    private static int clearFrom(MappedByteBuffer map, int from)
+    {
+        int cleared = 0;
+        for (int s = from; s < SEGMENT_RECORDS; s++)
+        {
+            int offset = s * RECORD_BYTES;
+            if (isEmpty(map, offset))
+            {
+                continue;
+            }
+            for (int i = 0; i < RECORD_BYTES; i += Long.BYTES)
+            {
+                map.putLong(offset + i, 0);
+            }
+            cleared++;
+        }
+        return cleared;
+    }
+
+    private static long parseNumber(Path file)
+    {
+        String name = file.getFileName().toString();
+        try
+        {
+            return Long.parseUnsignedLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the instance key, records store it instead of the key itself.
+     */
+    static long keyHash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Segment
+    {
+        private final Path file;
+        private final long createdAt;
+        private long lastTime;
+
+        private Segment(Path file, long createdAt)
+        {
+            this.file = file;
+            this.createdAt = createdAt;
+            this.lastTime = createdAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.danielele.http;
+
+import com.danielele.channel.ChannelNameOutput;
+import com.danielele.channel.ChannelNameService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.concurrent.TimeUnit;
+
+@Path("/channel-names")
+public class ChannelNameResource
+{
+    @Inject
+    ChannelNameService channelNameService;
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public String channelNames()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (ChannelNameOutput output : channelNameService.getOutputs())
+        {
+            String pending = output.getPendingName();
+            sb.append(output.getChannelId())
+                    .append(" name=\"").append(output.getName() != null ? output.getName() : "").append('"')
+                    .append(" pending=\"").append(pending != null ? pending : "").append('"')
+                    .append(" renames_available=").append(channelNameService.getAvailableRenames(output))
+                    .append(" next_rename_s=").append(TimeUnit.MILLISECONDS.toSeconds(channelNameService.getMillisUntilRename(output)))
+                    .append(" renames=").append(output.getRenames())
+                    .append(" rate_limited=").append(output.getRateLimited())
+                    .append(" failures=").append(output.getFailures())
+                    .append('\n');
+        }
+
+        return sb.toString();
+    }
+}
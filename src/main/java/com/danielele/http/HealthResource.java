@@ -1,17 +1,54 @@
 package com.danielele.http;
 
+import com.danielele.health.HealthMonitor;
+import com.danielele.health.HealthSnapshot;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 
 @Path("/health")
 public class HealthResource
 {
+    @Inject
+    HealthMonitor healthMonitor;
+
     @GET
     @Produces(MediaType.TEXT_PLAIN)
     public String health()
     {
         return "ok";
     }
+
+    @GET
+    @Path("/live")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response live()
+    {
+        HealthSnapshot snapshot = healthMonitor.getSnapshot();
+        if (!healthMonitor.isFresh(snapshot, System.nanoTime()))
+        {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("watchdog stalled\n").build();
+        }
+        return respond(snapshot.isLive(), snapshot);
+    }
+
+    @GET
+    @Path("/ready")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response ready()
+    {
+        HealthSnapshot snapshot = healthMonitor.getSnapshot();
+        boolean fresh = healthMonitor.isFresh(snapshot, System.nanoTime());
+        return respond(fresh && snapshot.isReady(), snapshot);
+    }
+
+    private static Response respond(boolean ok, HealthSnapshot snapshot)
+    {
+        return Response.status(ok ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE)
+                .entity((ok ? "ok\n" : "unavailable\n") + snapshot.getDetails())
+                .build();
+    }
 }
@@ -0,0 +1,213 @@
+package com.danielele.http;
+
+import com.danielele.OnlineUpdater;
+import com.danielele.config.ConfigDiff;
+import com.danielele.config.ConfigService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Live instance management. Every change is written to the config file and applied through the same
+ * per-instance diff as a file reload, so only the touched bot is started, stopped or re-polled.
+ * Disabled unless {@code ADMIN_TOKEN} is set, requests send it as {@code Authorization: Bearer <token>}.
+ */
+@Path("/admin/instances")
+@Produces(MediaType.TEXT_PLAIN)
+public class InstanceAdminResource
+{
+    private static final Logger logger = LoggerFactory.getLogger(InstanceAdminResource.class);
+    private static final String ENV_ADMIN_TOKEN = "ADMIN_TOKEN";
+
+    @Inject
+    ConfigService configService;
+    @Inject
+    OnlineUpdater onlineUpdater;
+
+    @GET
+    public String list(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization)
+    {
+        authorize(authorization);
+
+        StringBuilder sb = new StringBuilder();
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            String key = ConfigService.instanceKey(instance);
+            sb.append(key)
+                    .append(" paused=").append(instance.paused)
+                    .append(" polled=").append(onlineUpdater.isPolled(key))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response add(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, String body)
+    {
+        authorize(authorization);
+
+        ConfigService.BotInstance instance;
+        try
+        {
+            instance = configService.readInstance(body);
+        }
+        catch (IOException e)
+        {
+            throw error(Response.Status.BAD_REQUEST, "invalid instance: " + e.getMessage());
+        }
+        // Without these the validator would fill in the placeholder token, which shuts the application down
+        if (instance.discord == null || instance.discord.token == null || instance.discord.token.isBlank()
+                || instance.server == null || instance.server.ip == null)
+        {
+            throw error(Response.Status.BAD_REQUEST, "discord.token and server.ip are required");
+        }
+
+        String key = ConfigService.instanceKey(instance);
+        String result = edit("add " + key, (config, keys) ->
+        {
+            if (keys.contains(key))
+            {
+                throw error(Response.Status.CONFLICT, "instance " + key + " already exists");
+            }
+            // Inline instances come before the included ones, which all move up one index
+            int inline = (int) config.instances.stream().filter(existing -> existing.source == null).count();
+            for (int i = inline; i < config.instances.size(); i++)
+            {
+                if (configService.isEnvOverridden(i))
+                {
+                    throw error(Response.Status.CONFLICT, "instance " + i + " is set by environment variables,"
+                            + " which would move to another instance; add " + key + " as a file in instancesDir instead");
+                }
+            }
+            config.instances.add(inline, instance);
+        });
+        return Response.status(Response.Status.CREATED).entity(result).build();
+    }
+
+    @POST
+    @Path("/{key}/pause")
+    public String pause(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @PathParam("key") String key)
+    {
+        authorize(authorization);
+        return edit("pause " + key, (config, keys) -> config.instances.get(require(keys, key)).paused = true);
+    }
+
+    @POST
+    @Path("/{key}/resume")
+    public String resume(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @PathParam("key") String key)
+    {
+        authorize(authorization);
+        return edit("resume " + key, (config, keys) -> config.instances.get(require(keys, key)).paused = false);
+    }
+
+    @POST
+    @Path("/{key}/refresh")
+    public String refresh(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @PathParam("key") String key)
+    {
+        authorize(authorization);
+
+        if (!onlineUpdater.refresh(key))
+        {
+            throw error(Response.Status.CONFLICT, "instance " + key + " is not polled right now");
+        }
+        return "refresh queued for " + key + "\n";
+    }
+
+    @DELETE
+    @Path("/{key}")
+    public String remove(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @PathParam("key") String key)
+    {
+        authorize(authorization);
+        return edit("remove " + key, (config, keys) ->
+        {
+            int index = require(keys, key);
+            if (config.instances.size() == 1)
+            {
+                // An empty config gets a placeholder instance, pause the last one instead
+                throw error(Response.Status.CONFLICT, "cannot remove the last instance");
+            }
+            // INSTANCE_N_* variables stay with the index, removing would hand them to the next instances
+            for (int i = index; i < config.instances.size(); i++)
+            {
+                if (configService.isEnvOverridden(i))
+                {
+                    throw error(Response.Status.CONFLICT, "instance " + i + " is set by environment variables,"
+                            + " which would move to another instance; pause " + key + " instead");
+                }
+            }
+            config.instances.remove(index);
+        });
+    }
+
+    private String edit(String action, BiConsumer<ConfigService.AppConfig, List<String>> change)
+    {
+        try
+        {
+            ConfigDiff diff = configService.edit(change);
+            logger.info("Admin API: {} applied ({})", action, diff);
+            return diff + "\n";
+        }
+        catch (IOException e)
+        {
+            logger.error("Admin API: {} failed: {}", action, e.getMessage());
+            throw error(Response.Status.INTERNAL_SERVER_ERROR, "config file could not be updated: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param keys running key of every file instance, see {@link ConfigService#edit}
+     * @return index of the file instance that runs under the key
+     */
+    private static int require(List<String> keys, String key)
+    {
+        int index = keys.indexOf(key);
+        if (index < 0)
+        {
+            throw error(Response.Status.NOT_FOUND, "no instance " + key);
+        }
+        return index;
+    }
+
+    private static void authorize(String authorization)
+    {
+        String token = System.getenv(ENV_ADMIN_TOKEN);
+        if (token == null || token.isBlank())
+        {
+            throw error(Response.Status.FORBIDDEN, "admin API is disabled, set " + ENV_ADMIN_TOKEN + " to enable it");
+        }
+
+        byte[] expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = authorization != null ? authorization.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (!MessageDigest.isEqual(expected, actual))
+        {
+            throw error(Response.Status.UNAUTHORIZED, "invalid admin token");
+        }
+    }
+
+    private static WebApplicationException error(Response.Status status, String message)
+    {
+        return new WebApplicationException(Response.status(status)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(message + "\n")
+                .build());
+    }
+}
@@ -0,0 +1,180 @@
+package com.danielele.http;
+
+import com.danielele.DiscordBot;
+import com.danielele.DiscordBotService;
+import com.danielele.OnlineUpdater;
+import com.danielele.ProcessStats;
+import com.danielele.SharedJdaResources;
+import com.danielele.config.ConfigService;
+import com.danielele.gateway.ClientImplementation;
+import com.danielele.health.PollStats;
+import com.danielele.history.PlayerHistory;
+import com.danielele.metrics.ExecutorStats;
+import com.danielele.metrics.MetricsWriter;
+import com.danielele.metrics.ProviderMetrics;
+import com.danielele.presence.PresencePublisher;
+import com.danielele.provider.QueryFailure;
+import com.danielele.provider.ServerQuery;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prometheus scrape endpoint. Everything here reads counters the poll and publish path already keeps,
+ * a scrape never queries a server or talks to Discord.
+ */
+@Path("/metrics")
+public class MetricsResource
+{
+    @Inject
+    ConfigService configService;
+    @Inject
+    DiscordBotService discordBotService;
+    @Inject
+    OnlineUpdater onlineUpdater;
+    @Inject
+    ServerQuery serverQuery;
+    @Inject
+    ProviderMetrics providerMetrics;
+    @Inject
+    SharedJdaResources sharedJdaResources;
+    @Inject
+    PlayerHistory playerHistory;
+
+    @GET
+    @Produces(MetricsWriter.CONTENT_TYPE)
+    public String metrics()
+    {
+        MetricsWriter writer = new MetricsWriter();
+        List<DiscordBot> bots = new ArrayList<>(discordBotService.getBots());
+
+        writePolls(writer, bots);
+        providerMetrics.writeTo(writer);
+        writePresence(writer, bots);
+        writeGateway(writer, bots);
+        writeExecutors(writer);
+        writeProcess(writer);
+
+        return writer.toString();
+    }
+
+    private void writePolls(MetricsWriter writer, List<DiscordBot> bots)
+    {
+        writer.family("dayzbot_poll_duration_seconds", "histogram", "Duration of the server query of each poll per instance");
+        for (DiscordBot bot : bots)
+        {
+            bot.getPollStats().getLatency().writeTo(writer, "dayzbot_poll_duration_seconds", "instance", bot.getKey());
+        }
+
+        writer.family("dayzbot_polls_total", "counter", "Finished polls per instance and result");
+        for (DiscordBot bot : bots)
+        {
+            PollStats stats = bot.getPollStats();
+            writer.sample("dayzbot_polls_total", stats.getSuccesses(), "instance", bot.getKey(), "result", "success");
+            writer.sample("dayzbot_polls_total", stats.getFailures(), "instance", bot.getKey(), "result", "failure");
+        }
+
+        writer.family("dayzbot_poll_failures_total", "counter", "Failed polls per instance and cause");
+        for (DiscordBot bot : bots)
+        {
+            PollStats stats = bot.getPollStats();
+            for (QueryFailure failure : QueryFailure.values())
+            {
+                writer.sample("dayzbot_poll_failures_total", stats.getFailures(failure),
+                        "instance", bot.getKey(), "cause", failure.getLabel());
+            }
+        }
+    }
+
+    private void writePresence(MetricsWriter writer, List<DiscordBot> bots)
+    {
+        writer.family("dayzbot_presence_updates_total", "counter",
+                "Presence updates per instance: submitted, published, coalesced into a newer one or suppressed as unchanged");
+        for (DiscordBot bot : bots)
+        {
+            PresencePublisher publisher = bot.getPresencePublisher();
+            writer.sample("dayzbot_presence_updates_total", publisher.getSubmitted(), "instance", bot.getKey(), "result", "submitted");
+            writer.sample("dayzbot_presence_updates_total", publisher.getPublished(), "instance", bot.getKey(), "result", "published");
+            writer.sample("dayzbot_presence_updates_total", publisher.getCoalesced(), "instance", bot.getKey(), "result", "coalesced");
+            writer.sample("dayzbot_presence_updates_total", publisher.getSuppressed(), "instance", bot.getKey(), "result", "suppressed");
+        }
+
+        writer.family("dayzbot_presence_pending", "gauge", "Presence waiting for the dispatcher per instance");
+        for (DiscordBot bot : bots)
+        {
+            writer.sample("dayzbot_presence_pending", bot.getPresencePublisher().getQueueDepth(), "instance", bot.getKey());
+        }
+    }
+
+    private void writeGateway(MetricsWriter writer, List<DiscordBot> bots)
+    {
+        writer.family("dayzbot_gateway_connected", "gauge", "1 if the gateway session of the instance is connected");
+        for (DiscordBot bot : bots)
+        {
+            writer.sample("dayzbot_gateway_connected", bot.getConnection().isConnected() ? 1 : 0, "instance", bot.getKey());
+        }
+
+        writer.family("dayzbot_gateway_status", "gauge", "Gateway session status of the instance, always 1");
+        for (DiscordBot bot : bots)
+        {
+            writer.sample("dayzbot_gateway_status", 1, "instance", bot.getKey(), "status", bot.getConnection().getStatus());
+        }
+
+        writer.family("dayzbot_gateway_reconnects_total", "counter", "Resumed or re-established gateway sessions per instance");
+        for (DiscordBot bot : bots)
+        {
+            writer.sample("dayzbot_gateway_reconnects_total", bot.getPresencePublisher().getReconnects(), "instance", bot.getKey());
+        }
+    }
+
+    private void writeExecutors(MetricsWriter writer)
+    {
+        List<ExecutorStats> pools = new ArrayList<>();
+        pools.add(onlineUpdater.getSchedulerStats());
+        pools.add(serverQuery.getFanOutStats());
+        pools.addAll(discordBotService.getExecutorStats());
+
+        // The shared JDA pools are only created for the JDA client, asking would create them
+        boolean jda = ClientImplementation.fromString(configService.getDiscordClientConfig().implementation) != ClientImplementation.LIGHTWEIGHT;
+        if (jda)
+        {
+            pools.addAll(sharedJdaResources.getPoolStats());
+        }
+
+        writer.family("dayzbot_executor_threads", "gauge", "Threads in the pool");
+        pools.forEach(p -> writer.sample("dayzbot_executor_threads", p.getThreads(), "pool", p.getPool()));
+        writer.family("dayzbot_executor_active_threads", "gauge", "Threads running a task");
+        pools.forEach(p -> writer.sample("dayzbot_executor_active_threads", p.getActive(), "pool", p.getPool()));
+        writer.family("dayzbot_executor_queued_tasks", "gauge", "Tasks waiting in the queue, scheduled pools include tasks waiting for their next run");
+        pools.forEach(p -> writer.sample("dayzbot_executor_queued_tasks", p.getQueued(), "pool", p.getPool()));
+        writer.family("dayzbot_executor_completed_tasks_total", "counter", "Tasks completed by the pool");
+        pools.forEach(p -> writer.sample("dayzbot_executor_completed_tasks_total", p.getCompleted(), "pool", p.getPool()));
+
+        if (jda)
+        {
+            writer.family("dayzbot_jda_http_calls", "gauge", "Discord REST calls in the shared JDA HTTP client");
+            writer.sample("dayzbot_jda_http_calls", sharedJdaResources.getRunningHttpCalls(), "state", "running");
+            writer.sample("dayzbot_jda_http_calls", sharedJdaResources.getQueuedHttpCalls(), "state", "queued");
+        }
+    }
+
+    private void writeProcess(MetricsWriter writer)
+    {
+        writer.family("dayzbot_jvm_threads", "gauge", "Live JVM threads");
+        writer.sample("dayzbot_jvm_threads", ProcessStats.threadCount());
+        writer.family("dayzbot_jvm_heap_used_bytes", "gauge", "Used heap");
+        writer.sample("dayzbot_jvm_heap_used_bytes", ProcessStats.heapUsedBytes());
+        writer.family("dayzbot_history_samples", "gauge", "Poll samples kept in the player history");
+        writer.sample("dayzbot_history_samples", playerHistory.getSamples());
+        writer.family("dayzbot_history_bytes", "gauge", "Memory held by the compressed player history and its rollups");
+        writer.sample("dayzbot_history_bytes", playerHistory.getBytes());
+        writer.family("dayzbot_history_written_total", "counter", "Samples written to the durable history");
+        writer.sample("dayzbot_history_written_total", playerHistory.getWritten());
+        writer.family("dayzbot_history_dropped_total", "counter", "Samples dropped from the durable history because the writer was behind");
+        writer.sample("dayzbot_history_dropped_total", playerHistory.getDropped());
+    }
+}
@@ -0,0 +1,53 @@
+package com.danielele.http;
+
+import com.danielele.presence.PresenceDispatcher;
+import com.danielele.presence.PresencePublisher;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.concurrent.TimeUnit;
+
+@Path("/presence")
+public class PresenceResource
+{
+    @Inject
+    PresenceDispatcher presenceDispatcher;
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public String presence()
+    {
+        long now = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        sb.append("queue_depth ").append(presenceDispatcher.getQueueDepth()).append('\n');
+
+        for (PresencePublisher publisher : presenceDispatcher.getPublishers())
+        {
+            sb.append(publisher.getBotId())
+                    .append(" pending=").append(publisher.getQueueDepth())
+                    .append(" pending_age_ms=").append(TimeUnit.NANOSECONDS.toMillis(publisher.getPendingAgeNanos(now)))
+                    .append(" submitted=").append(publisher.getSubmitted())
+                    .append(" published=").append(publisher.getPublished())
+                    .append(" coalesced=").append(publisher.getCoalesced())
+                    .append(" suppressed=").append(publisher.getSuppressed())
+                    .append(" last_delay_ms=").append(TimeUnit.NANOSECONDS.toMillis(publisher.getLastDelayNanos()))
+                    .append(" avg_delay_ms=").append(TimeUnit.NANOSECONDS.toMillis(publisher.getAverageDelayNanos()))
+                    .append(" max_delay_ms=").append(TimeUnit.NANOSECONDS.toMillis(publisher.getMaxDelayNanos()))
+                    .append(" time_to_first_presence_ms=").append(toMillisOrUnset(publisher.getTimeToFirstPresenceNanos()))
+                    .append(" reconnects=").append(publisher.getReconnects())
+                    .append(" last_reconnect_fresh_ms=").append(toMillisOrUnset(publisher.getLastReconnectFreshNanos()))
+                    .append(" max_reconnect_fresh_ms=").append(TimeUnit.NANOSECONDS.toMillis(publisher.getMaxReconnectFreshNanos()))
+                    .append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private static long toMillisOrUnset(long nanos)
+    {
+        return nanos >= 0 ? TimeUnit.NANOSECONDS.toMillis(nanos) : -1;
+    }
+}
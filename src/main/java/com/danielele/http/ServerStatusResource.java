@@ -0,0 +1,211 @@
+package com.danielele.http;
+
+import com.danielele.history.PlayerHistory;
+import com.danielele.history.PlayerSeries;
+import com.danielele.status.ServerStatusService;
+import com.danielele.status.StatusSnapshot;
+import com.danielele.status.StatusStream;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server status for websites. Answers from the cached snapshot: a 304 when the client's tag is current,
+ * otherwise the prebuilt body, gzipped when the client accepts it.
+ */
+@Path("/api/servers")
+public class ServerStatusResource
+{
+    // Clients may cache, but have to ask again; the answer is a 304 as long as nothing changed
+    private static final String CACHE_CONTROL = "no-cache";
+
+    private static final long DEFAULT_RANGE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    private static final long DEFAULT_POINTS = 300;
+    private static final long MAX_POINTS = 2000;
+
+    @Inject
+    ServerStatusService serverStatusService;
+    @Inject
+    StatusStream statusStream;
+    @Inject
+    PlayerHistory playerHistory;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @GET
+    public Response servers(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding)
+    {
+        StatusSnapshot snapshot = serverStatusService.getSnapshot();
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String etag = gzip ? snapshot.getGzipEtag() : snapshot.getEtag();
+
+        if (ifNoneMatch != null && matches(ifNoneMatch, snapshot))
+        {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        Response.ResponseBuilder response = Response.ok(gzip ? snapshot.getGzip() : snapshot.getJson(), MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip)
+        {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    /**
+     * Server-sent events: a {@code snapshot} with the same body as {@link #servers}, then a {@code delta} per changed
+     * instance and {@code removed} for instances gone after a reload. Reconnects resume from Last-Event-ID.
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void stream(@Context SseEventSink sink,
+                       @Context Sse sse,
+                       @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId)
+    {
+        statusStream.register(sink, sse, lastEventId);
+    }
+
+    /**
+     * Players over time, one point per {@code step} seconds between {@code from} and {@code to} (epoch seconds).
+     * Served from the coarsest rollup that is still fine enough for the step, so long ranges stay cheap.
+     */
+    @GET
+    @Path("/{id}/history")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String history(@PathParam("id") String id,
+                          @QueryParam("from") Long from,
+                          @QueryParam("to") Long to,
+                          @QueryParam("step") Long step)
+    {
+        PlayerSeries series = playerHistory.get(id);
+        if (series == null)
+        {
+            throw error(Response.Status.NOT_FOUND, "no history for " + id);
+        }
+
+        long end = to != null ? to : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        long start = from != null ? from : end - DEFAULT_RANGE_SECONDS;
+        if (start > end)
+        {
+            throw error(Response.Status.BAD_REQUEST, "from is after to");
+        }
+
+        long range = end - start + 1;
+        long width = step != null ? step : (range + DEFAULT_POINTS - 1) / DEFAULT_POINTS;
+        width = Math.max(Math.max(width, 1), (range + MAX_POINTS - 1) / MAX_POINTS);
+
+        int resolution = series.chooseResolution(start, width);
+        if (resolution != PlayerSeries.RAW)
+        {
+            // Buckets are never split, a point always covers whole ones
+            width = (width + resolution - 1) / resolution * resolution;
+        }
+
+        ObjectNode root = mapper.createObjectNode();
+        root.put("key", id);
+        root.put("from", start);
+        root.put("to", end);
+        root.put("step", width);
+        root.put("resolution", resolution);
+        ArrayNode points = root.putArray("points");
+        series.query(start, end, width, resolution, (time, samples, min, max, sum, maxQueue, online) ->
+        {
+            ObjectNode point = points.addObject();
+            point.put("t", time);
+            point.put("samples", samples);
+            point.put("min", min);
+            point.put("max", max);
+            point.put("avg", (double) sum / samples);
+            point.put("maxQueue", maxQueue);
+            point.put("uptime", (double) online / samples);
+        });
+
+        try
+        {
+            return mapper.writeValueAsString(root);
+        }
+        catch (JsonProcessingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Either variant's tag means the client holds the current content
+    private static boolean matches(String ifNoneMatch, StatusSnapshot snapshot)
+    {
+        for (String tag : ifNoneMatch.split(","))
+        {
+            String candidate = tag.trim();
+            if (candidate.startsWith("W/"))
+            {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(snapshot.getEtag()) || candidate.equals(snapshot.getGzipEtag()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding)
+    {
+        if (acceptEncoding == null)
+        {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(","))
+        {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip"))
+            {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++)
+            {
+                String param = parts[i].trim().replace(" ", "");
+                if (param.equals("q=0") || param.equals("q=0.0") || param.equals("q=0.00") || param.equals("q=0.000"))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static WebApplicationException error(Response.Status status, String message)
+    {
+        return new WebApplicationException(Response.status(status)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(message + "\n")
+                .build());
+    }
+}
@@ -0,0 +1,38 @@
+package com.danielele.http;
+
+import com.danielele.embed.StatusBoard;
+import com.danielele.embed.StatusEmbedService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/status-embeds")
+public class StatusEmbedResource
+{
+    @Inject
+    StatusEmbedService statusEmbedService;
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public String statusEmbeds()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (StatusBoard board : statusEmbedService.getBoards())
+        {
+            sb.append(board.getChannelId())
+                    .append(" servers=").append(board.getMemberCount())
+                    .append(" message=").append(board.getMessageId() != null ? board.getMessageId() : "-")
+                    .append(" renders=").append(board.getRenders())
+                    .append(" edits=").append(board.getEdits())
+                    .append(" unchanged=").append(board.getUnchanged())
+                    .append(" deferred=").append(board.getDeferred())
+                    .append(" failures=").append(board.getFailures())
+                    .append('\n');
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.danielele.metrics;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Thread pool numbers of one pool, or summed over a group of pools like the per-bot updaters.
+ */
+public final class ExecutorStats
+{
+    private final String pool;
+    private long threads;
+    private long active;
+    private long queued;
+    private long completed;
+
+    public ExecutorStats(String pool)
+    {
+        this.pool = pool;
+    }
+
+    public ExecutorStats add(ThreadPoolExecutor executor)
+    {
+        if (executor != null)
+        {
+            threads += executor.getPoolSize();
+            active += executor.getActiveCount();
+            // Scheduled pools also count tasks waiting for their next run here
+            queued += executor.getQueue().size();
+            completed += executor.getCompletedTaskCount();
+        }
+        return this;
+    }
+
+    public String getPool()
+    {
+        return pool;
+    }
+
+    public long getThreads()
+    {
+        return threads;
+    }
+
+    public long getActive()
+    {
+        return active;
+    }
+
+    public long getQueued()
+    {
+        return queued;
+    }
+
+    public long getCompleted()
+    {
+        return completed;
+    }
+}
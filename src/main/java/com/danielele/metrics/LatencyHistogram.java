@@ -0,0 +1,59 @@
+package com.danielele.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed buckets. Recording is a bucket lookup and two atomic adds,
+ * no locks and no allocation, so it can sit on every poll.
+ */
+public final class LatencyHistogram
+{
+    // Upper bounds in seconds, a poll is a UDP round trip or an HTTP call with a timeout of a few seconds
+    private static final double[] BOUNDS_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+    private static final String[] BOUND_LABELS = new String[BOUNDS_SECONDS.length];
+
+    static
+    {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++)
+        {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+            BOUND_LABELS[i] = Double.toString(BOUNDS_SECONDS[i]);
+        }
+    }
+
+    // Last slot is +Inf
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i])
+        {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+        sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Writes the cumulative buckets, sum and count. A scrape may land between the two adds of a record,
+     * the sum can then be one sample ahead of the count.
+     */
+    public void writeTo(MetricsWriter writer, String name, String... labels)
+    {
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++)
+        {
+            cumulative += buckets.get(i);
+            writer.bucket(name, BOUND_LABELS[i], cumulative, labels);
+        }
+        cumulative += buckets.get(BOUNDS_NANOS.length);
+        writer.bucket(name, "+Inf", cumulative, labels);
+        writer.sample(name + "_sum", sumNanos.get() / 1e9, labels);
+        writer.sample(name + "_count", cumulative, labels);
+    }
+}
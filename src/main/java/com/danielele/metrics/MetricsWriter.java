@@ -0,0 +1,107 @@
+package com.danielele.metrics;
+
+/**
+ * Prometheus text exposition format. Labels are passed as name, value pairs.
+ */
+public final class MetricsWriter
+{
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    public MetricsWriter family(String name, String type, String help)
+    {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public MetricsWriter sample(String name, double value, String... labels)
+    {
+        appendName(name, labels, null);
+        appendValue(value);
+        return this;
+    }
+
+    public MetricsWriter sample(String name, long value, String... labels)
+    {
+        appendName(name, labels, null);
+        sb.append(' ').append(value).append('\n');
+        return this;
+    }
+
+    void bucket(String name, String le, long value, String... labels)
+    {
+        appendName(name + "_bucket", labels, le);
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private void appendName(String name, String[] labels, String le)
+    {
+        sb.append(name);
+        if (labels.length == 0 && le == null)
+        {
+            return;
+        }
+
+        sb.append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2)
+        {
+            if (i > 0)
+            {
+                sb.append(',');
+            }
+            appendLabel(labels[i], labels[i + 1]);
+        }
+        if (le != null)
+        {
+            if (labels.length > 0)
+            {
+                sb.append(',');
+            }
+            appendLabel("le", le);
+        }
+        sb.append('}');
+    }
+
+    private void appendLabel(String name, String value)
+    {
+        sb.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '\\' -> sb.append("\\\\");
+                case '"' -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                default -> sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private void appendValue(double value)
+    {
+        sb.append(' ');
+        if (Double.isNaN(value))
+        {
+            sb.append("NaN");
+        }
+        else if (Double.isInfinite(value))
+        {
+            sb.append(value > 0 ? "+Inf" : "-Inf");
+        }
+        else
+        {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    @Override
+    public String toString()
+    {
+        return sb.toString();
+    }
+}
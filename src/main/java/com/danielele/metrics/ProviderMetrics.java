@@ -0,0 +1,66 @@
+package com.danielele.metrics;
+
+import com.danielele.provider.OnlineProviderType;
+import com.danielele.provider.QueryFailure;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and failures of every provider call, whichever instance, rotation slot or aggregate member made it.
+ */
+@ApplicationScoped
+public class ProviderMetrics
+{
+    private static final OnlineProviderType[] TYPES = OnlineProviderType.values();
+    private static final QueryFailure[] FAILURES = QueryFailure.values();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[TYPES.length];
+    private final AtomicLongArray failures = new AtomicLongArray(TYPES.length * FAILURES.length);
+
+    public ProviderMetrics()
+    {
+        for (int i = 0; i < latencies.length; i++)
+        {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param failure null for a successful call
+     */
+    public void record(OnlineProviderType type, QueryFailure failure, long nanos)
+    {
+        latencies[type.ordinal()].record(nanos);
+        if (failure != null)
+        {
+            failures.incrementAndGet(type.ordinal() * FAILURES.length + failure.ordinal());
+        }
+    }
+
+    public void writeTo(MetricsWriter writer)
+    {
+        writer.family("dayzbot_provider_query_duration_seconds", "histogram", "Duration of server queries per provider");
+        for (OnlineProviderType type : TYPES)
+        {
+            latencies[type.ordinal()].writeTo(writer, "dayzbot_provider_query_duration_seconds", "provider", label(type));
+        }
+
+        writer.family("dayzbot_provider_query_failures_total", "counter", "Failed server queries per provider and cause");
+        for (OnlineProviderType type : TYPES)
+        {
+            for (QueryFailure failure : FAILURES)
+            {
+                writer.sample("dayzbot_provider_query_failures_total",
+                        failures.get(type.ordinal() * FAILURES.length + failure.ordinal()),
+                        "provider", label(type), "cause", failure.getLabel());
+            }
+        }
+    }
+
+    private static String label(OnlineProviderType type)
+    {
+        return type.getValue().toLowerCase(Locale.ROOT);
+    }
+}
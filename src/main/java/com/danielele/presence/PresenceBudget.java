@@ -0,0 +1,62 @@
+package com.danielele.presence;
+
+/**
+ * Token bucket for presence updates of one gateway connection.
+ * Not thread-safe, only touched from the dispatcher thread.
+ */
+public class PresenceBudget
+{
+    private final int capacity;
+    private final long refillNanos;
+
+    private double tokens;
+    private long lastRefillAt;
+
+    public PresenceBudget(int capacity, long windowNanos, long now)
+    {
+        this.capacity = capacity;
+        this.refillNanos = windowNanos / capacity;
+        this.tokens = capacity;
+        this.lastRefillAt = now;
+    }
+
+    public boolean tryAcquire(long now)
+    {
+        refill(now);
+        if (tokens >= 1.0)
+        {
+            tokens -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean hasToken(long now)
+    {
+        refill(now);
+        return tokens >= 1.0;
+    }
+
+    public int available(long now)
+    {
+        refill(now);
+        return (int) tokens;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    private void refill(long now)
+    {
+        long elapsed = now - lastRefillAt;
+        if (elapsed <= 0)
+        {
+            return;
+        }
+
+        tokens = Math.min(capacity, tokens + (double) elapsed / refillNanos);
+        lastRefillAt = now;
+    }
+}
@@ -0,0 +1,147 @@
+package com.danielele.presence;
+
+import com.danielele.gateway.PresenceConnection;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import net.dv8tion.jda.api.entities.Activity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@ApplicationScoped
+public class PresenceDispatcher
+{
+    private static final Logger logger = LoggerFactory.getLogger(PresenceDispatcher.class);
+
+    // Discord allows a handful of presence updates per connection, anything above is queued or dropped by JDA
+    private static final int PRESENCE_UPDATES_PER_WINDOW = 5;
+    private static final long PRESENCE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(20);
+    private static final long TICK_MILLIS = 250;
+
+    private final Map<String, PresencePublisher> publishers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private volatile long lastTickAt = System.nanoTime();
+
+    @PostConstruct
+    void init()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("presence-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::dispatch, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param startedAt      {@link System#nanoTime()} when the application began starting this bot,
+     *                       used to report the time to its first presence
+     * @param activityType   activity the connection identified with
+     * @param activityText   activity the connection identified with
+     * @param fromServerData the identify activity already shows a server query and counts as the first presence
+     */
+    public PresencePublisher register(String botId, PresenceConnection connection, long startedAt,
+                                      Activity.ActivityType activityType, String activityText, boolean fromServerData)
+    {
+        long now = System.nanoTime();
+        PresencePublisher publisher = new PresencePublisher(
+                botId,
+                connection,
+                new PresenceBudget(PRESENCE_UPDATES_PER_WINDOW, PRESENCE_WINDOW_NANOS, now),
+                startedAt
+        );
+        publisher.initialActivity(activityType, activityText, fromServerData, now);
+        publishers.put(botId, publisher);
+        connection.setReconnectListener(() -> onReconnected(publisher));
+        return publisher;
+    }
+
+    /**
+     * Removes the publisher only if it is still the registered one, a replacement bot may use the same id.
+     */
+    public void unregister(String botId, PresencePublisher publisher)
+    {
+        publishers.remove(botId, publisher);
+    }
+
+    public Collection<PresencePublisher> getPublishers()
+    {
+        return publishers.values();
+    }
+
+    public long getQueueDepth()
+    {
+        long depth = 0;
+        for (PresencePublisher publisher : publishers.values())
+        {
+            depth += publisher.getQueueDepth();
+        }
+        return depth;
+    }
+
+    // Flush whatever was held back while the gateway was away instead of waiting for the next tick
+    private void onReconnected(PresencePublisher publisher)
+    {
+        publisher.markReconnected(System.nanoTime());
+        logger.info("Bot {}: gateway reconnected, {} presence pending", publisher.getBotId(), publisher.getQueueDepth());
+
+        try
+        {
+            scheduler.execute(this::dispatch);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down
+        }
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last dispatch run, a stalled dispatcher stops moving it
+     */
+    public long getLastTickAt()
+    {
+        return lastTickAt;
+    }
+
+    void dispatch()
+    {
+        try
+        {
+            long now = System.nanoTime();
+            lastTickAt = now;
+
+            // Each bot is limited by its own budget only, bots never wait for each other
+            for (PresencePublisher publisher : publishers.values())
+            {
+                if (publisher.canPublish(now))
+                {
+                    publisher.publish(now);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Error while dispatching presence updates", e);
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.danielele.presence;
+
+import com.danielele.gateway.PresenceConnection;
+import net.dv8tion.jda.api.entities.Activity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PresencePublisher
+{
+    private static final Logger logger = LoggerFactory.getLogger(PresencePublisher.class);
+
+    private final String botId;
+    private final PresenceConnection connection;
+    private final PresenceBudget budget;
+
+    private final AtomicReference<PendingPresence> pending = new AtomicReference<>();
+
+    private volatile Activity.ActivityType lastType;
+    private volatile String lastText;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong totalDelayNanos = new AtomicLong();
+    private volatile long lastDelayNanos;
+    private volatile long maxDelayNanos;
+    private final long startedAt;
+    private volatile long timeToFirstPresenceNanos = -1;
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile long reconnectedAt;
+    private volatile long lastReconnectFreshNanos = -1;
+    private volatile long maxReconnectFreshNanos;
+
+    PresencePublisher(String botId, PresenceConnection connection, PresenceBudget budget, long startedAt)
+    {
+        this.botId = botId;
+        this.connection = connection;
+        this.budget = budget;
+        this.startedAt = startedAt;
+    }
+
+    public String getBotId()
+    {
+        return botId;
+    }
+
+    /**
+     * Offers a new presence. Only the newest value is kept until the dispatcher sends it,
+     * values equal to the one already shown are dropped right away.
+     */
+    public void submit(Activity.ActivityType type, CharSequence presence)
+    {
+        submitted.incrementAndGet();
+        long now = System.nanoTime();
+
+        PendingPresence previous = pending.get();
+        if (previous == null && type == lastType && lastText != null && lastText.contentEquals(presence))
+        {
+            suppressed.incrementAndGet();
+            return;
+        }
+
+        String text = presence.toString();
+        while (true)
+        {
+            if (previous == null && type == lastType && Objects.equals(text, lastText))
+            {
+                suppressed.incrementAndGet();
+                return;
+            }
+
+            long queuedAt = previous != null ? previous.queuedAt : now;
+            if (pending.compareAndSet(previous, new PendingPresence(type, text, queuedAt)))
+            {
+                break;
+            }
+            previous = pending.get();
+        }
+
+        if (previous != null)
+        {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remembers what the connection shows since IDENTIFY, so an equal first update is not sent again.
+     */
+    void initialActivity(Activity.ActivityType type, String text, boolean fromServerData, long now)
+    {
+        lastType = type;
+        lastText = text;
+
+        if (fromServerData)
+        {
+            timeToFirstPresenceNanos = now - startedAt;
+            logger.info("Bot {}: first presence shown with identify {} ms after startup",
+                    botId, TimeUnit.NANOSECONDS.toMillis(timeToFirstPresenceNanos));
+        }
+    }
+
+    boolean canPublish(long now)
+    {
+        return pending.get() != null
+                && connection.isConnected()
+                && budget.hasToken(now);
+    }
+
+    /**
+     * Starts the reconnect-to-fresh-presence clock. Without a pending value the connection
+     * already shows the newest presence, since the library sends it again on identify and keeps it on resume.
+     */
+    void markReconnected(long now)
+    {
+        reconnects.incrementAndGet();
+
+        if (pending.get() == null)
+        {
+            reconnectedAt = 0;
+            recordReconnectFresh(0);
+        }
+        else
+        {
+            reconnectedAt = now;
+        }
+    }
+
+    private void recordReconnectFresh(long nanos)
+    {
+        lastReconnectFreshNanos = nanos;
+        maxReconnectFreshNanos = Math.max(maxReconnectFreshNanos, nanos);
+    }
+
+    boolean publish(long now)
+    {
+        PendingPresence presence = pending.getAndSet(null);
+        if (presence == null)
+        {
+            return false;
+        }
+
+        if (presence.type == lastType && Objects.equals(presence.text, lastText))
+        {
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        if (!budget.tryAcquire(now))
+        {
+            pending.compareAndSet(null, presence);
+            return false;
+        }
+
+        connection.setActivity(presence.type, presence.text);
+
+        lastType = presence.type;
+        lastText = presence.text;
+
+        long delay = now - presence.queuedAt;
+        lastDelayNanos = delay;
+        maxDelayNanos = Math.max(maxDelayNanos, delay);
+        totalDelayNanos.addAndGet(delay);
+        long reconnected = reconnectedAt;
+        if (reconnected != 0)
+        {
+            reconnectedAt = 0;
+            recordReconnectFresh(now - reconnected);
+        }
+
+        if (published.getAndIncrement() == 0 && timeToFirstPresenceNanos < 0)
+        {
+            timeToFirstPresenceNanos = now - startedAt;
+            logger.info("Bot {}: first presence published {} ms after startup",
+                    botId, TimeUnit.NANOSECONDS.toMillis(timeToFirstPresenceNanos));
+        }
+        return true;
+    }
+
+    public long getQueueDepth()
+    {
+        return pending.get() != null ? 1 : 0;
+    }
+
+    public long getPendingAgeNanos(long now)
+    {
+        PendingPresence presence = pending.get();
+        return presence != null ? now - presence.queuedAt : 0;
+    }
+
+    public long getSubmitted()
+    {
+        return submitted.get();
+    }
+
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    public long getSuppressed()
+    {
+        return suppressed.get();
+    }
+
+    public long getPublished()
+    {
+        return published.get();
+    }
+
+    public long getLastDelayNanos()
+    {
+        return lastDelayNanos;
+    }
+
+    public long getMaxDelayNanos()
+    {
+        return maxDelayNanos;
+    }
+
+    /**
+     * @return nanos from startup to the first published presence, -1 if nothing was published yet
+     */
+    public long getTimeToFirstPresenceNanos()
+    {
+        return timeToFirstPresenceNanos;
+    }
+
+    public long getReconnects()
+    {
+        return reconnects.get();
+    }
+
+    /**
+     * @return nanos from the last reconnect until the newest presence was visible, -1 if there was no reconnect yet
+     */
+    public long getLastReconnectFreshNanos()
+    {
+        return lastReconnectFreshNanos;
+    }
+
+    public long getMaxReconnectFreshNanos()
+    {
+        return maxReconnectFreshNanos;
+    }
+
+    public long getAverageDelayNanos()
+    {
+        long count = published.get();
+        return count > 0 ? totalDelayNanos.get() / count : 0;
+    }
+
+    private static final class PendingPresence
+    {
+        private final Activity.ActivityType type;
+        private final String text;
+        private final long queuedAt;
+
+        private PendingPresence(Activity.ActivityType type, String text, long queuedAt)
+        {
+            this.type = type;
+            this.text = text;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.danielele.presence;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.presence.template.PresenceFormat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One bot showing several servers in turn. Every server is rendered when its own poll finishes,
+ * switching to the next server only hands the already rendered text to the publisher.
+ */
+public class PresenceRotation
+{
+    private final PresencePublisher publisher;
+    // Swapped as a whole when only the templates change, the slots keep their data
+    private volatile PresenceFormat[] formats;
+    private final StringBuilder[] buffers;
+    private final AtomicReferenceArray<ServerOnlineFun> results;
+    private final AtomicReferenceArray<String> rendered;
+    private final AtomicInteger current = new AtomicInteger(-1);
+
+    public PresenceRotation(PresencePublisher publisher, List<PresenceFormat> formats)
+    {
+        this.publisher = publisher;
+        this.formats = formats.toArray(new PresenceFormat[0]);
+        this.buffers = new StringBuilder[this.formats.length];
+        this.results = new AtomicReferenceArray<>(this.formats.length);
+        this.rendered = new AtomicReferenceArray<>(this.formats.length);
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = new StringBuilder(128);
+        }
+    }
+
+    public int size()
+    {
+        return formats.length;
+    }
+
+    /**
+     * Called by the poll task of the slot.
+     */
+    public void update(int slot, ServerOnlineFun serverOnline)
+    {
+        results.set(slot, serverOnline);
+        PresenceFormat format;
+        String text;
+        synchronized (buffers[slot])
+        {
+            format = formats[slot];
+            text = render(slot, format, serverOnline);
+        }
+
+        // The server on display stays fresh between switches, the first result is shown right away
+        if (current.get() == slot || current.compareAndSet(-1, slot))
+        {
+            publisher.submit(format.getActivityType(), text);
+        }
+    }
+
+    /**
+     * Replaces the templates of all slots and renders the last result of each slot again,
+     * so a template change shows up without waiting for the polls.
+     */
+    public void setFormats(List<PresenceFormat> formats)
+    {
+        if (formats.size() != buffers.length)
+        {
+            throw new IllegalArgumentException("Rotation has " + buffers.length + " slots, got " + formats.size() + " formats");
+        }
+
+        PresenceFormat[] updated = formats.toArray(new PresenceFormat[0]);
+        this.formats = updated;
+
+        for (int slot = 0; slot < updated.length; slot++)
+        {
+            synchronized (buffers[slot])
+            {
+                ServerOnlineFun serverOnline = results.get(slot);
+                if (serverOnline != null)
+                {
+                    render(slot, updated[slot], serverOnline);
+                }
+            }
+        }
+
+        int shown = current.get();
+        String text = shown >= 0 ? rendered.get(shown) : null;
+        if (text != null)
+        {
+            publisher.submit(updated[shown].getActivityType(), text);
+        }
+    }
+
+    // Callers hold the slot's buffer
+    private String render(int slot, PresenceFormat format, ServerOnlineFun serverOnline)
+    {
+        StringBuilder buffer = buffers[slot];
+        buffer.setLength(0);
+        format.render(serverOnline, buffer);
+
+        String text = buffer.toString();
+        rendered.set(slot, text);
+        return text;
+    }
+
+    /**
+     * Shows the next server that has data.
+     */
+    public void advance()
+    {
+        PresenceFormat[] formats = this.formats;
+        int from = current.get();
+        for (int i = 1; i <= formats.length; i++)
+        {
+            int next = Math.floorMod(from + i, formats.length);
+            String text = rendered.get(next);
+            if (text != null)
+            {
+                current.set(next);
+                publisher.submit(formats[next].getActivityType(), text);
+                return;
+            }
+        }
+    }
+
+    public int getCurrentSlot()
+    {
+        return current.get();
+    }
+}
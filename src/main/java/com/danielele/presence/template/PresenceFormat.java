@@ -0,0 +1,182 @@
+package com.danielele.presence.template;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import net.dv8tion.jda.api.entities.Activity;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Compiled {@code status} + {@code emojis} section of one instance.
+ * Immutable, one instance may be shared between threads, the output builder may not.
+ */
+public final class PresenceFormat
+{
+    private static final Set<PresencePlaceholder> MESSAGE_PLACEHOLDERS = EnumSet.allOf(PresencePlaceholder.class);
+    private static final Set<PresencePlaceholder> QUEUE_BLOCK_PLACEHOLDERS = EnumSet.complementOf(EnumSet.of(PresencePlaceholder.QUEUE_BLOCK));
+
+    private static final int DAY_START_HOUR = 6;
+    private static final int NIGHT_START_HOUR = 20;
+
+    private final Activity.ActivityType activityType;
+    private final PresenceTemplate message;
+    private final PresenceTemplate queueBlock;
+    private final String serverOfflineMessage;
+    private final boolean showQueueIfNotActive;
+    private final String dayEmoji;
+    private final String nightEmoji;
+
+    private PresenceFormat(Activity.ActivityType activityType,
+                           PresenceTemplate message,
+                           PresenceTemplate queueBlock,
+                           String serverOfflineMessage,
+                           boolean showQueueIfNotActive,
+                           String dayEmoji,
+                           String nightEmoji)
+    {
+        this.activityType = activityType;
+        this.message = message;
+        this.queueBlock = queueBlock;
+        this.serverOfflineMessage = serverOfflineMessage;
+        this.showQueueIfNotActive = showQueueIfNotActive;
+        this.dayEmoji = dayEmoji;
+        this.nightEmoji = nightEmoji;
+    }
+
+    public static PresenceFormat compile(ConfigService.StatusConfig status, ConfigService.EmojisConfig emojis)
+    {
+        PresenceTemplate message = PresenceTemplate.compile(
+                status.message, "status.message", MESSAGE_PLACEHOLDERS, p -> constantOf(p, emojis));
+        PresenceTemplate queueBlock = PresenceTemplate.compile(
+                status.queueBlock, "status.queueBlock", QUEUE_BLOCK_PLACEHOLDERS, p -> constantOf(p, emojis));
+
+        return new PresenceFormat(
+                toActivityType(status.activityType),
+                message,
+                queueBlock,
+                status.serverOfflineMessage,
+                status.showQueueIfNotActive,
+                emojis.day,
+                emojis.night
+        );
+    }
+
+    private static String constantOf(PresencePlaceholder placeholder, ConfigService.EmojisConfig emojis)
+    {
+        return switch (placeholder)
+        {
+            case EMOJI_PLAYER -> emojis.player;
+            case EMOJI_QUEUE -> emojis.queue;
+            default -> null;
+        };
+    }
+
+    public static Activity.ActivityType toActivityType(String type)
+    {
+        if (type == null)
+        {
+            return Activity.ActivityType.PLAYING;
+        }
+
+        return switch (type)
+        {
+            case "PLAYING" -> Activity.ActivityType.PLAYING;
+            case "LISTENING" -> Activity.ActivityType.LISTENING;
+            case "WATCHING" -> Activity.ActivityType.WATCHING;
+            case "COMPETING" -> Activity.ActivityType.COMPETING;
+            case "CUSTOM_STATUS" -> Activity.ActivityType.CUSTOM_STATUS;
+            default -> Activity.ActivityType.PLAYING;
+        };
+    }
+
+    public Activity.ActivityType getActivityType()
+    {
+        return activityType;
+    }
+
+    public void render(ServerOnlineFun serverOnline, StringBuilder out)
+    {
+        if (!Boolean.TRUE.equals(serverOnline.isOnline()))
+        {
+            out.append(serverOfflineMessage);
+            return;
+        }
+
+        renderTemplate(message, serverOnline, out);
+    }
+
+    private void renderTemplate(PresenceTemplate template, ServerOnlineFun serverOnline, StringBuilder out)
+    {
+        for (int i = 0; i < template.size(); i++)
+        {
+            PresencePlaceholder placeholder = template.placeholderAt(i);
+            if (placeholder == null)
+            {
+                out.append(template.literalAt(i));
+                continue;
+            }
+
+            switch (placeholder)
+            {
+                case ONLINE -> out.append(serverOnline.getCurrentPlayers());
+                case MAX -> out.append(serverOnline.getMaxPlayers());
+                case SERVERS -> out.append(serverOnline.getServersOnline());
+                case SERVERS_TOTAL -> out.append(serverOnline.getServersTotal());
+                case QUEUE -> out.append(serverOnline.getQueueSize());
+                case TIME ->
+                {
+                    String time = serverOnline.getServerTime();
+                    if (time != null)
+                    {
+                        out.append(time);
+                    }
+                }
+                case EMOJI_DAYTIME -> out.append(isDay(serverOnline.getServerTime()) ? dayEmoji : nightEmoji);
+                case QUEUE_BLOCK ->
+                {
+                    if (Boolean.TRUE.equals(serverOnline.isQueueActive()) || showQueueIfNotActive)
+                    {
+                        renderTemplate(queueBlock, serverOnline, out);
+                    }
+                }
+                default ->
+                {
+                    // constants are folded into literals at compile time
+                }
+            }
+        }
+    }
+
+    public static boolean isDay(String serverTime)
+    {
+        if (serverTime == null || serverTime.isEmpty())
+        {
+            return true;
+        }
+
+        int hour = 0;
+        int digits = 0;
+        for (int i = 0; i < serverTime.length(); i++)
+        {
+            char c = serverTime.charAt(i);
+            if (c == ':')
+            {
+                break;
+            }
+            if (c < '0' || c > '9' || digits >= 9)
+            {
+                return true;
+            }
+            hour = hour * 10 + (c - '0');
+            digits++;
+        }
+
+        if (digits == 0)
+        {
+            return true;
+        }
+
+        return hour >= DAY_START_HOUR && hour < NIGHT_START_HOUR;
+    }
+}
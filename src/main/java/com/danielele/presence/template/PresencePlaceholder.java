@@ -0,0 +1,39 @@
+package com.danielele.presence.template;
+
+public enum PresencePlaceholder
+{
+    EMOJI_PLAYER("emoji.player"),
+    EMOJI_DAYTIME("emoji.daytime"),
+    EMOJI_QUEUE("emoji.queue"),
+    ONLINE("online"),
+    MAX("max"),
+    TIME("time"),
+    QUEUE("queue"),
+    QUEUE_BLOCK("status.queueBlock"),
+    SERVERS("servers"),
+    SERVERS_TOTAL("servers.total");
+
+    private final String key;
+
+    PresencePlaceholder(String key)
+    {
+        this.key = key;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public static PresencePlaceholder fromKey(String key)
+    {
+        for (PresencePlaceholder placeholder : values())
+        {
+            if (placeholder.key.equals(key))
+            {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,137 @@
+package com.danielele.presence.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Template split once into literal text and typed placeholders.
+ * A segment with a {@code null} placeholder is a literal.
+ */
+public final class PresenceTemplate
+{
+    private static final String OPEN = "${";
+    private static final char CLOSE = '}';
+
+    private final String source;
+    private final String[] literals;
+    private final PresencePlaceholder[] placeholders;
+
+    private PresenceTemplate(String source, String[] literals, PresencePlaceholder[] placeholders)
+    {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @param constants resolves placeholders that never change at runtime (emojis) into literal text,
+     *                  returns {@code null} for placeholders that must be rendered on every update
+     */
+    public static PresenceTemplate compile(String source,
+                                           String fieldName,
+                                           Set<PresencePlaceholder> allowed,
+                                           Function<PresencePlaceholder, String> constants)
+    {
+        List<String> literals = new ArrayList<>();
+        List<PresencePlaceholder> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int pos = 0;
+        while (pos < source.length())
+        {
+            int start = source.indexOf(OPEN, pos);
+            if (start < 0)
+            {
+                literal.append(source, pos, source.length());
+                break;
+            }
+
+            literal.append(source, pos, start);
+
+            int end = source.indexOf(CLOSE, start + OPEN.length());
+            if (end < 0)
+            {
+                throw new PresenceTemplateException(
+                        fieldName + ": unterminated placeholder at column " + (start + 1));
+            }
+
+            String key = source.substring(start + OPEN.length(), end);
+            PresencePlaceholder placeholder = PresencePlaceholder.fromKey(key);
+            if (placeholder == null)
+            {
+                throw new PresenceTemplateException(
+                        fieldName + ": unknown placeholder '${" + key + "}' at column " + (start + 1));
+            }
+            if (!allowed.contains(placeholder))
+            {
+                throw new PresenceTemplateException(
+                        fieldName + ": placeholder '${" + key + "}' is not allowed here (column " + (start + 1) + ")");
+            }
+
+            String constant = constants.apply(placeholder);
+            if (constant != null)
+            {
+                literal.append(constant);
+            }
+            else
+            {
+                if (!literal.isEmpty())
+                {
+                    literals.add(literal.toString());
+                    placeholders.add(null);
+                    literal.setLength(0);
+                }
+                literals.add(null);
+                placeholders.add(placeholder);
+            }
+
+            pos = end + 1;
+        }
+
+        if (!literal.isEmpty())
+        {
+            literals.add(literal.toString());
+            placeholders.add(null);
+        }
+
+        return new PresenceTemplate(
+                source,
+                literals.toArray(new String[0]),
+                placeholders.toArray(new PresencePlaceholder[0])
+        );
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public int size()
+    {
+        return placeholders.length;
+    }
+
+    public PresencePlaceholder placeholderAt(int index)
+    {
+        return placeholders[index];
+    }
+
+    public String literalAt(int index)
+    {
+        return literals[index];
+    }
+
+    public boolean uses(PresencePlaceholder placeholder)
+    {
+        for (PresencePlaceholder p : placeholders)
+        {
+            if (p == placeholder)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
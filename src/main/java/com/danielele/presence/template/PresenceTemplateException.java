@@ -0,0 +1,11 @@
+package com.danielele.presence.template;
+
+public class PresenceTemplateException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public PresenceTemplateException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,118 @@
+package com.danielele.provider;
+
+import com.danielele.ServerOnlineFun;
+
+import java.util.List;
+
+/**
+ * Totals of the members of an aggregate instance that answered before the deadline.
+ */
+public class AggregateServerOnline implements ServerOnlineFun
+{
+    private final int currentPlayers;
+    private final int maxPlayers;
+    private final int queueSize;
+    private final boolean queueActive;
+    private final String serverTime;
+    private final int serversOnline;
+    private final int serversTotal;
+    private final List<String> late;
+    private final List<String> offline;
+    private final QueryFailure failure;
+
+    AggregateServerOnline(int currentPlayers,
+                          int maxPlayers,
+                          int queueSize,
+                          boolean queueActive,
+                          String serverTime,
+                          int serversOnline,
+                          int serversTotal,
+                          List<String> late,
+                          List<String> offline,
+                          QueryFailure failure)
+    {
+        this.currentPlayers = currentPlayers;
+        this.maxPlayers = maxPlayers;
+        this.queueSize = queueSize;
+        this.queueActive = queueActive;
+        this.serverTime = serverTime;
+        this.serversOnline = serversOnline;
+        this.serversTotal = serversTotal;
+        this.late = late;
+        this.offline = offline;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the first member failure when no member answered, null otherwise
+     */
+    @Override
+    public QueryFailure getFailure()
+    {
+        return failure;
+    }
+
+    @Override
+    public Integer getCurrentPlayers()
+    {
+        return currentPlayers;
+    }
+
+    @Override
+    public Integer getMaxPlayers()
+    {
+        return maxPlayers;
+    }
+
+    /**
+     * In-game time of the first member that answered online.
+     */
+    @Override
+    public String getServerTime()
+    {
+        return serverTime;
+    }
+
+    @Override
+    public Integer getQueueSize()
+    {
+        return queueSize;
+    }
+
+    @Override
+    public Boolean isQueueActive()
+    {
+        return queueActive;
+    }
+
+    @Override
+    public Boolean isOnline()
+    {
+        return serversOnline > 0;
+    }
+
+    @Override
+    public int getServersOnline()
+    {
+        return serversOnline;
+    }
+
+    @Override
+    public int getServersTotal()
+    {
+        return serversTotal;
+    }
+
+    /**
+     * Members that did not answer before the deadline, as {@code ip:port}.
+     */
+    public List<String> getLate()
+    {
+        return late;
+    }
+
+    public List<String> getOffline()
+    {
+        return offline;
+    }
+}
@@ -1,7 +1,6 @@
 package com.danielele.provider;
 
 import com.danielele.ServerOnlineFun;
-import com.danielele.config.ConfigService;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
@@ -9,9 +8,6 @@ import jakarta.enterprise.context.ApplicationScoped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -24,7 +20,6 @@ public class CfToolsOnlineProvider implements OnlineProvider
     private static final Logger logger = LoggerFactory.getLogger(CfToolsOnlineProvider.class);
     private static final long FAILURE_LOG_COOLDOWN_MS = 60_000L;
 
-    private final Map<String, String> serverIdCache = new ConcurrentHashMap<>();
     private final Map<String, CFToolsResponse.ServerData> lastKnownServerData = new ConcurrentHashMap<>();
     private final Map<String, Long> nextFailureLogAt = new ConcurrentHashMap<>();
     private final Map<String, Integer> suppressedFailures = new ConcurrentHashMap<>();
@@ -35,20 +30,21 @@ public class CfToolsOnlineProvider implements OnlineProvider
     }
 
     @Override
-    public ServerOnlineFun getServerOnline(ConfigService.ServerConfig serverConfig)
+    public ServerOnlineFun getServerOnline(ServerTarget target)
     {
-        String serverKey = serverConfig.ip + ":" + serverConfig.port;
-        String gameServerId = serverIdCache.computeIfAbsent(serverKey, (k) -> toSHA1("1" + serverConfig.ip + serverConfig.port));
+        String serverKey = target.getKey();
+        String gameServerId = target.getCfToolsServerId();
 
         try
         {
-            HttpResponse<Buffer> response = webClient.getAbs("https://data.cftools.cloud/v1/gameserver/" + gameServerId)
+            HttpResponse<Buffer> response = webClient.getAbs(target.getCfToolsUrl())
                     .send().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
 
             if (response.statusCode() != 200)
             {
                 return handleFailure(
                         serverKey,
+                        QueryFailure.HTTP_STATUS,
                         "HTTP " + response.statusCode() + " " + response.statusMessage(),
                         null
                 );
@@ -56,14 +52,14 @@ public class CfToolsOnlineProvider implements OnlineProvider
 
             if (response.bodyAsJsonObject() == null)
             {
-                return handleFailure(serverKey, "empty JSON body", null);
+                return handleFailure(serverKey, QueryFailure.PARSE, "empty JSON body", null);
             }
 
             CFToolsResponse cfToolsResponse = response.bodyAsJsonObject().mapTo(CFToolsResponse.class);
             CFToolsResponse.ServerData server = cfToolsResponse.getServer(gameServerId);
             if (server == null)
             {
-                return handleFailure(serverKey, "missing server data in payload", null);
+                return handleFailure(serverKey, QueryFailure.PARSE, "missing server data in payload", null);
             }
 
             lastKnownServerData.put(serverKey, server);
@@ -73,19 +69,19 @@ public class CfToolsOnlineProvider implements OnlineProvider
         catch (InterruptedException e)
         {
             Thread.currentThread().interrupt();
-            return handleFailure(serverKey, "request interrupted", e);
+            return handleFailure(serverKey, QueryFailure.NETWORK, "request interrupted", e);
         }
         catch (Exception e)
         {
-            return handleFailure(serverKey, "request failed", e);
+            return handleFailure(serverKey, QueryFailure.classify(e), "request failed", e);
         }
     }
 
-    private ServerOnlineFun handleFailure(String serverKey, String reason, Exception exception)
+    private ServerOnlineFun handleFailure(String serverKey, QueryFailure failure, String reason, Exception exception)
     {
         CFToolsResponse.ServerData cachedServerData = lastKnownServerData.get(serverKey);
         logFailureThrottled(serverKey, reason, exception, cachedServerData != null);
-        return new CfToolsServerOnline(cachedServerData);
+        return new CfToolsServerOnline(cachedServerData, failure);
     }
 
     private void clearFailureState(String serverKey)
@@ -143,30 +139,4 @@ public class CfToolsOnlineProvider implements OnlineProvider
 
         suppressedFailures.merge(serverKey, 1, Integer::sum);
     }
-
-    private String toSHA1(String input)
-    {
-        try
-        {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash)
-            {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1)
-                {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-
-            return hexString.toString();
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            throw new RuntimeException("SHA-1 algorithm not found", e);
-        }
-    }
 }
@@ -5,10 +5,26 @@ import com.danielele.ServerOnlineFun;
 public class CfToolsServerOnline implements ServerOnlineFun
 {
     private final CFToolsResponse.ServerData serverData;
+    private final QueryFailure failure;
 
     public CfToolsServerOnline(CFToolsResponse.ServerData serverData)
+    {
+        this(serverData, null);
+    }
+
+    /**
+     * @param serverData last known data of a failed query, may be null
+     */
+    public CfToolsServerOnline(CFToolsResponse.ServerData serverData, QueryFailure failure)
     {
         this.serverData = serverData;
+        this.failure = failure;
+    }
+
+    @Override
+    public QueryFailure getFailure()
+    {
+        return failure;
     }
 
     @Override
@@ -1,9 +1,8 @@
 package com.danielele.provider;
 
 import com.danielele.ServerOnlineFun;
-import com.danielele.config.ConfigService;
 
 public interface OnlineProvider
 {
-    ServerOnlineFun getServerOnline(ConfigService.ServerConfig serverConfig);
+    ServerOnlineFun getServerOnline(ServerTarget target);
 }
@@ -0,0 +1,60 @@
+package com.danielele.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.vertx.core.json.DecodeException;
+
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Why a server query returned no fresh data.
+ */
+public enum QueryFailure
+{
+    TIMEOUT("timeout"),
+    DNS("dns"),
+    HTTP_STATUS("http_status"),
+    PARSE("parse"),
+    NETWORK("network");
+
+    private final String label;
+
+    QueryFailure(String label)
+    {
+        this.label = label;
+    }
+
+    /**
+     * @return lower case name, used in logs and metrics
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public static QueryFailure classify(Throwable error)
+    {
+        for (Throwable t = error; t != null; t = t.getCause())
+        {
+            if (t instanceof SocketTimeoutException || t instanceof TimeoutException)
+            {
+                return TIMEOUT;
+            }
+            if (t instanceof UnknownHostException)
+            {
+                return DNS;
+            }
+            if (t instanceof JsonProcessingException
+                    || t instanceof DecodeException
+                    || t instanceof IllegalStateException
+                    || t instanceof IllegalArgumentException
+                    || t instanceof BufferUnderflowException)
+            {
+                return PARSE;
+            }
+        }
+        return NETWORK;
+    }
+}
@@ -0,0 +1,226 @@
+package com.danielele.provider;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigDiff;
+import com.danielele.config.ConfigService;
+import com.danielele.events.ConfigReloadedEvent;
+import com.danielele.metrics.ExecutorStats;
+import com.danielele.metrics.ProviderMetrics;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queries the server data of an instance: its own server, or all members of an aggregate
+ * instance in parallel, combined from whatever answered before the deadline.
+ */
+@ApplicationScoped
+public class ServerQuery
+{
+    private static final Logger logger = LoggerFactory.getLogger(ServerQuery.class);
+
+    // Member queries wait for network answers, not for CPU; more members than threads just queue up
+    private static final int FAN_OUT_THREADS = 32;
+
+    private final OnlineProviderFactory onlineProviderFactory;
+    private final ProviderMetrics providerMetrics;
+    private final ThreadPoolExecutor fanOutExecutor;
+    // By instance key, a reload creates new config objects
+    private final Map<String, String> lastMissing = new ConcurrentHashMap<>();
+    // By member target, a query that outlived its deadline is awaited again instead of started twice
+    private final Map<String, CompletableFuture<ServerOnlineFun>> inFlight = new ConcurrentHashMap<>();
+
+    @Inject
+    public ServerQuery(OnlineProviderFactory onlineProviderFactory, ProviderMetrics providerMetrics)
+    {
+        this.onlineProviderFactory = onlineProviderFactory;
+        this.providerMetrics = providerMetrics;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.fanOutExecutor = new ThreadPoolExecutor(
+                FAN_OUT_THREADS,
+                FAN_OUT_THREADS,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r ->
+                {
+                    Thread t = new Thread(r);
+                    t.setName("aggregate-query-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        this.fanOutExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public ServerOnlineFun query(ConfigService.BotInstance instance)
+    {
+        if (instance.aggregate != null)
+        {
+            return queryAggregate(ConfigService.instanceKey(instance), instance.aggregate);
+        }
+        return query(instance.server);
+    }
+
+    public ServerOnlineFun query(ConfigService.ServerConfig server)
+    {
+        ServerTarget target = server.target;
+        long startedAt = System.nanoTime();
+        try
+        {
+            ServerOnlineFun result = onlineProviderFactory.getStrategy(target.getProviderType()).getServerOnline(target);
+            providerMetrics.record(target.getProviderType(), result.getFailure(), System.nanoTime() - startedAt);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            providerMetrics.record(target.getProviderType(), QueryFailure.classify(e), System.nanoTime() - startedAt);
+            throw e;
+        }
+    }
+
+    public ExecutorStats getFanOutStats()
+    {
+        return new ExecutorStats("aggregate-query").add(fanOutExecutor);
+    }
+
+    private ServerOnlineFun queryAggregate(String key, ConfigService.AggregateConfig aggregate)
+    {
+        List<CompletableFuture<ServerOnlineFun>> futures = new ArrayList<>(aggregate.members.size());
+        for (ConfigService.ServerConfig member : aggregate.members)
+        {
+            futures.add(queryMember(member));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(aggregate.deadlineMillis);
+
+        int players = 0;
+        int max = 0;
+        int queue = 0;
+        boolean queueActive = false;
+        String time = null;
+        int online = 0;
+        List<String> late = new ArrayList<>();
+        List<String> offline = new ArrayList<>();
+        QueryFailure firstFailure = null;
+
+        for (int i = 0; i < futures.size(); i++)
+        {
+            ConfigService.ServerConfig member = aggregate.members.get(i);
+            String memberId = member.target.getKey();
+            ServerOnlineFun result;
+            try
+            {
+                result = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                // Left running, providers keep their last known data for the next round
+                late.add(memberId);
+                firstFailure = firstFailure != null ? firstFailure : QueryFailure.TIMEOUT;
+                continue;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                late.add(memberId);
+                continue;
+            }
+            catch (ExecutionException e)
+            {
+                logger.debug("Aggregate member {} query failed: {}", memberId, e.getCause().getMessage());
+                offline.add(memberId);
+                firstFailure = firstFailure != null ? firstFailure : QueryFailure.classify(e.getCause());
+                continue;
+            }
+
+            if (!Boolean.TRUE.equals(result.isOnline()))
+            {
+                offline.add(memberId);
+                firstFailure = firstFailure != null ? firstFailure : result.getFailure();
+                continue;
+            }
+
+            online++;
+            players += valueOf(result.getCurrentPlayers());
+            max += valueOf(result.getMaxPlayers());
+            queue += valueOf(result.getQueueSize());
+            queueActive |= Boolean.TRUE.equals(result.isQueueActive());
+            if (time == null)
+            {
+                time = result.getServerTime();
+            }
+        }
+
+        logMissingMembers(key, aggregate, late, offline);
+        return new AggregateServerOnline(players, max, queue, queueActive, time, online, futures.size(), late, offline,
+                online == 0 ? firstFailure : null);
+    }
+
+    private CompletableFuture<ServerOnlineFun> queryMember(ConfigService.ServerConfig member)
+    {
+        String memberKey = member.target.getKey();
+        CompletableFuture<ServerOnlineFun> future = inFlight.compute(memberKey, (k, running) ->
+                running != null && !running.isDone() ? running : CompletableFuture.supplyAsync(() -> query(member), fanOutExecutor));
+        future.whenComplete((result, e) -> inFlight.remove(memberKey, future));
+        return future;
+    }
+
+    // Logged when the set of missing members changes, not on every poll
+    private void logMissingMembers(String key, ConfigService.AggregateConfig aggregate, List<String> late, List<String> offline)
+    {
+        String missing = "late=" + late + " offline=" + offline;
+        String previous = lastMissing.put(key, missing);
+        if (missing.equals(previous))
+        {
+            return;
+        }
+
+        if (late.isEmpty() && offline.isEmpty())
+        {
+            if (previous != null)
+            {
+                logger.info("Aggregate {}: all {} members answered", key, aggregate.members.size());
+            }
+        }
+        else
+        {
+            logger.warn("Aggregate {}: {} of {} members missing, late: {}, offline: {}",
+                    key, late.size() + offline.size(), aggregate.members.size(), late, offline);
+        }
+    }
+
+    private static int valueOf(Integer value)
+    {
+        return value != null ? value : 0;
+    }
+
+    void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        // Changed or removed aggregates start over with their missing-member log
+        for (ConfigDiff.Change change : event.getDiff().getChanges())
+        {
+            lastMissing.remove(change.getKey());
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        fanOutExecutor.shutdownNow();
+    }
+}
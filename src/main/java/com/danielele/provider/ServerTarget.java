@@ -0,0 +1,126 @@
+package com.danielele.provider;
+
+import com.danielele.config.ConfigService;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A server as the providers query it, compiled once from {@link ConfigService.ServerConfig} when the
+ * config is validated. Polls only read these fields, no parsing or string building per query.
+ */
+public final class ServerTarget
+{
+    private static final String CFTOOLS_GAMESERVER_URL = "https://data.cftools.cloud/v1/gameserver/";
+
+    private final OnlineProviderType providerType;
+    private final String key;
+    private final String host;
+    private final int queryPort;
+    // null for host names, those are resolved per query so DNS changes are picked up
+    private final InetAddress queryAddress;
+    private final String cfToolsServerId;
+    private final String cfToolsUrl;
+
+    private ServerTarget(ConfigService.ServerConfig server)
+    {
+        this.providerType = OnlineProviderType.fromString(server.onlineProvider);
+        this.key = server.ip + ":" + server.port;
+        this.host = server.ip;
+        this.queryPort = server.steamQueryPort;
+        this.queryAddress = literalAddress(server.ip);
+        this.cfToolsServerId = sha1Hex("1" + server.ip + server.port);
+        this.cfToolsUrl = CFTOOLS_GAMESERVER_URL + cfToolsServerId;
+    }
+
+    public static ServerTarget compile(ConfigService.ServerConfig server)
+    {
+        return new ServerTarget(server);
+    }
+
+    public OnlineProviderType getProviderType()
+    {
+        return providerType;
+    }
+
+    /**
+     * @return ip:port, used in logs and as the key of per-server provider state
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getQueryPort()
+    {
+        return queryPort;
+    }
+
+    public InetAddress resolveQueryAddress() throws UnknownHostException
+    {
+        return queryAddress != null ? queryAddress : InetAddress.getByName(host);
+    }
+
+    public String getCfToolsServerId()
+    {
+        return cfToolsServerId;
+    }
+
+    public String getCfToolsUrl()
+    {
+        return cfToolsUrl;
+    }
+
+    private static InetAddress literalAddress(String ip)
+    {
+        boolean literal = ip.indexOf(':') >= 0 || ip.chars().allMatch(c -> c == '.' || (c >= '0' && c <= '9'));
+        if (!literal)
+        {
+            return null;
+        }
+
+        try
+        {
+            // Literal addresses are parsed, not looked up
+            return InetAddress.getByName(ip);
+        }
+        catch (UnknownHostException e)
+        {
+            return null;
+        }
+    }
+
+    private static String sha1Hex(String input)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hash)
+            {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1)
+                {
+                    hexString.append('0');
+                }
+                hexString.append(hex);
+            }
+
+            return hexString.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("SHA-1 algorithm not found", e);
+        }
+    }
+}
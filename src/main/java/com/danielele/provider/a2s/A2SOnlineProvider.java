@@ -1,10 +1,11 @@
 package com.danielele.provider.a2s;
 
 import com.danielele.ServerOnlineFun;
-import com.danielele.config.ConfigService;
 import com.danielele.provider.OnlineProvider;
 import com.danielele.provider.OnlineProviderAnnot;
 import com.danielele.provider.OnlineProviderType;
+import com.danielele.provider.QueryFailure;
+import com.danielele.provider.ServerTarget;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,29 +48,31 @@ public class A2SOnlineProvider implements OnlineProvider
     private static final int MAX_STRING_LENGTH = 4096;
 
     @Override
-    public ServerOnlineFun getServerOnline(ConfigService.ServerConfig serverConfig)
+    public ServerOnlineFun getServerOnline(ServerTarget target)
     {
         try
         {
-            A2SServerInfo info = queryServerInfo(serverConfig.ip, serverConfig.steamQueryPort);
+            A2SServerInfo info = queryServerInfo(target);
             return new A2SServerOnline(info);
         }
         catch (Exception e)
         {
             logger.error("Exception while getting server info from A2S: {}, {}. Probably server is offline.",
                     e.getClass().getSimpleName(), e.getMessage());
-            return new A2SServerOnline(null);
+            return new A2SServerOnline(QueryFailure.classify(e));
         }
     }
 
-    private A2SServerInfo queryServerInfo(String ip, int port)
+    private A2SServerInfo queryServerInfo(ServerTarget target)
     {
+        String ip = target.getHost();
+        int port = target.getQueryPort();
         byte[] lastResponse = null;
 
         try (DatagramSocket socket = new DatagramSocket())
         {
             socket.setSoTimeout(TIMEOUT_MS);
-            InetAddress address = InetAddress.getByName(ip);
+            InetAddress address = target.resolveQueryAddress();
 
             lastResponse = sendRequest(socket, address, port, null);
 
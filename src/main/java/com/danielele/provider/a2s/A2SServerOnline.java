@@ -1,14 +1,29 @@
 package com.danielele.provider.a2s;
 
 import com.danielele.ServerOnlineFun;
+import com.danielele.provider.QueryFailure;
 
 public class A2SServerOnline implements ServerOnlineFun
 {
     private final A2SServerInfo serverInfo;
+    private final QueryFailure failure;
 
     public A2SServerOnline(A2SServerInfo serverInfo)
     {
         this.serverInfo = serverInfo;
+        this.failure = null;
+    }
+
+    public A2SServerOnline(QueryFailure failure)
+    {
+        this.serverInfo = null;
+        this.failure = failure;
+    }
+
+    @Override
+    public QueryFailure getFailure()
+    {
+        return failure;
     }
 
     @Override
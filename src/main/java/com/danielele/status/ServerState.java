@@ -0,0 +1,149 @@
+package com.danielele.status;
+
+import com.danielele.ServerOnlineFun;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.Objects;
+
+/**
+ * Last known state of one instance as served by the status API. Equality ignores {@code changedAt},
+ * a poll that brings the same numbers is not a change.
+ */
+@RegisterForReflection
+public final class ServerState
+{
+    private final Boolean online;
+    private final Integer players;
+    private final Integer maxPlayers;
+    private final Integer queue;
+    private final Boolean queueActive;
+    private final String time;
+    private final int serversOnline;
+    private final int serversTotal;
+    private final String failure;
+    private final long changedAt;
+
+    private ServerState(ServerOnlineFun serverOnline, long changedAt)
+    {
+        this.online = serverOnline.isOnline();
+        this.players = serverOnline.getCurrentPlayers();
+        this.maxPlayers = serverOnline.getMaxPlayers();
+        this.queue = serverOnline.getQueueSize();
+        this.queueActive = serverOnline.isQueueActive();
+        this.time = serverOnline.getServerTime();
+        this.serversOnline = serverOnline.getServersOnline();
+        this.serversTotal = serverOnline.getServersTotal();
+        this.failure = serverOnline.getFailure() != null ? serverOnline.getFailure().getLabel() : null;
+        this.changedAt = changedAt;
+    }
+
+    static ServerState of(ServerOnlineFun serverOnline, long changedAt)
+    {
+        return new ServerState(serverOnline, changedAt);
+    }
+
+    public Boolean getOnline()
+    {
+        return online;
+    }
+
+    public Integer getPlayers()
+    {
+        return players;
+    }
+
+    public Integer getMaxPlayers()
+    {
+        return maxPlayers;
+    }
+
+    public Integer getQueue()
+    {
+        return queue;
+    }
+
+    public Boolean getQueueActive()
+    {
+        return queueActive;
+    }
+
+    public String getTime()
+    {
+        return time;
+    }
+
+    public int getServersOnline()
+    {
+        return serversOnline;
+    }
+
+    public int getServersTotal()
+    {
+        return serversTotal;
+    }
+
+    public String getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * @return epoch millis of the poll that brought this state
+     */
+    public long getChangedAt()
+    {
+        return changedAt;
+    }
+
+    /**
+     * @return true if a stream client should hear about this state: online, players, queue or the hour of the server time changed
+     */
+    boolean isStreamChange(ServerState previous)
+    {
+        return previous == null
+                || !Objects.equals(online, previous.online)
+                || !Objects.equals(players, previous.players)
+                || !Objects.equals(queue, previous.queue)
+                || !Objects.equals(queueActive, previous.queueActive)
+                || !Objects.equals(timeBucket(time), timeBucket(previous.time));
+    }
+
+    // Server time is HH:mm and moves on every poll, only the hour is worth a push
+    private static String timeBucket(String time)
+    {
+        if (time == null)
+        {
+            return null;
+        }
+        int colon = time.indexOf(':');
+        return colon > 0 ? time.substring(0, colon) : time;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof ServerState other))
+        {
+            return false;
+        }
+        return serversOnline == other.serversOnline
+                && serversTotal == other.serversTotal
+                && Objects.equals(online, other.online)
+                && Objects.equals(players, other.players)
+                && Objects.equals(maxPlayers, other.maxPlayers)
+                && Objects.equals(queue, other.queue)
+                && Objects.equals(queueActive, other.queueActive)
+                && Objects.equals(time, other.time)
+                && Objects.equals(failure, other.failure);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(online, players, maxPlayers, queue, queueActive, time, serversOnline, serversTotal, failure);
+    }
+}
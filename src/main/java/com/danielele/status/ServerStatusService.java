@@ -0,0 +1,144 @@
+package com.danielele.status;
+
+import com.danielele.ServerOnlineFun;
+import com.danielele.config.ConfigService;
+import com.danielele.events.ConfigReloadedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Latest server state of every instance for the status API. Updaters hand in each poll result,
+ * the serialized body is rebuilt on the next request after something actually changed.
+ */
+@ApplicationScoped
+public class ServerStatusService
+{
+    private static final Logger logger = LoggerFactory.getLogger(ServerStatusService.class);
+
+    @Inject
+    ConfigService configService;
+    @Inject
+    StatusStream statusStream;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ServerState> states = new ConcurrentHashMap<>();
+    // Moved on after every change of the states, a snapshot knows the version it was built from
+    private final AtomicLong version = new AtomicLong();
+    private volatile StatusSnapshot snapshot;
+
+    public void update(ConfigService.BotInstance instance, ServerOnlineFun serverOnline)
+    {
+        String key = ConfigService.instanceKey(instance);
+        ServerState state = ServerState.of(serverOnline, System.currentTimeMillis());
+        ServerState previous = states.get(key);
+        if (state.equals(previous))
+        {
+            return;
+        }
+
+        states.put(key, state);
+        version.incrementAndGet();
+        statusStream.publish(key, previous, state);
+    }
+
+    void onConfigReloaded(@Observes ConfigReloadedEvent event)
+    {
+        Set<String> keys = new HashSet<>();
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            keys.add(ConfigService.instanceKey(instance));
+        }
+        for (String key : states.keySet())
+        {
+            if (!keys.contains(key) && states.remove(key) != null)
+            {
+                statusStream.publishRemoved(key);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    public StatusSnapshot getSnapshot()
+    {
+        StatusSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version.get())
+        {
+            return current;
+        }
+
+        synchronized (this)
+        {
+            // Read before the states, so the snapshot holds at least every change up to it
+            long building = version.get();
+            if (snapshot == null || snapshot.getVersion() != building)
+            {
+                snapshot = build(building);
+            }
+            return snapshot;
+        }
+    }
+
+    private StatusSnapshot build(long buildVersion)
+    {
+        long startedAt = System.nanoTime();
+
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode servers = root.putArray("servers");
+        for (ConfigService.BotInstance instance : configService.getInstances())
+        {
+            ObjectNode server = servers.addObject();
+            server.put("key", ConfigService.instanceKey(instance));
+            server.put("address", instance.server != null && instance.server.target != null ? instance.server.target.getKey() : null);
+            server.put("paused", instance.paused);
+
+            ServerState state = states.get(ConfigService.instanceKey(instance));
+            // Not polled yet, paused or without data since a reload
+            server.set("state", state != null ? mapper.valueToTree(state) : null);
+        }
+
+        try
+        {
+            byte[] json = mapper.writeValueAsBytes(root);
+            byte[] gzip = gzip(json);
+
+            CRC32C crc = new CRC32C();
+            crc.update(json);
+            String etag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(json.length);
+
+            logger.debug("Status snapshot rebuilt: {} instances, {} bytes, {} gzipped, {} us",
+                    servers.size(), json.length, gzip.length, (System.nanoTime() - startedAt) / 1000);
+            return new StatusSnapshot(json, gzip, etag, buildVersion);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
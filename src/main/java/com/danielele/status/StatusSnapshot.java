@@ -0,0 +1,54 @@
+package com.danielele.status;
+
+/**
+ * Serialized status of all instances, built once per change and shared by every request.
+ */
+public final class StatusSnapshot
+{
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+    private final String gzipEtag;
+    private final long version;
+
+    StatusSnapshot(byte[] json, byte[] gzip, String etag, long version)
+    {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = '"' + etag + '"';
+        // The compressed body is a different representation and gets its own tag
+        this.gzipEtag = '"' + etag + "-gz\"";
+        this.version = version;
+    }
+
+    long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Shared, must not be modified.
+     */
+    public byte[] getJson()
+    {
+        return json;
+    }
+
+    /**
+     * Shared, must not be modified.
+     */
+    public byte[] getGzip()
+    {
+        return gzip;
+    }
+
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public String getGzipEtag()
+    {
+        return gzipEtag;
+    }
+}
@@ -0,0 +1,261 @@
+package com.danielele.status;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes server state changes to stream subscribers. Every change is serialized into one event that all
+ * clients share. The last {@value #HISTORY} events are kept so a reconnecting client can resume from its
+ * Last-Event-ID, anyone further behind, or from a previous process, starts again with a snapshot.
+ */
+@ApplicationScoped
+public class StatusStream
+{
+    private static final Logger logger = LoggerFactory.getLogger(StatusStream.class);
+
+    private static final int HISTORY = 1024;
+    private static final int CLIENT_BUFFER = 256;
+    private static final long HEARTBEAT_SECONDS = 20;
+
+    @Inject
+    ServerStatusService serverStatusService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Ids are <epoch>-<sequence>, an id from an earlier run never resumes into this one
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final List<StreamClient> clients = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private final Entry[] history = new Entry[HISTORY];
+    private long sequence;
+    private Sse sse;
+    private StatusSnapshot snapshotSource;
+    private long snapshotSequence = -1;
+    private OutboundSseEvent snapshotEvent;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r);
+            t.setName("status-stream");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void register(SseEventSink sink, Sse sse, String lastEventId)
+    {
+        StreamClient client = new StreamClient(sink, CLIENT_BUFFER, this::snapshotEvent, clients::remove);
+        synchronized (this)
+        {
+            this.sse = sse;
+
+            long from = parseSequence(lastEventId);
+            if (from >= 0 && from <= sequence && sequence - from < HISTORY)
+            {
+                for (long id = from + 1; id <= sequence; id++)
+                {
+                    Entry entry = history[(int) (id % HISTORY)];
+                    client.offer(entry.key, entry.event);
+                }
+            }
+            else
+            {
+                client.requestSnapshot();
+            }
+            clients.add(client);
+        }
+
+        logger.debug("Status stream client connected, {} clients, resume from {}", clients.size(), lastEventId);
+        client.drain();
+    }
+
+    public int getClientCount()
+    {
+        return clients.size();
+    }
+
+    void publish(String key, ServerState previous, ServerState state)
+    {
+        if (state.isStreamChange(previous))
+        {
+            ObjectNode delta = mapper.createObjectNode();
+            delta.put("key", key);
+            delta.put("online", state.getOnline());
+            delta.put("players", state.getPlayers());
+            delta.put("maxPlayers", state.getMaxPlayers());
+            delta.put("queue", state.getQueue());
+            delta.put("queueActive", state.getQueueActive());
+            delta.put("time", state.getTime());
+            broadcast(key, "delta", delta);
+        }
+    }
+
+    void publishRemoved(String key)
+    {
+        ObjectNode delta = mapper.createObjectNode();
+        delta.put("key", key);
+        broadcast(key, "removed", delta);
+    }
+
+    private void broadcast(String key, String name, ObjectNode data)
+    {
+        synchronized (this)
+        {
+            if (sse == null)
+            {
+                // Nobody ever subscribed, nothing to keep
+                return;
+            }
+
+            String json;
+            try
+            {
+                json = mapper.writeValueAsString(data);
+            }
+            catch (JsonProcessingException e)
+            {
+                logger.warn("Could not serialize stream event for {}", key, e);
+                return;
+            }
+
+            long id = ++sequence;
+            OutboundSseEvent event = sse.newEventBuilder()
+                    .id(epoch + "-" + id)
+                    .name(name)
+                    .data(json)
+                    .build();
+            history[(int) (id % HISTORY)] = new Entry(key, event);
+
+            for (StreamClient client : clients)
+            {
+                client.offer(key, event);
+            }
+        }
+
+        for (StreamClient client : clients)
+        {
+            client.drain();
+        }
+    }
+
+    // Built when a client needs it, shared until the state or the sequence moves on
+    private OutboundSseEvent snapshotEvent()
+    {
+        long id;
+        synchronized (this)
+        {
+            id = sequence;
+        }
+        // Taken after the sequence, every change up to it is already in the states. It may hold later ones too,
+        // their deltas still follow and only repeat them.
+        StatusSnapshot snapshot = serverStatusService.getSnapshot();
+        synchronized (this)
+        {
+            if (snapshot != snapshotSource || id != snapshotSequence)
+            {
+                snapshotEvent = sse.newEventBuilder()
+                        .id(epoch + "-" + id)
+                        .name("snapshot")
+                        .data(new String(snapshot.getJson(), StandardCharsets.UTF_8))
+                        .build();
+                snapshotSource = snapshot;
+                snapshotSequence = id;
+            }
+            return snapshotEvent;
+        }
+    }
+
+    // Keeps proxies from closing idle streams and finds clients that went away
+    private void heartbeat()
+    {
+        try
+        {
+            OutboundSseEvent comment;
+            synchronized (this)
+            {
+                if (sse == null)
+                {
+                    return;
+                }
+                comment = sse.newEventBuilder().comment("heartbeat").build();
+            }
+
+            for (StreamClient client : clients)
+            {
+                if (client.isClosed())
+                {
+                    clients.remove(client);
+                    continue;
+                }
+                client.offer("", comment);
+                client.drain();
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Error while sending stream heartbeats", e);
+        }
+    }
+
+    private long parseSequence(String lastEventId)
+    {
+        if (lastEventId == null || !lastEventId.startsWith(epoch + "-"))
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Long.parseLong(lastEventId.substring(epoch.length() + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    void onShutdown(@Observes ShutdownEvent event)
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+        clients.forEach(StreamClient::close);
+    }
+
+    private static final class Entry
+    {
+        private final String key;
+        private final OutboundSseEvent event;
+
+        private Entry(String key, OutboundSseEvent event)
+        {
+            this.key = key;
+            this.event = event;
+        }
+    }
+}
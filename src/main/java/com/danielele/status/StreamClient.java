@@ -0,0 +1,142 @@
+package com.danielele.status;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One stream subscriber. Pending events are kept per instance, a newer delta replaces the older one.
+ * A client that falls further behind than its buffer loses the backlog and gets a fresh snapshot instead.
+ * Only one send is in flight at a time, the next one starts when the previous was written.
+ */
+final class StreamClient
+{
+    private final SseEventSink sink;
+    private final int capacity;
+    private final Supplier<OutboundSseEvent> snapshot;
+    private final Consumer<StreamClient> onClose;
+
+    // Guarded by this
+    private final LinkedHashMap<String, OutboundSseEvent> pending = new LinkedHashMap<>();
+    private boolean resync;
+    private boolean sending;
+
+    StreamClient(SseEventSink sink, int capacity, Supplier<OutboundSseEvent> snapshot, Consumer<StreamClient> onClose)
+    {
+        this.sink = sink;
+        this.capacity = capacity;
+        this.snapshot = snapshot;
+        this.onClose = onClose;
+    }
+
+    synchronized void offer(String key, OutboundSseEvent event)
+    {
+        if (resync)
+        {
+            // The snapshot is built when it is sent and already holds this change
+            return;
+        }
+
+        // Re-inserted, so events leave in the order they were offered
+        pending.remove(key);
+        pending.put(key, event);
+        if (pending.size() > capacity)
+        {
+            requestSnapshot();
+        }
+    }
+
+    synchronized void requestSnapshot()
+    {
+        pending.clear();
+        resync = true;
+    }
+
+    boolean isClosed()
+    {
+        return sink.isClosed();
+    }
+
+    void drain()
+    {
+        OutboundSseEvent next;
+        synchronized (this)
+        {
+            if (sending || sink.isClosed())
+            {
+                return;
+            }
+            if (resync)
+            {
+                resync = false;
+                next = null;
+            }
+            else
+            {
+                next = poll();
+                if (next == null)
+                {
+                    return;
+                }
+            }
+            sending = true;
+        }
+
+        // Built outside the lock, the stream offers new events while holding its own lock
+        try
+        {
+            if (next == null)
+            {
+                next = snapshot.get();
+            }
+
+            sink.send(next).whenComplete((ignored, error) ->
+            {
+                synchronized (this)
+                {
+                    sending = false;
+                }
+
+                if (error != null)
+                {
+                    close();
+                    return;
+                }
+                drain();
+            });
+        }
+        catch (RuntimeException e)
+        {
+            close();
+        }
+    }
+
+    void close()
+    {
+        try
+        {
+            sink.close();
+        }
+        catch (RuntimeException e)
+        {
+            // Already gone
+        }
+        onClose.accept(this);
+    }
+
+    private OutboundSseEvent poll()
+    {
+        Iterator<OutboundSseEvent> it = pending.values().iterator();
+        if (!it.hasNext())
+        {
+            return null;
+        }
+        OutboundSseEvent event = it.next();
+        it.remove();
+        return event;
+    }
+}
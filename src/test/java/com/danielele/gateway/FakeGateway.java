@@ -0,0 +1,244 @@
+package com.danielele.gateway;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Local stand-in for the Discord gateway: answers HELLO, IDENTIFY, RESUME and heartbeats the way Discord does,
+ * with zlib-stream compressed frames, and lets a test drop or close sessions.
+ */
+final class FakeGateway implements AutoCloseable
+{
+    static final int OP_DISPATCH = 0;
+    static final int OP_HEARTBEAT = 1;
+    static final int OP_IDENTIFY = 2;
+    static final int OP_RESUME = 6;
+    static final int OP_INVALID_SESSION = 9;
+    static final int OP_HELLO = 10;
+    static final int OP_HEARTBEAT_ACK = 11;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final HttpServer server;
+    private final BlockingQueue<Session> sessions = new LinkedBlockingQueue<>();
+    private int sessionCount;
+
+    volatile long heartbeatInterval = 45_000;
+    volatile boolean acknowledgeHeartbeats = true;
+    volatile boolean answerIdentify = true;
+    volatile int framesPerPayload = 1;
+
+    private FakeGateway(Vertx vertx) throws Exception
+    {
+        server = vertx.createHttpServer()
+                .webSocketHandler(this::onConnect)
+                .listen(0)
+                .toCompletionStage().toCompletableFuture().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    static FakeGateway start(Vertx vertx) throws Exception
+    {
+        return new FakeGateway(vertx);
+    }
+
+    String url()
+    {
+        return "ws://localhost:" + server.actualPort();
+    }
+
+    /**
+     * @return the next session a client opened, null if none was opened within the timeout
+     */
+    Session nextSession(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return sessions.poll(timeout, unit);
+    }
+
+    Session nextSession() throws InterruptedException
+    {
+        Session session = nextSession(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (session == null)
+        {
+            throw new AssertionError("No gateway session opened within " + TIMEOUT_SECONDS + "s");
+        }
+        return session;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        server.close().toCompletionStage().toCompletableFuture().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void onConnect(ServerWebSocket socket)
+    {
+        Session session = new Session(socket, "session-" + ++sessionCount);
+        socket.textMessageHandler(session::onMessage);
+        session.send(new JsonObject()
+                .put("op", OP_HELLO)
+                .put("d", new JsonObject().put("heartbeat_interval", heartbeatInterval)));
+        sessions.add(session);
+    }
+
+    /**
+     * zlib-stream framing as Discord does it: one deflate context per connection, every payload ends in a sync flush.
+     */
+    static byte[] deflate(Deflater deflater, String payload)
+    {
+        deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        do
+        {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, length);
+        }
+        while (length == buffer.length);
+        return out.toByteArray();
+    }
+
+    final class Session
+    {
+        private final ServerWebSocket socket;
+        private final String sessionId;
+        private final Deflater deflater = new Deflater();
+        private final BlockingQueue<JsonObject> received = new LinkedBlockingQueue<>();
+        private long sequence;
+
+        private Session(ServerWebSocket socket, String sessionId)
+        {
+            this.socket = socket;
+            this.sessionId = sessionId;
+        }
+
+        String getSessionId()
+        {
+            return sessionId;
+        }
+
+        /**
+         * @return the next message with this opcode, earlier messages with other opcodes are skipped
+         */
+        JsonObject awaitOp(int op) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (true)
+            {
+                JsonObject message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (message == null)
+                {
+                    throw new AssertionError("Opcode " + op + " not received within " + TIMEOUT_SECONDS + "s");
+                }
+                if (message.getInteger("op") == op)
+                {
+                    return message;
+                }
+            }
+        }
+
+        /**
+         * @return the next message that is not a heartbeat
+         */
+        JsonObject awaitCommand() throws InterruptedException
+        {
+            while (true)
+            {
+                JsonObject message = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (message == null)
+                {
+                    throw new AssertionError("Nothing received within " + TIMEOUT_SECONDS + "s");
+                }
+                if (message.getInteger("op") != OP_HEARTBEAT)
+                {
+                    return message;
+                }
+            }
+        }
+
+        long dispatch(String type, JsonObject data)
+        {
+            long seq;
+            synchronized (this)
+            {
+                seq = ++sequence;
+            }
+            send(new JsonObject().put("op", OP_DISPATCH).put("t", type).put("s", seq).put("d", data));
+            return seq;
+        }
+
+        void send(JsonObject message)
+        {
+            byte[] frame;
+            synchronized (deflater)
+            {
+                frame = deflate(deflater, message.encode());
+            }
+
+            int parts = Math.max(1, Math.min(framesPerPayload, frame.length));
+            int partLength = (frame.length + parts - 1) / parts;
+            for (int offset = 0; offset < frame.length; offset += partLength)
+            {
+                socket.writeBinaryMessage(Buffer.buffer(Arrays.copyOfRange(frame, offset, Math.min(frame.length, offset + partLength))));
+            }
+        }
+
+        void sendText(String text)
+        {
+            socket.writeTextMessage(text);
+        }
+
+        void close(int code, String reason)
+        {
+            socket.close((short) code, reason);
+        }
+
+        private void onMessage(String text)
+        {
+            JsonObject message = new JsonObject(text);
+            received.add(message);
+
+            switch (message.getInteger("op"))
+            {
+                case OP_HEARTBEAT ->
+                {
+                    if (acknowledgeHeartbeats)
+                    {
+                        send(new JsonObject().put("op", OP_HEARTBEAT_ACK));
+                    }
+                }
+                case OP_IDENTIFY ->
+                {
+                    if (answerIdentify)
+                    {
+                        dispatch("READY", new JsonObject()
+                                .put("session_id", sessionId)
+                                .put("resume_gateway_url", url()));
+                    }
+                }
+                case OP_RESUME ->
+                {
+                    synchronized (this)
+                    {
+                        sequence = message.getJsonObject("d").getLong("seq");
+                    }
+                    dispatch("RESUMED", new JsonObject());
+                }
+                default ->
+                {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.danielele.gateway;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import net.dv8tion.jda.api.entities.Activity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LightGatewayConnectionTest
+{
+    private static final String TOKEN = "test-token";
+
+    private Vertx vertx;
+    private FakeGateway gateway;
+    private LightGatewayConnection connection;
+    private IdentifyLimiter identifyLimiter;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        vertx = Vertx.vertx();
+        gateway = FakeGateway.start(vertx);
+        identifyLimiter = new IdentifyLimiter(1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        if (connection != null)
+        {
+            connection.shutdown(5, TimeUnit.SECONDS);
+        }
+        gateway.close();
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void identifiesThenResumesAfterDrop() throws Exception
+    {
+        connect();
+        FakeGateway.Session first = gateway.nextSession();
+
+        JsonObject identify = first.awaitOp(FakeGateway.OP_IDENTIFY).getJsonObject("d");
+        assertEquals(TOKEN, identify.getString("token"));
+        assertEquals("Starting...", identify.getJsonObject("presence").getJsonArray("activities").getJsonObject(0).getString("name"));
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+
+        CountDownLatch reconnected = new CountDownLatch(1);
+        connection.setReconnectListener(reconnected::countDown);
+        long seq = first.dispatch("GUILD_CREATE", new JsonObject());
+        first.close(4000, "unknown error");
+
+        FakeGateway.Session second = gateway.nextSession();
+        JsonObject resume = second.awaitCommand();
+        assertEquals(FakeGateway.OP_RESUME, resume.getInteger("op"));
+        assertEquals(TOKEN, resume.getJsonObject("d").getString("token"));
+        assertEquals(first.getSessionId(), resume.getJsonObject("d").getString("session_id"));
+        assertEquals(seq, resume.getJsonObject("d").getLong("seq"));
+
+        assertTrue(reconnected.await(10, TimeUnit.SECONDS));
+        assertTrue(connection.isConnected());
+    }
+
+    @Test
+    void reconnectsWhenHeartbeatIsNotAcknowledged() throws Exception
+    {
+        gateway.heartbeatInterval = 200;
+        gateway.acknowledgeHeartbeats = false;
+
+        connect();
+        FakeGateway.Session first = gateway.nextSession();
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+        first.awaitOp(FakeGateway.OP_HEARTBEAT);
+
+        // The zombie connection is dropped at the next beat and the session resumed on a new socket
+        FakeGateway.Session second = gateway.nextSession();
+        JsonObject resume = second.awaitCommand();
+        assertEquals(FakeGateway.OP_RESUME, resume.getInteger("op"));
+        assertEquals(first.getSessionId(), resume.getJsonObject("d").getString("session_id"));
+    }
+
+    @Test
+    void identifiesAgainAfterNonResumableInvalidSession() throws Exception
+    {
+        connect();
+        FakeGateway.Session first = gateway.nextSession();
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+
+        CountDownLatch reconnected = new CountDownLatch(1);
+        connection.setReconnectListener(reconnected::countDown);
+        first.send(new JsonObject().put("op", FakeGateway.OP_INVALID_SESSION).put("d", false));
+
+        FakeGateway.Session second = gateway.nextSession();
+        JsonObject command = second.awaitCommand();
+        assertEquals(FakeGateway.OP_IDENTIFY, command.getInteger("op"));
+        assertEquals(TOKEN, command.getJsonObject("d").getString("token"));
+
+        assertTrue(reconnected.await(10, TimeUnit.SECONDS));
+        assertTrue(connection.isConnected());
+    }
+
+    @Test
+    void identifyAfterLostSessionWaitsForLimiterSlot() throws Exception
+    {
+        connect();
+        FakeGateway.Session first = gateway.nextSession();
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+
+        // Another bot on the same token just identified, the next slot is 5 seconds away
+        identifyLimiter.acquire(TOKEN);
+        long slotTakenAt = System.nanoTime();
+        first.send(new JsonObject().put("op", FakeGateway.OP_INVALID_SESSION).put("d", false));
+
+        FakeGateway.Session second = gateway.nextSession();
+        assertEquals(FakeGateway.OP_IDENTIFY, second.awaitCommand().getInteger("op"));
+        assertTrue(System.nanoTime() - slotTakenAt >= TimeUnit.MILLISECONDS.toNanos(4_900));
+    }
+
+    @Test
+    void fatalCloseCodeDoesNotReconnect() throws Exception
+    {
+        gateway.answerIdentify = false;
+
+        connect();
+        FakeGateway.Session first = gateway.nextSession();
+        first.awaitOp(FakeGateway.OP_IDENTIFY);
+        first.close(4004, "Authentication failed.");
+
+        assertThrows(GatewayRejectedException.class, () -> connection.awaitReady(10, TimeUnit.SECONDS));
+        assertEquals("FAILED", connection.getStatus());
+        assertFalse(connection.isConnected());
+
+        // Longer than the first reconnect backoff
+        assertNull(gateway.nextSession(3, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void decodesPayloadsSplitAcrossMessages() throws Exception
+    {
+        gateway.framesPerPayload = 3;
+
+        connect();
+        FakeGateway.Session session = gateway.nextSession();
+
+        // HELLO and READY only arrive in pieces, identifying and becoming ready needs both decoded
+        session.awaitOp(FakeGateway.OP_IDENTIFY);
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void ignoresInvalidPayloadsWithoutReconnecting() throws Exception
+    {
+        connect();
+        FakeGateway.Session session = gateway.nextSession();
+        assertTrue(connection.awaitReady(10, TimeUnit.SECONDS));
+
+        session.sendText("{not json");
+        session.send(new JsonObject().put("op", FakeGateway.OP_DISPATCH).put("t", "READY").put("d", "broken"));
+        long seq = session.dispatch("GUILD_CREATE", new JsonObject());
+
+        // Still the same session, it keeps reading payloads after the broken ones
+        assertNull(gateway.nextSession(2, TimeUnit.SECONDS));
+        assertTrue(connection.isConnected());
+        session.close(4000, "unknown error");
+        JsonObject resume = gateway.nextSession().awaitCommand();
+        assertEquals(FakeGateway.OP_RESUME, resume.getInteger("op"));
+        assertEquals(seq, resume.getJsonObject("d").getLong("seq"));
+    }
+
+    private void connect()
+    {
+        connection = new LightGatewayConnection(
+                vertx,
+                vertx.createWebSocketClient(),
+                gateway.url(),
+                TOKEN,
+                identifyLimiter,
+                Activity.ActivityType.PLAYING,
+                "Starting..."
+        );
+        connection.connect();
+    }
+}
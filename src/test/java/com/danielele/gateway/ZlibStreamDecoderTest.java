@@ -0,0 +1,75 @@
+package com.danielele.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ZlibStreamDecoderTest
+{
+    @Test
+    void decodesPayloadsSharingOneContext() throws Exception
+    {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+
+        // The second payload refers back to the first one's window
+        String hello = "{\"op\":10,\"d\":{\"heartbeat_interval\":41250}}";
+        String ack = "{\"op\":11,\"d\":{\"heartbeat_interval\":41250}}";
+        assertEquals(hello, decoder.decode(FakeGateway.deflate(deflater, hello)));
+        assertEquals(ack, decoder.decode(FakeGateway.deflate(deflater, ack)));
+    }
+
+    @Test
+    void waitsForSyncFlushWhenPayloadIsSplit() throws Exception
+    {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+
+        String payload = "{\"op\":0,\"t\":\"READY\",\"s\":1,\"d\":{\"session_id\":\"abc\"}}";
+        byte[] frame = FakeGateway.deflate(deflater, payload);
+        for (int i = 0; i < frame.length - 1; i++)
+        {
+            assertNull(decoder.decode(new byte[]{frame[i]}));
+        }
+        assertEquals(payload, decoder.decode(new byte[]{frame[frame.length - 1]}));
+
+        String next = "{\"op\":11}";
+        assertEquals(next, decoder.decode(FakeGateway.deflate(deflater, next)));
+    }
+
+    @Test
+    void growsBuffersForLargePayloads() throws Exception
+    {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+
+        char[] text = new char[200_000];
+        Random random = new Random(1);
+        for (int i = 0; i < text.length; i++)
+        {
+            text[i] = (char) ('a' + random.nextInt(26));
+        }
+        String payload = "{\"d\":\"" + new String(text) + "\"}";
+
+        byte[] frame = FakeGateway.deflate(deflater, payload);
+        int half = frame.length / 2;
+        assertNull(decoder.decode(Arrays.copyOf(frame, half)));
+        assertEquals(payload, decoder.decode(Arrays.copyOfRange(frame, half, frame.length)));
+    }
+
+    @Test
+    void startsOverAfterReset() throws Exception
+    {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        decoder.decode(FakeGateway.deflate(new Deflater(), "{\"op\":10}"));
+        decoder.reset();
+
+        // A new connection brings a new zlib context
+        assertEquals("{\"op\":11}", decoder.decode(FakeGateway.deflate(new Deflater(), "{\"op\":11}")));
+    }
+}
@@ -0,0 +1,157 @@
+package com.danielele.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SampleChunkTest
+{
+    private static final long START = 1_700_000_000L;
+
+    @Test
+    void roundTripsSteadyPolls()
+    {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            samples.add(new Sample(START + i * 30L, 42, 0, true));
+        }
+        assertRoundTrip(samples);
+    }
+
+    @Test
+    void roundTripsJitteredPolls()
+    {
+        Random random = new Random(1);
+        List<Sample> samples = new ArrayList<>();
+        long time = START;
+        int players = 40;
+        for (int i = 0; i < 2_000; i++)
+        {
+            // Mostly a second or two of jitter, now and then a missed poll or a long outage
+            int roll = random.nextInt(100);
+            long interval = roll < 90 ? 30 + random.nextInt(5) - 2 : roll < 98 ? 60 + random.nextInt(30) : 3_600 + random.nextInt(100_000);
+            time += interval;
+            players = Math.max(0, players + random.nextInt(7) - 3);
+            samples.add(new Sample(time, players, random.nextInt(10) == 0 ? random.nextInt(20) : 0, random.nextInt(50) != 0));
+        }
+        assertRoundTrip(samples);
+    }
+
+    @Test
+    void roundTripsJumpsThatNeedTheWidestCode()
+    {
+        List<Sample> samples = List.of(
+                new Sample(START, 0, 0, true),
+                new Sample(START + 30, 255, 0, true),
+                new Sample(START + 60, 100_000, 5_000, true),
+                new Sample(START + 90, 0, 0, false),
+                new Sample(START + 120, Integer.MAX_VALUE, Integer.MIN_VALUE, true),
+                new Sample(START + 150, Integer.MIN_VALUE, Integer.MAX_VALUE, true),
+                new Sample(START + 180, -1, 1, true),
+                // Back at a steady poll after a jump of the interval
+                new Sample(START + 1_000_000, 7, 0, true),
+                new Sample(START + 1_000_030, 7, 0, true)
+        );
+        assertRoundTrip(samples);
+    }
+
+    @Test
+    void roundTripsSamplesAcrossWordBoundaries()
+    {
+        // The first sample takes 8 bits (players 1 costs 6, queue and online one each), every unchanged steady
+        // sample after it 4, so the 15th sample ends exactly at bit 64 and the 16th starts the second word
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            samples.add(new Sample(START + i * 30L, 1, 0, true));
+        }
+        // A 64-bit value starting on the boundary, then one starting in the middle of a word
+        samples.add(new Sample(START + 16 * 30L, Integer.MAX_VALUE, 0, true));
+        samples.add(new Sample(START + 17 * 30L, 3, Integer.MIN_VALUE, false));
+        assertRoundTrip(samples);
+
+        // Every alignment of a wide value. The first sample takes 3 bits, an unchanged steady one 4 and one with
+        // players up by one 9, so 3 + 4 * steady + 9 * bumped reaches every bit offset of the first word
+        for (int bumped = 0; bumped < 4; bumped++)
+        {
+            for (int steady = 0; steady < 16; steady++)
+            {
+                List<Sample> shifted = new ArrayList<>();
+                long time = START;
+                int players = 0;
+                shifted.add(new Sample(time, players, 0, true));
+                for (int i = 0; i < bumped; i++)
+                {
+                    time += 30;
+                    shifted.add(new Sample(time, ++players, 0, true));
+                }
+                for (int i = 0; i < steady; i++)
+                {
+                    time += 30;
+                    shifted.add(new Sample(time, players, 0, true));
+                }
+                shifted.add(new Sample(time + 30, 1_000_000, -1_000_000, true));
+                shifted.add(new Sample(time + 60, 0, 0, false));
+                assertRoundTrip(shifted);
+            }
+        }
+    }
+
+    @Test
+    void visitsOnlySamplesBetweenFromAndTo()
+    {
+        SampleChunk chunk = new SampleChunk(START);
+        for (int i = 0; i < 100; i++)
+        {
+            chunk.append(START + i * 30L, i, 0, true);
+        }
+
+        List<Sample> visited = read(chunk, START + 300, START + 600);
+        assertEquals(11, visited.size());
+        assertEquals(new Sample(START + 300, 10, 0, true), visited.get(0));
+        assertEquals(new Sample(START + 600, 20, 0, true), visited.get(10));
+
+        // Bounds between two samples
+        visited = read(chunk, START + 301, START + 599);
+        assertEquals(9, visited.size());
+        assertEquals(START + 330, visited.get(0).time());
+        assertEquals(START + 570, visited.get(8).time());
+
+        assertEquals(List.of(), read(chunk, START + 10_000, START + 20_000));
+        assertEquals(List.of(), read(chunk, START - 100, START - 1));
+        assertEquals(100, read(chunk, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    private static void assertRoundTrip(List<Sample> samples)
+    {
+        SampleChunk chunk = new SampleChunk(samples.get(0).time());
+        for (Sample sample : samples)
+        {
+            chunk.append(sample.time(), sample.players(), sample.queue(), sample.online());
+        }
+
+        assertEquals(samples.size(), chunk.getCount());
+        assertEquals(samples.get(samples.size() - 1).time(), chunk.getLastTime());
+        assertEquals(samples, read(chunk, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // Sealing trims the words, the bits must stay readable
+        chunk.seal();
+        assertEquals(samples, read(chunk, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private static List<Sample> read(SampleChunk chunk, long from, long to)
+    {
+        List<Sample> samples = new ArrayList<>();
+        chunk.forEach(from, to, (time, players, queue, online) -> samples.add(new Sample(time, players, queue, online)));
+        return samples;
+    }
+
+    private record Sample(long time, int players, int queue, boolean online)
+    {
+    }
+}
@@ -0,0 +1,155 @@
+package com.danielele.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentStoreTest
+{
+    private static final long START = 1_700_000_000L;
+    private static final long DAY = 86_400;
+    private static final long KEY = SegmentStore.keyHash("127.0.0.1:2302");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversWhatWasAppended() throws IOException
+    {
+        List<Sample> written = append(newStore(), 0, 100);
+
+        SegmentStore store = new SegmentStore(directory, DAY);
+        assertEquals(written, recover(store));
+        assertEquals(1, store.getSegmentCount());
+    }
+
+    @Test
+    void cutsAtTornRecordAndAppendsThere() throws IOException
+    {
+        List<Sample> written = append(newStore(), 0, 100);
+        // Record 50 is in slot 51, slot 0 is the header
+        corrupt(lastSegment(), 51);
+
+        SegmentStore store = new SegmentStore(directory, DAY);
+        assertEquals(written.subList(0, 50), recover(store));
+
+        // The new record takes the slot of the torn one, nothing from behind the cut comes back
+        List<Sample> expected = new ArrayList<>(written.subList(0, 50));
+        expected.addAll(append(store, 1_000, 1));
+        assertEquals(expected, recover(new SegmentStore(directory, DAY)));
+    }
+
+    @Test
+    void clearsRecordsBehindAGap() throws IOException
+    {
+        List<Sample> written = append(newStore(), 0, 100);
+        // Pages reached the disk out of order, slot 51 never made it but the ones after it did
+        zero(lastSegment(), 51);
+
+        SegmentStore store = new SegmentStore(directory, DAY);
+        assertEquals(written.subList(0, 50), recover(store));
+
+        List<Sample> expected = new ArrayList<>(written.subList(0, 50));
+        expected.addAll(append(store, 1_000, 1));
+        assertEquals(expected, recover(new SegmentStore(directory, DAY)));
+    }
+
+    @Test
+    void skipsDamagedRecordOfAnOlderSegment() throws IOException
+    {
+        // Rolled after an hour, the first 120 records of 30 seconds fill the first segment
+        SegmentStore writer = new SegmentStore(directory, 3_600);
+        recover(writer);
+        List<Sample> written = append(writer, 0, 200);
+        writer.close();
+
+        Path first;
+        try (Stream<Path> files = Files.list(directory))
+        {
+            first = files.sorted().findFirst().orElseThrow();
+        }
+        corrupt(first, 11);
+
+        SegmentStore store = new SegmentStore(directory, 3_600);
+        List<Sample> expected = new ArrayList<>(written);
+        expected.remove(10);
+        assertEquals(expected, recover(store));
+        assertEquals(2, store.getSegmentCount());
+    }
+
+    private SegmentStore newStore() throws IOException
+    {
+        SegmentStore store = new SegmentStore(directory, DAY);
+        recover(store);
+        return store;
+    }
+
+    private static List<Sample> append(SegmentStore store, int first, int count) throws IOException
+    {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = first; i < first + count; i++)
+        {
+            Sample sample = new Sample(KEY, START + i * 30L, i % 60, i % 7, i % 11 != 0);
+            store.append(sample.keyHash(), sample.time(), sample.players(), sample.queue(), sample.online());
+            samples.add(sample);
+        }
+        store.close();
+        return samples;
+    }
+
+    private static List<Sample> recover(SegmentStore store) throws IOException
+    {
+        List<Sample> samples = new ArrayList<>();
+        store.recover(0, (keyHash, time, players, queue, online) -> samples.add(new Sample(keyHash, time, players, queue, online)));
+        return samples;
+    }
+
+    private Path lastSegment() throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.sorted().reduce((a, b) -> b).orElseThrow();
+        }
+    }
+
+    private static void corrupt(Path file, int slot) throws IOException
+    {
+        MappedByteBuffer map = map(file);
+        int offset = slot * SegmentStore.RECORD_BYTES + 28;
+        map.putInt(offset, ~map.getInt(offset));
+        map.force();
+    }
+
+    private static void zero(Path file, int slot) throws IOException
+    {
+        MappedByteBuffer map = map(file);
+        for (int i = 0; i < SegmentStore.RECORD_BYTES; i++)
+        {
+            map.put(slot * SegmentStore.RECORD_BYTES + i, (byte) 0);
+        }
+        map.force();
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private record Sample(long keyHash, long time, int players, int queue, boolean online)
+    {
+    }
+}